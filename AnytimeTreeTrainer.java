@@ -0,0 +1,461 @@
+/**
+ * Best-first decision tree training within a time limit or node budget.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Class that builds the ID3 decision tree from a {@link BinnedDataset} best first, so that training can be stopped
+ * at any time with a valid tree. Every open node has its histogram counted and its splitting attribute chosen as in
+ * {@link BinnedTreeTrainer} (same entropy, same 70% pruning, same ordering of ties); the open nodes wait in a queue
+ * ordered by their expected gain, the information gain of their split times their number of rows, and the node with
+ * the largest one is split next. When the time limit passes or the next split does not fit in the node budget, the
+ * nodes that are still open become leaves with their majority label, and the tree built so far is returned.
+ * <p>
+ * The list of remaining attributes is shared by all nodes as in train(): a split removes its attribute for every
+ * node split after it, so each attribute splits at most once in the whole tree. An open node whose attribute has
+ * been taken by another split chooses again among the attributes that are left. Which node takes an attribute
+ * depends on the order of the splits, so the tree grown best first is not the one train() grows depth first. When
+ * the best-first tree is complete without a node cut short, the tree is therefore grown once more in the order of
+ * train(), pre-order with the children in bin order, which gives the tree of BinnedTreeTrainer; the histograms of
+ * nodes with the same rows are taken from the first pass rather than counted again. If a limit is reached during
+ * that second pass, the best-first tree is returned.
+ * <p>
+ * The time limit is checked between blocks of rows while histograms are counted, so training returns within about
+ * a block of counting after the limit; the only work that is always done is one pass over the labels and the row
+ * index of the root, which then becomes a leaf with the majority label.
+ * Values without a bin (code -1) are counted in the first bin, as getValueMap does for them, and every row is
+ * counted with its weight, as in BinnedTreeTrainer.
+ */
+
+public class AnytimeTreeTrainer {
+
+    /**
+     * System property with the time limit of training in milliseconds.
+     */
+    static final String TIME_LIMIT_PROPERTY = "id3.timeLimit";
+
+    /**
+     * System property with the largest number of nodes (including the fallback slots) of the tree.
+     */
+    static final String MAX_NODES_PROPERTY = "id3.maxNodes";
+
+    // Rows counted between two checks of the time limit
+    private static final int CHECK_ROWS = 1 << 16;
+
+    // Nodes with a larger expected gain first, and nodes with equal gains in the order of their positions
+    private static final Comparator<OpenNode> BEST_FIRST = Comparator.comparingDouble((OpenNode node) ->
+            -node.expectedGain).thenComparingInt(node -> node.position);
+    // Nodes in the order train() visits them: a node before its children, and children in bin order
+    private static final Comparator<OpenNode> PRE_ORDER = (first, second) -> Arrays.compare(first.path, second.path);
+
+    private final BinnedDataset data;
+    private final TreeSchema schema;
+    private final int labelCount;
+    private final long timeLimitNanos;
+    private final int maxNodes;
+
+    private BinnedDataset.RowIndex rows;
+    private BinnedDataset.RowIndex scratch;
+    private long deadline;
+    private int finalizedNodes;
+    // Histograms counted during the last training, by the path of their node
+    private Map<String, int[][][]> histograms;
+
+    /**
+     * @param timeLimit - time that training may take, or null for no limit
+     * @param maxNodes  - largest number of nodes (including the fallback slots) of the tree, or 0 for no limit
+     */
+    public AnytimeTreeTrainer(BinnedDataset data, Duration timeLimit, int maxNodes) {
+        if (timeLimit != null && timeLimit.isNegative() || maxNodes < 0) {
+            throw new IllegalArgumentException("Negative training limit");
+        }
+        this.data = data;
+        this.schema = data.schema();
+        this.labelCount = schema.labels.length;
+        this.timeLimitNanos = timeLimit == null ? Long.MAX_VALUE : saturatedNanos(timeLimit);
+        this.maxNodes = maxNodes == 0 ? Integer.MAX_VALUE : maxNodes;
+    }
+
+    /**
+     * @return whether the system property id3.timeLimit or id3.maxNodes is set
+     */
+    static boolean enabled() {
+        return System.getProperty(TIME_LIMIT_PROPERTY) != null || System.getProperty(MAX_NODES_PROPERTY) != null;
+    }
+
+    /**
+     * Method to create a trainer with the limits of the system properties id3.timeLimit and id3.maxNodes.
+     *
+     * @return the trainer, or null when neither property is set
+     */
+    static AnytimeTreeTrainer fromProperties(BinnedDataset data) {
+        if (!enabled()) {
+            return null;
+        }
+        Long timeLimit = Long.getLong(TIME_LIMIT_PROPERTY);
+        Integer maxNodes = Integer.getInteger(MAX_NODES_PROPERTY);
+        return new AnytimeTreeTrainer(data, timeLimit == null ? null : Duration.ofMillis(timeLimit),
+                maxNodes == null ? 0 : maxNodes);
+    }
+
+    private static long saturatedNanos(Duration duration) {
+        try {
+            return duration.toNanos();
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Method to retrieve the number of open nodes that the last training turned into leaves because of a limit.
+     *
+     * @return number of nodes, 0 when the tree was grown until no node could be split
+     */
+    public int finalizedNodes() {
+        return finalizedNodes;
+    }
+
+    /**
+     * Method to construct the decision tree within the limits. The time limit runs from the call.
+     *
+     * @param remainingAttributes - list of attributes that are considered while constructing the tree. Attributes
+     *                            that are not part of the schema are ignored.
+     *                            Note: When an attribute is added as a node, it is removed from the list.
+     * @return the decision tree in its flat array form
+     */
+    public CompiledTree train(List<String> remainingAttributes) {
+        long start = System.nanoTime();
+        deadline = timeLimitNanos == Long.MAX_VALUE ? Long.MAX_VALUE : start + timeLimitNanos;
+        histograms = new HashMap<>();
+        List<String> attributes = new LinkedList<>(remainingAttributes);
+        CompiledTree tree;
+        try {
+            tree = grow(attributes, BEST_FIRST);
+            if (finalizedNodes == 0) {
+                // Nothing was cut short, so the tree of train() is grown, unless a limit is reached after all
+                List<String> preOrderAttributes = new LinkedList<>(remainingAttributes);
+                CompiledTree preOrderTree = grow(preOrderAttributes, PRE_ORDER);
+                if (finalizedNodes == 0) {
+                    tree = preOrderTree;
+                    attributes = preOrderAttributes;
+                } else {
+                    finalizedNodes = 0;
+                }
+            }
+        } finally {
+            histograms = null;
+        }
+        remainingAttributes.retainAll(attributes);
+
+        TrainingEvents.TrainingLimit event = new TrainingEvents.TrainingLimit();
+        if (finalizedNodes > 0 && event.shouldCommit()) {
+            event.nodes = tree.size();
+            event.finalizedNodes = finalizedNodes;
+            event.timeLimitReached = expired();
+            event.commit();
+        }
+        return tree;
+    }
+
+    /**
+     * Method to grow the tree within the limits, splitting the open nodes in the given order.
+     */
+    private CompiledTree grow(List<String> remainingAttributes, Comparator<OpenNode> order) {
+        finalizedNodes = 0;
+        CompiledTree.Builder builder = new CompiledTree.Builder(schema);
+        int size = data.size();
+        int[] labelCounts = new int[labelCount];
+        for (int row = 0; row < size; row++) {
+            labelCounts[data.label(row)] += data.weight(row);
+        }
+
+        try (BinnedDataset.RowIndex rowIndex = data.allocateRows(size);
+             BinnedDataset.RowIndex scratchIndex = data.allocateRows(size)) {
+            rows = rowIndex;
+            scratch = scratchIndex;
+            for (int i = 0; i < size; i++) {
+                rows.set(i, i);
+            }
+
+            PriorityQueue<OpenNode> frontier = new PriorityQueue<>(order);
+            open(builder, frontier, new OpenNode(0, 0, 0, size, labelCounts, new int[0]), null,
+                    remainingAttributes);
+            int nodes = 1;
+            OpenNode node;
+            while ((node = frontier.poll()) != null) {
+                if (!remainingAttributes.contains(node.attribute)) {
+                    // The attribute was taken by a split made after this node was opened
+                    if (choose(node, remainingAttributes)) {
+                        frontier.add(node);
+                    } else {
+                        builder.leaf(node.position, node.majorityLabel);
+                    }
+                    continue;
+                }
+                int attribute = schema.indexOf(node.attribute);
+                if (expired() || (long) nodes + schema.binCounts[attribute] + 1 > maxNodes) {
+                    builder.leaf(node.position, node.majorityLabel);
+                    finalizedNodes++;
+                    continue;
+                }
+                nodes += schema.binCounts[attribute] + 1;
+                split(builder, frontier, node, attribute, remainingAttributes);
+            }
+        } finally {
+            rows = null;
+            scratch = null;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Method to split an open node and open its children. A child whose histogram cannot be counted before the
+     * time limit becomes a leaf with its majority label.
+     */
+    private void split(CompiledTree.Builder builder, PriorityQueue<OpenNode> frontier, OpenNode node, int attribute,
+                       List<String> remainingAttributes) {
+        TrainingEvents.NodeSplit event = new TrainingEvents.NodeSplit();
+        event.begin();
+        remainingAttributes.remove(node.attribute);
+        int first = builder.split(node.position, attribute, node.majorityLabel);
+        builder.leaf(first, node.majorityLabel);
+
+        int[][] childLabelCounts = node.histogram[attribute];
+        int[] bounds = partition(attribute, node.from, node.to,
+                node.instances != node.to - node.from ? null : childLabelCounts);
+        node.histogram = null;
+        event.end();
+        if (event.shouldCommit()) {
+            event.depth = node.depth;
+            event.rows = node.instances;
+            event.attribute = node.attribute;
+            event.gain = BinnedTreeTrainer.computeInformationGain(node.labelCounts, node.instances, childLabelCounts);
+            event.commit();
+        }
+
+        for (int bin = 0; bin < bounds.length - 1; bin++) {
+            int[] path = Arrays.copyOf(node.path, node.path.length + 1);
+            path[node.path.length] = attribute << Byte.SIZE | bin;
+            OpenNode child = new OpenNode(first + 1 + bin, node.depth + 1, bounds[bin], bounds[bin + 1],
+                    childLabelCounts[bin], path);
+            open(builder, frontier, child, node.majorityLabel, remainingAttributes);
+        }
+    }
+
+    /**
+     * Method to open a node: it becomes a leaf right away when it is empty, pure or has no attribute left, and
+     * otherwise goes to the frontier with its histogram and splitting attribute.
+     *
+     * @param fallbackLabel - label of the node when it has no rows, which is the majority label of its parent
+     */
+    private void open(CompiledTree.Builder builder, PriorityQueue<OpenNode> frontier, OpenNode node,
+                      String fallbackLabel, List<String> remainingAttributes) {
+        if (node.to == node.from) {
+            builder.leaf(node.position, fallbackLabel);
+            return;
+        }
+        String opLabel = BinnedTreeTrainer.checkPureNode(schema, node.labelCounts, node.instances, false);
+        if (opLabel != null) {
+            builder.leaf(node.position, opLabel);
+            return;
+        }
+
+        node.majorityLabel = BinnedTreeTrainer.checkPureNode(schema, node.labelCounts, node.instances, true);
+        // Nodes with the same path have the same rows, so counts taken before are reused if they cover the attributes
+        String path = Arrays.toString(node.path);
+        int[][][] counted = histograms.get(path);
+        if (counted != null && covers(counted, remainingAttributes)) {
+            node.histogram = counted;
+        } else {
+            node.histogram = countBins(node.from, node.to, remainingAttributes);
+            if (node.histogram != null) {
+                histograms.put(path, node.histogram);
+            }
+        }
+        if (node.histogram == null) {
+            builder.leaf(node.position, node.majorityLabel);
+            finalizedNodes++;
+        } else if (choose(node, remainingAttributes)) {
+            frontier.add(node);
+        } else {
+            builder.leaf(node.position, node.majorityLabel);
+        }
+    }
+
+    private boolean covers(int[][][] histogram, List<String> remainingAttributes) {
+        for (String name : remainingAttributes) {
+            int attribute = schema.indexOf(name);
+            if (attribute >= 0 && histogram[attribute] == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method to choose the splitting attribute of an open node among the remaining attributes, from its histogram,
+     * and to set its expected gain.
+     *
+     * @return whether an attribute is left to split on
+     */
+    private boolean choose(OpenNode node, List<String> remainingAttributes) {
+        int size = node.instances;
+        HashMap<String, Double> gainMap = new HashMap<>();
+        for (String attribute : remainingAttributes) {
+            int index = schema.indexOf(attribute);
+            if (index >= 0 && node.histogram[index] != null) {
+                gainMap.put(attribute, BinnedTreeTrainer.computeInformationGain(node.labelCounts, size,
+                        node.histogram[index]));
+            }
+        }
+        node.attribute = BinnedTreeTrainer.getAttributeWithHighestGain(gainMap);
+        if (node.attribute == null) {
+            return false;
+        }
+        int[][] binCounts = node.histogram[schema.indexOf(node.attribute)];
+        node.expectedGain = size * expectedGain(node.labelCounts, size, binCounts);
+        return true;
+    }
+
+    /**
+     * Method to compute the information gain of a split for the order of the frontier. Unlike calculateEntropy,
+     * a label that does not occur adds nothing to the entropy instead of making it NaN, so that every split gets a
+     * comparable gain.
+     */
+    static double expectedGain(int[] labelCounts, double size, int[][] binCounts) {
+        double gain = entropy(labelCounts, size);
+        for (int[] counts : binCounts) {
+            double binSize = 0;
+            for (int count : counts) {
+                binSize += count;
+            }
+            if (binSize > 0) {
+                gain -= binSize / size * entropy(counts, binSize);
+            }
+        }
+        return Math.max(gain, 0);
+    }
+
+    private static double entropy(int[] labelCounts, double size) {
+        double entropy = 0;
+        for (int labelCount : labelCounts) {
+            if (labelCount > 0) {
+                double probability = labelCount / size;
+                entropy -= probability * Math.log(probability);
+            }
+        }
+        return entropy;
+    }
+
+    private boolean expired() {
+        return deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Method to count the rows of a slice per bin and per label, for each remaining attribute.
+     *
+     * @return counts indexed by attribute, bin and label id, null for attributes that are not remaining; or null
+     * when the time limit passes before the counts are complete
+     */
+    private int[][][] countBins(int from, int to, List<String> remainingAttributes) {
+        int[][][] histogram = new int[schema.attributes.length][][];
+        for (String name : remainingAttributes) {
+            int attribute = schema.indexOf(name);
+            if (attribute < 0) {
+                continue;
+            }
+            int[][] counts = new int[schema.binCounts[attribute]][labelCount];
+            for (int block = from; block < to; block += CHECK_ROWS) {
+                if (expired()) {
+                    return null;
+                }
+                for (int i = block; i < Math.min(block + CHECK_ROWS, to); i++) {
+                    int row = rows.get(i);
+                    counts[Math.max(data.code(attribute, row), 0)][data.label(row)] += data.weight(row);
+                }
+            }
+            histogram[attribute] = counts;
+        }
+        return histogram;
+    }
+
+    /**
+     * Method to reorder the rows of a node so that the rows of each bin of the splitting attribute are
+     * consecutive. The order of the rows within a bin is kept.
+     *
+     * @param binCounts - counts per bin and label of the rows of the node, or null when the rows have weights and
+     *                  the rows of each bin are counted here
+     * @return bounds of the slices, where bin i covers bounds[i] to bounds[i + 1]
+     */
+    private int[] partition(int attribute, int from, int to, int[][] binCounts) {
+        int bins = schema.binCounts[attribute];
+        int[] bounds = new int[bins + 1];
+        bounds[0] = from;
+        if (binCounts == null) {
+            for (int i = from; i < to; i++) {
+                bounds[Math.max(data.code(attribute, rows.get(i)), 0) + 1]++;
+            }
+        }
+        for (int bin = 0; bin < bins; bin++) {
+            int binSize = 0;
+            if (binCounts != null) {
+                for (int count : binCounts[bin]) {
+                    binSize += count;
+                }
+            }
+            bounds[bin + 1] += bounds[bin] + binSize;
+        }
+
+        int[] next = Arrays.copyOf(bounds, bins);
+        for (int i = from; i < to; i++) {
+            int row = rows.get(i);
+            scratch.set(next[Math.max(data.code(attribute, row), 0)]++, row);
+        }
+        for (int i = from; i < to; i++) {
+            rows.set(i, scratch.get(i));
+        }
+        return bounds;
+    }
+
+    /**
+     * Class that holds a node of the frontier: its slice of the row index, its counts and its chosen split. Its path
+     * holds the attribute and bin of each split from the root (attribute << 8 | bin), which fix its rows.
+     */
+
+    private static class OpenNode {
+        final int position;
+        final int depth;
+        final int from;
+        final int to;
+        final int[] labelCounts;
+        final int instances;
+        final int[] path;
+        String majorityLabel;
+        int[][][] histogram;
+        String attribute;
+        double expectedGain;
+
+        OpenNode(int position, int depth, int from, int to, int[] labelCounts, int[] path) {
+            this.position = position;
+            this.path = path;
+            this.depth = depth;
+            this.from = from;
+            this.to = to;
+            this.labelCounts = labelCounts;
+            int total = 0;
+            for (int count : labelCounts) {
+                total += count;
+            }
+            this.instances = total;
+        }
+    }
+}
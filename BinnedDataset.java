@@ -0,0 +1,81 @@
+/**
+ * Data sets stored as bin codes.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+/**
+ * Interface for a data set whose attribute values have been mapped to bin codes and whose class labels have been
+ * mapped to label ids of the schema. Rows with a class label outside the schema are not part of the data set.
+ */
+
+public interface BinnedDataset {
+
+    TreeSchema schema();
+
+    /**
+     * Method to retrieve the number of rows of the data set.
+     *
+     * @return number of rows
+     */
+    int size();
+
+    /**
+     * Method to retrieve the bin code of an attribute value.
+     *
+     * @param attribute - position of the attribute in the schema
+     * @param row       - row of the data set
+     * @return bin code of the value, or -1 for a value that has no arrow label
+     */
+    int code(int attribute, int row);
+
+    /**
+     * Method to retrieve the label id of a row.
+     *
+     * @param row - row of the data set
+     * @return id of the class label of the row in the schema
+     */
+    int label(int row);
+
+    /**
+     * Method to retrieve the weight of a row, which is the number of identical instances it stands for (see
+     * {@link WeightedDataset}). BinnedTreeTrainer and AnytimeTreeTrainer count every row with its weight.
+     *
+     * @param row - row of the data set
+     * @return weight of the row, 1 unless the data set has been compressed
+     */
+    default int weight(int row) {
+        return 1;
+    }
+
+    /**
+     * Method to copy the bin codes of consecutive rows for an attribute.
+     *
+     * @param attribute   - position of the attribute in the schema
+     * @param from        - first row to copy
+     * @param count       - number of rows to copy
+     * @param destination - array that receives the codes, from index 0
+     */
+    void codes(int attribute, int from, int count, byte[] destination);
+
+    /**
+     * Method to allocate a buffer of row indexes in the same kind of memory as the data set.
+     *
+     * @param size - number of row indexes the buffer holds
+     * @return the buffer, which must be closed by the caller
+     */
+    RowIndex allocateRows(int size);
+
+    /**
+     * Interface for a buffer of row indexes, used to keep the rows of each node of a tree together while training.
+     */
+
+    interface RowIndex extends AutoCloseable {
+
+        int get(int position);
+
+        void set(int position, int row);
+
+        @Override
+        void close();
+    }
+}
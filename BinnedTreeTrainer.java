@@ -0,0 +1,537 @@
+/**
+ * Decision tree training on binned data sets.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.util.*;
+import java.util.Map.Entry;
+
+/**
+ * Class that builds the ID3 decision tree from a {@link BinnedDataset}. The choices made on every node are the
+ * ones made by train() in ID3 and ID3PartB - same entropy, same 70% pruning, same ordering of ties - but they are
+ * computed from label counts instead of lists of instances. The rows of a node are kept together in a row index
+ * buffer, and a split only reorders the slice of the buffer that belongs to the node.
+ * Every node keeps a histogram of counts per attribute, bin and label. The label counts of a child are a row of
+ * the split histogram of its parent, and only the smaller children are scanned: the histogram of the largest child
+ * is the parent's minus its siblings'.
+ * Values without a bin (code -1) are counted in the first bin, as getValueMap does for them.
+ * Every row is counted with its weight ({@link BinnedDataset#weight}), so a {@link WeightedDataset} of the distinct
+ * rows of a data set gives the counts, and the tree, of the data set itself.
+ * <p>
+ * Nodes of at least sampleThreshold rows (system property id3.sample, off by default) choose their splitting
+ * attribute from a random sample of their rows instead of a full histogram. The sample doubles until a Hoeffding
+ * bound on the gains separates the best attribute from the runner-up; when the sample reaches an eighth of the node
+ * first, the node is counted exactly. The chosen attribute is the exact one with probability at least 1 - SAMPLE_DELTA
+ * per node. Sampling only saves the counting of the attributes that are not chosen: the splitting attribute is still
+ * counted over all rows of the node, for the label counts of its children, and all rows are still partitioned. Nodes
+ * with weighted rows are always counted exactly.
+ */
+
+public class BinnedTreeTrainer {
+
+    /**
+     * System property with the number of rows from which nodes are split on a sample.
+     */
+    static final String SAMPLE_PROPERTY = "id3.sample";
+    static final double SAMPLE_DELTA = 1e-7;
+    private static final int SAMPLE_START = 1 << 12;
+    private static final int MAX_SAMPLE_FRACTION = 8;
+    private static final long SAMPLE_SEED = 0x1D3L;
+
+    private final BinnedDataset data;
+    private final TreeSchema schema;
+    private final int labelCount;
+    private final int sampleThreshold;
+    private final int depthLimit;
+    private final DeferredNodes deferredNodes;
+
+    private BinnedDataset.RowIndex rows;
+    private BinnedDataset.RowIndex scratch;
+
+    public BinnedTreeTrainer(BinnedDataset data) {
+        this(data, Integer.getInteger(SAMPLE_PROPERTY, 0));
+    }
+
+    /**
+     * @param sampleThreshold - number of rows from which a node chooses its splitting attribute from a sample, or
+     *                        0 to count every node exactly
+     */
+    public BinnedTreeTrainer(BinnedDataset data, int sampleThreshold) {
+        this(data, sampleThreshold, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Constructor of a trainer that stops at a depth, as {@link LazyTree} does. A node at the depth limit that is
+     * not a leaf becomes a leaf with its majority label for now, and is handed to deferredNodes with its rows.
+     *
+     * @param depthLimit    - depth of the nodes that are deferred, 0 for the root
+     * @param deferredNodes - receives the deferred nodes
+     */
+    BinnedTreeTrainer(BinnedDataset data, int sampleThreshold, int depthLimit, DeferredNodes deferredNodes) {
+        this.data = data;
+        this.schema = data.schema();
+        this.labelCount = schema.labels.length;
+        this.sampleThreshold = sampleThreshold;
+        this.depthLimit = depthLimit;
+        this.deferredNodes = deferredNodes;
+    }
+
+    /**
+     * Interface that receives the nodes that reach the depth limit, with what is needed to train them later.
+     */
+
+    interface DeferredNodes {
+
+        /**
+         * @param position            - position of the node in the tree that is being built
+         * @param depth               - depth of the node
+         * @param nodeRows            - rows of the node
+         * @param remainingAttributes - copy of the remaining attributes when the node was reached
+         */
+        void defer(int position, int depth, int[] nodeRows, List<String> remainingAttributes);
+    }
+
+    /**
+     * Method to construct the decision tree.
+     *
+     * @param remainingAttributes - list of attributes that are considered while constructing the tree. Attributes
+     *                            that are not part of the schema are ignored.
+     *                            Note: When an attribute is added as a node, it is removed from the list.
+     * @return the decision tree in its flat array form
+     */
+    public CompiledTree train(List<String> remainingAttributes) {
+        int[] labelCounts = new int[labelCount];
+        for (int row = 0; row < data.size(); row++) {
+            labelCounts[data.label(row)] += data.weight(row);
+        }
+        return train(remainingAttributes, labelCounts, null);
+    }
+
+    /**
+     * Method to construct the decision tree when the counts of its root have already been taken over all the rows
+     * of the data set, as MultiTargetTrainer does for several targets in one scan.
+     *
+     * @param labelCounts - label counts of all the rows
+     * @param histogram   - counts per bin and label of all the rows, for every remaining attribute, or null to
+     *                    count them from the rows
+     * @return the decision tree in its flat array form
+     */
+    CompiledTree train(List<String> remainingAttributes, int[] labelCounts, int[][][] histogram) {
+        CompiledTree.Builder builder = new CompiledTree.Builder(schema);
+        int size = data.size();
+        try (BinnedDataset.RowIndex rowIndex = data.allocateRows(size);
+             BinnedDataset.RowIndex scratchIndex = data.allocateRows(size)) {
+            rows = rowIndex;
+            scratch = scratchIndex;
+            for (int i = 0; i < size; i++) {
+                rows.set(i, i);
+            }
+            trainNode(builder, 0, 0, 0, size, remainingAttributes, null, labelCounts, histogram);
+        } finally {
+            rows = null;
+            scratch = null;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Method to construct the subtree of one node into a tree that is being built, from the rows of the node. The
+     * node makes the same choices as in train(), so the subtree is the one train() builds under that node when it
+     * gets there with the same remaining attributes.
+     *
+     * @param builder       - tree that is being built
+     * @param position      - position of the node in the tree
+     * @param depth         - depth of the node, 0 for the root
+     * @param nodeRows      - rows of the node
+     * @param fallbackLabel - label of the node when it has no rows, which is the majority label of its parent
+     */
+    void trainSubtree(CompiledTree.Builder builder, int position, int depth, int[] nodeRows,
+                      List<String> remainingAttributes, String fallbackLabel) {
+        try (BinnedDataset.RowIndex rowIndex = data.allocateRows(nodeRows.length);
+             BinnedDataset.RowIndex scratchIndex = data.allocateRows(nodeRows.length)) {
+            rows = rowIndex;
+            scratch = scratchIndex;
+            int[] labelCounts = new int[labelCount];
+            for (int i = 0; i < nodeRows.length; i++) {
+                rows.set(i, nodeRows[i]);
+                labelCounts[data.label(nodeRows[i])] += data.weight(nodeRows[i]);
+            }
+            trainNode(builder, position, depth, 0, nodeRows.length, remainingAttributes, fallbackLabel, labelCounts,
+                    null);
+        } finally {
+            rows = null;
+            scratch = null;
+        }
+    }
+
+    /**
+     * Method to compute the information gain for an attribute over all the rows of the data set.
+     *
+     * @param attribute for which the information gain is computed
+     * @return the information gain value for the attribute
+     */
+    public double computeInformationGain(String attribute) {
+        int index = schema.indexOf(attribute);
+        int size = 0;
+        int[] labelCounts = new int[labelCount];
+        int[][] binCounts = new int[schema.binCounts[index]][labelCount];
+        for (int row = 0; row < data.size(); row++) {
+            int label = data.label(row);
+            int weight = data.weight(row);
+            size += weight;
+            labelCounts[label] += weight;
+            binCounts[Math.max(data.code(index, row), 0)][label] += weight;
+        }
+        return computeInformationGain(labelCounts, size, binCounts);
+    }
+
+    /**
+     * Method to construct a node and its subtree from the rows in the slice from..to of the row index.
+     *
+     * @param depth       - depth of the node, 0 for the root
+     * @param labelCounts - label counts of the rows of the node
+     * @param histogram   - counts per bin and label of the rows of the node, for every attribute that is still
+     *                    remaining (other entries may be null), or null to count them from the rows
+     */
+    private void trainNode(CompiledTree.Builder builder, int position, int depth, int from, int to,
+                           List<String> remainingAttributes, String fallbackLabel, int[] labelCounts,
+                           int[][][] histogram) {
+        if (to == from) {
+            builder.leaf(position, fallbackLabel);
+            return;
+        }
+        // Number of instances of the node, which is more than its rows when they have weights
+        int size = total(labelCounts);
+        boolean weighted = size != to - from;
+
+        String opLabel = checkPureNode(schema, labelCounts, size, false);
+        if (opLabel != null) {
+            builder.leaf(position, opLabel);
+            return;
+        }
+
+        if (depth >= depthLimit && !remainingAttributes.isEmpty()) {
+            int[] nodeRows = new int[to - from];
+            for (int i = from; i < to; i++) {
+                nodeRows[i - from] = rows.get(i);
+            }
+            builder.leaf(position, checkPureNode(schema, labelCounts, size, true));
+            deferredNodes.defer(position, depth, nodeRows, new LinkedList<>(remainingAttributes));
+            return;
+        }
+
+        TrainingEvents.NodeSplit event = new TrainingEvents.NodeSplit();
+        event.begin();
+        String splittingAttribute = null;
+        if (histogram == null && sampleThreshold > 0 && size >= sampleThreshold && !weighted) {
+            splittingAttribute = sampleSplittingAttribute(from, to, remainingAttributes);
+        }
+        boolean sampled = splittingAttribute != null;
+        if (splittingAttribute == null) {
+            if (histogram == null) {
+                histogram = countBins(from, to, remainingAttributes);
+            }
+            HashMap<String, Double> gainMap = new HashMap<>();
+            for (String attribute : remainingAttributes) {
+                int index = schema.indexOf(attribute);
+                if (index >= 0) {
+                    gainMap.put(attribute, computeInformationGain(labelCounts, size, histogram[index]));
+                }
+            }
+            splittingAttribute = getAttributeWithHighestGain(gainMap);
+        }
+
+        String majorityLabel = checkPureNode(schema, labelCounts, size, true);
+        if (splittingAttribute == null) {
+            builder.leaf(position, majorityLabel);
+            return;
+        }
+
+        remainingAttributes.remove(splittingAttribute);
+        int attribute = schema.indexOf(splittingAttribute);
+        int first = builder.split(position, attribute, majorityLabel);
+        builder.leaf(first, majorityLabel);
+
+        // Children without a histogram count or sample their own rows
+        int[][] childLabelCounts = histogram != null ? histogram[attribute] : countBins(attribute, from, to);
+        int[] bounds = partition(attribute, from, to, weighted ? null : childLabelCounts);
+        int[][][][] childHistograms = histogram != null && !samplesChildren(bounds)
+                ? childHistograms(histogram, bounds, remainingAttributes) : new int[bounds.length - 1][][][];
+        event.end();
+        if (event.shouldCommit()) {
+            event.depth = depth;
+            event.rows = size;
+            event.attribute = splittingAttribute;
+            event.gain = computeInformationGain(labelCounts, size, childLabelCounts);
+            event.sampled = sampled;
+            event.commit();
+        }
+
+        for (int bin = 0; bin < bounds.length - 1; bin++) {
+            trainNode(builder, first + 1 + bin, depth + 1, bounds[bin], bounds[bin + 1], remainingAttributes,
+                    majorityLabel, childLabelCounts[bin], childHistograms[bin]);
+        }
+    }
+
+    /**
+     * Method to derive the histograms of the children of a split. The label counts of every child already come
+     * from the split histogram of the parent. The histograms of all children but the largest are counted from
+     * their rows, and the histogram of the largest child is the parent's minus those of its siblings.
+     *
+     * @param histogram - histogram of the parent
+     * @param bounds    - bounds of the slices of the children
+     * @return histogram of each child
+     */
+    private int[][][][] childHistograms(int[][][] histogram, int[] bounds, List<String> remainingAttributes) {
+        int children = bounds.length - 1;
+        int largest = 0;
+        for (int bin = 1; bin < children; bin++) {
+            if (bounds[bin + 1] - bounds[bin] > bounds[largest + 1] - bounds[largest]) {
+                largest = bin;
+            }
+        }
+
+        int[][][][] childHistograms = new int[children][][][];
+        for (int bin = 0; bin < children; bin++) {
+            if (bin != largest) {
+                childHistograms[bin] = countBins(bounds[bin], bounds[bin + 1], remainingAttributes);
+            }
+        }
+
+        int[][][] subtracted = new int[histogram.length][][];
+        for (String name : remainingAttributes) {
+            int attribute = schema.indexOf(name);
+            if (attribute < 0) {
+                continue;
+            }
+            subtracted[attribute] = new int[histogram[attribute].length][];
+            for (int value = 0; value < histogram[attribute].length; value++) {
+                int[] counts = histogram[attribute][value].clone();
+                for (int bin = 0; bin < children; bin++) {
+                    if (bin != largest) {
+                        int[] siblingCounts = childHistograms[bin][attribute][value];
+                        for (int label = 0; label < counts.length; label++) {
+                            counts[label] -= siblingCounts[label];
+                        }
+                    }
+                }
+                subtracted[attribute][value] = counts;
+            }
+        }
+        childHistograms[largest] = subtracted;
+        return childHistograms;
+    }
+
+    /**
+     * Method to check if the children of a split are better sampled than derived from the histogram of the parent,
+     * which is when a child other than the largest would otherwise be counted in full above the sample threshold.
+     */
+    private boolean samplesChildren(int[] bounds) {
+        int sampledChildren = 0;
+        for (int bin = 0; bin < bounds.length - 1; bin++) {
+            if (sampleThreshold > 0 && bounds[bin + 1] - bounds[bin] >= sampleThreshold) {
+                sampledChildren++;
+            }
+        }
+        return sampledChildren >= 2;
+    }
+
+    /**
+     * Method to choose the splitting attribute of a large node from a random sample of its rows, drawn with
+     * replacement. The sample doubles until the gain of the best attribute exceeds the runner-up's by more than
+     * the Hoeffding bound R * sqrt(ln(1 / SAMPLE_DELTA) / 2n), where the range R of the gain is ln(labels).
+     * While a sampled bin misses a label its gain is NaN, as it is in calculateEntropy, and the sample grows on.
+     *
+     * @return the splitting attribute, or null when the sample cannot tell the best attributes apart
+     */
+    private String sampleSplittingAttribute(int from, int to, List<String> remainingAttributes) {
+        List<Integer> candidates = new ArrayList<>();
+        int[][][] sample = new int[schema.attributes.length][][];
+        for (String name : remainingAttributes) {
+            int attribute = schema.indexOf(name);
+            if (attribute >= 0) {
+                candidates.add(attribute);
+                sample[attribute] = new int[schema.binCounts[attribute]][labelCount];
+            }
+        }
+        if (candidates.size() < 2) {
+            return null;
+        }
+
+        SplittableRandom random = new SplittableRandom(SAMPLE_SEED + from);
+        int[] sampleLabels = new int[labelCount];
+        double range = Math.log(labelCount);
+        int sampled = 0;
+        for (int target = SAMPLE_START; target <= (to - from) / MAX_SAMPLE_FRACTION; target *= 2) {
+            for (; sampled < target; sampled++) {
+                int row = rows.get(from + random.nextInt(to - from));
+                int label = data.label(row);
+                sampleLabels[label]++;
+                for (int attribute : candidates) {
+                    sample[attribute][Math.max(data.code(attribute, row), 0)][label]++;
+                }
+            }
+
+            double best = Double.NEGATIVE_INFINITY;
+            double runnerUp = Double.NEGATIVE_INFINITY;
+            int bestAttribute = -1;
+            boolean defined = true;
+            for (int attribute : candidates) {
+                double gain = computeInformationGain(sampleLabels, sampled, sample[attribute]);
+                defined &= !Double.isNaN(gain);
+                if (gain > best) {
+                    runnerUp = best;
+                    best = gain;
+                    bestAttribute = attribute;
+                } else if (gain > runnerUp) {
+                    runnerUp = gain;
+                }
+            }
+            double bound = range * Math.sqrt(Math.log(1 / SAMPLE_DELTA) / (2.0 * sampled));
+            if (defined && best - runnerUp > bound) {
+                return schema.attributes[bestAttribute];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method to count the rows of a slice per bin and per label, for each remaining attribute.
+     *
+     * @return counts indexed by attribute, bin and label id; null for attributes that are not remaining
+     */
+    private int[][][] countBins(int from, int to, List<String> remainingAttributes) {
+        int[][][] histogram = new int[schema.attributes.length][][];
+        for (String name : remainingAttributes) {
+            int attribute = schema.indexOf(name);
+            if (attribute >= 0) {
+                histogram[attribute] = countBins(attribute, from, to);
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Method to count the rows of a slice per bin of an attribute and per label.
+     *
+     * @return counts indexed by bin and label id
+     */
+    private int[][] countBins(int attribute, int from, int to) {
+        int[][] counts = new int[schema.binCounts[attribute]][labelCount];
+        for (int i = from; i < to; i++) {
+            int row = rows.get(i);
+            counts[Math.max(data.code(attribute, row), 0)][data.label(row)] += data.weight(row);
+        }
+        return counts;
+    }
+
+    private static int total(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Method to reorder the rows of a node so that the rows of each bin of the splitting attribute are
+     * consecutive. The order of the rows within a bin is kept.
+     *
+     * @param binCounts - counts per bin and label of the rows of the node, or null when the rows have weights and
+     *                  the rows of each bin are counted here
+     * @return bounds of the slices, where bin i covers bounds[i] to bounds[i + 1]
+     */
+    private int[] partition(int attribute, int from, int to, int[][] binCounts) {
+        int bins = schema.binCounts[attribute];
+        int[] bounds = new int[bins + 1];
+        bounds[0] = from;
+        if (binCounts == null) {
+            for (int i = from; i < to; i++) {
+                bounds[Math.max(data.code(attribute, rows.get(i)), 0) + 1]++;
+            }
+        }
+        for (int bin = 0; bin < bins; bin++) {
+            bounds[bin + 1] += bounds[bin] + (binCounts == null ? 0 : total(binCounts[bin]));
+        }
+
+        int[] next = Arrays.copyOf(bounds, bins);
+        for (int i = from; i < to; i++) {
+            int row = rows.get(i);
+            scratch.set(next[Math.max(data.code(attribute, row), 0)]++, row);
+        }
+        for (int i = from; i < to; i++) {
+            rows.set(i, scratch.get(i));
+        }
+        return bounds;
+    }
+
+    /**
+     * Method to calculate the entropy from the label counts of a set of data, as calculateEntropy does.
+     *
+     * @return value of entropy, or an arbitrary high value when the set is empty
+     */
+    static double calculateEntropy(int[] labelCounts, double numInstances) {
+        if (numInstances == 0) {
+            return 9999;
+        }
+
+        double entropy = 0;
+        for (int labelCount : labelCounts) {
+            double probability = labelCount / numInstances;
+            entropy += (probability) * Math.log(1 / probability);
+        }
+        return entropy;
+    }
+
+    /**
+     * Method to compute the information gain of an attribute from the label counts of the node and of each bin.
+     */
+    static double computeInformationGain(int[] labelCounts, double size, int[][] binCounts) {
+        double entropy = calculateEntropy(labelCounts, size);
+        for (int[] counts : binCounts) {
+            double S_v = 0;
+            for (int count : counts) {
+                S_v += count;
+            }
+            entropy -= ((S_v / size) * calculateEntropy(counts, S_v));
+        }
+        return entropy;
+    }
+
+    /**
+     * Method to retrieve the attribute with the highest information gain. Ties are resolved by the iteration
+     * order of the map, exactly like getAttributeWithHighestGain.
+     */
+    static String getAttributeWithHighestGain(HashMap<String, Double> gainMap) {
+        List<Entry<String, Double>> gainList = new ArrayList<>(gainMap.entrySet());
+        Collections.sort(gainList, (o1, o2) -> o2.getValue().compareTo(o1.getValue()));
+        return gainList.size() == 0 ? null : gainList.get(0).getKey();
+    }
+
+    /**
+     * Method to check if a node is pure, or to retrieve its majority label, from its label counts.
+     * The counts are kept the way checkPureNode keeps them, including the extra count of the first
+     * occurrence of a label, so that the same nodes are pruned and the same ties are won.
+     */
+    static String checkPureNode(TreeSchema schema, int[] counts, int size, boolean majority) {
+        Map<String, Integer> labelCounts = new HashMap<>();
+        for (int label = 0; label < counts.length; label++) {
+            if (counts[label] > 0) {
+                labelCounts.put(schema.labels[label], counts[label] + 1);
+            }
+        }
+
+        if (majority) {
+            List<Entry<String, Integer>> labelList = new ArrayList<>(labelCounts.entrySet());
+            Collections.sort(labelList, (o1, o2) -> o2.getValue().compareTo(o1.getValue()));
+            return labelList.size() == 0 ? null : labelList.get(0).getKey();
+        }
+
+        for (String key : labelCounts.keySet()) {
+            int count = labelCounts.get(key);
+            if (count > 0.7 * size) // Prune to 70%
+                return key;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,336 @@
+/**
+ * Decision tree training on bitmap indexes.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Class that builds the ID3 decision tree from bitmap indexes of a {@link BinnedDataset}: one bitmap of the rows of
+ * each bin of each attribute and one of the rows of each label. The bitmaps of the bins and labels are dense, one bit
+ * per row whether it is set or not, so a row costs one bit per bin and label (about 4.5 bytes for the customer data
+ * set) however the rows are spread over the bins. Every count the gain needs is the population count of an AND of
+ * bitmaps. The choices made on every node are the ones made by {@link BinnedTreeTrainer} - same entropy, same 70%
+ * pruning, same ordering of ties.
+ * <p>
+ * The bitmaps of an attribute or label are interleaved word by word, so the counts of 64 rows are taken from one
+ * stretch of memory. Only the rows of a node are compressed: they are kept as the indexes and contents of their
+ * non-empty words, so nodes deep in the tree only touch the words of their own rows, and a split is one AND per word
+ * and bin. Like BinnedTreeTrainer,
+ * only the smaller children of a split are counted; the histogram of the largest child is the parent's minus its
+ * siblings'.
+ * Values without a bin (code -1) are counted in the first bin, as getValueMap does for them.
+ * <p>
+ * Rows are counted one by one, so the trainer neither samples nodes nor counts the weights of a compressed data set;
+ * {@link #checkOptions} rejects those options.
+ */
+
+public class BitmapTreeTrainer {
+
+    /**
+     * System property that selects this trainer for binned data sets.
+     */
+    static final String PROPERTY = "id3.bitmap";
+
+    private final TreeSchema schema;
+    private final int labelCount;
+    private final int size;
+    private final int[] binOffset;
+    private final int binStride;
+    private final long[] binWords;
+    private final long[] labelWords;
+
+    /**
+     * Method to reject the options of the binned engine that this trainer does not support, rather than ignore them.
+     *
+     * @param compress        - whether identical rows were to be collapsed into weighted rows
+     * @param sampleThreshold - number of rows from which nodes were to be split on a sample, or 0
+     * @throws IllegalArgumentException when either option is set
+     */
+    static void checkOptions(boolean compress, int sampleThreshold) {
+        if (compress) {
+            throw new IllegalArgumentException("The bitmap engine does not train on compressed data sets");
+        }
+        if (sampleThreshold > 0) {
+            throw new IllegalArgumentException("The bitmap engine does not sample nodes");
+        }
+    }
+
+    /**
+     * Constructor that builds the bitmap indexes of a data set.
+     *
+     * @param data - the training set
+     */
+    public BitmapTreeTrainer(BinnedDataset data) {
+        this.schema = data.schema();
+        this.labelCount = schema.labels.length;
+        this.size = data.size();
+        this.binOffset = new int[schema.attributes.length];
+        int stride = 0;
+        for (int attribute = 0; attribute < binOffset.length; attribute++) {
+            binOffset[attribute] = stride;
+            stride += schema.binCounts[attribute];
+        }
+        this.binStride = stride;
+
+        int words = (size + 63) >>> 6;
+        binWords = new long[words * binStride];
+        labelWords = new long[words * labelCount];
+        for (int row = 0; row < size; row++) {
+            int word = row >>> 6;
+            long bit = 1L << row;
+            for (int attribute = 0; attribute < binOffset.length; attribute++) {
+                binWords[word * binStride + binOffset[attribute] + Math.max(data.code(attribute, row), 0)] |= bit;
+            }
+            labelWords[word * labelCount + data.label(row)] |= bit;
+        }
+    }
+
+    /**
+     * Method to construct the decision tree.
+     *
+     * @param remainingAttributes - list of attributes that are considered while constructing the tree. Attributes
+     *                            that are not part of the schema are ignored.
+     *                            Note: When an attribute is added as a node, it is removed from the list.
+     * @return the decision tree in its flat array form
+     */
+    public CompiledTree train(List<String> remainingAttributes) {
+        CompiledTree.Builder builder = new CompiledTree.Builder(schema);
+        RowSet all = new RowSet((size + 63) >>> 6);
+        for (int word = 0; word < all.words.length; word++) {
+            int rows = Math.min(64, size - word * 64);
+            all.add(word, rows == 64 ? -1L : (1L << rows) - 1);
+        }
+        int[] labelCounts = new int[labelCount];
+        for (int i = 0; i < all.count; i++) {
+            for (int label = 0; label < labelCount; label++) {
+                labelCounts[label] += Long.bitCount(all.bits[i] & labelWords[all.words[i] * labelCount + label]);
+            }
+        }
+        trainNode(builder, 0, 0, all, remainingAttributes, null, labelCounts, null);
+        return builder.build();
+    }
+
+    /**
+     * Method to construct a node and its subtree.
+     *
+     * @param rows        - rows of the node
+     * @param labelCounts - label counts of the rows of the node
+     * @param histogram   - counts per bin and label of the rows of the node, for every attribute that is still
+     *                    remaining, or null to count them from the bitmaps
+     */
+    private void trainNode(CompiledTree.Builder builder, int position, int depth, RowSet rows,
+                           List<String> remainingAttributes, String fallbackLabel, int[] labelCounts,
+                           int[][][] histogram) {
+        int size = 0;
+        for (int count : labelCounts) {
+            size += count;
+        }
+        if (size == 0) {
+            builder.leaf(position, fallbackLabel);
+            return;
+        }
+
+        String opLabel = BinnedTreeTrainer.checkPureNode(schema, labelCounts, size, false);
+        if (opLabel != null) {
+            builder.leaf(position, opLabel);
+            return;
+        }
+
+        TrainingEvents.NodeSplit event = new TrainingEvents.NodeSplit();
+        event.begin();
+        if (histogram == null) {
+            histogram = countBins(rows, remainingAttributes);
+        }
+        HashMap<String, Double> gainMap = new HashMap<>();
+        for (String attribute : remainingAttributes) {
+            int index = schema.indexOf(attribute);
+            if (index >= 0) {
+                gainMap.put(attribute, BinnedTreeTrainer.computeInformationGain(labelCounts, size, histogram[index]));
+            }
+        }
+
+        String splittingAttribute = BinnedTreeTrainer.getAttributeWithHighestGain(gainMap);
+        String majorityLabel = BinnedTreeTrainer.checkPureNode(schema, labelCounts, size, true);
+        if (splittingAttribute == null) {
+            builder.leaf(position, majorityLabel);
+            return;
+        }
+
+        remainingAttributes.remove(splittingAttribute);
+        int attribute = schema.indexOf(splittingAttribute);
+        int first = builder.split(position, attribute, majorityLabel);
+        builder.leaf(first, majorityLabel);
+
+        int[][] childLabelCounts = histogram[attribute];
+        RowSet[] children = split(rows, attribute);
+        int[][][][] childHistograms = childHistograms(histogram, children, childLabelCounts, remainingAttributes);
+        event.end();
+        if (event.shouldCommit()) {
+            event.depth = depth;
+            event.rows = size;
+            event.attribute = splittingAttribute;
+            event.gain = gainMap.get(splittingAttribute);
+            event.commit();
+        }
+
+        for (int bin = 0; bin < children.length; bin++) {
+            trainNode(builder, first + 1 + bin, depth + 1, children[bin], remainingAttributes, majorityLabel,
+                    childLabelCounts[bin], childHistograms[bin]);
+            children[bin] = null;
+            childHistograms[bin] = null;
+        }
+    }
+
+    /**
+     * Method to derive the histograms of the children of a split, as BinnedTreeTrainer does: all children but the
+     * largest are counted from their bitmaps, and the histogram of the largest child is the parent's minus those of
+     * its siblings.
+     *
+     * @param histogram - histogram of the parent
+     * @param children  - rows of each child
+     * @return histogram of each child
+     */
+    private int[][][][] childHistograms(int[][][] histogram, RowSet[] children, int[][] childLabelCounts,
+                                        List<String> remainingAttributes) {
+        int largest = 0;
+        int[] sizes = new int[children.length];
+        for (int bin = 0; bin < children.length; bin++) {
+            for (int count : childLabelCounts[bin]) {
+                sizes[bin] += count;
+            }
+            if (sizes[bin] > sizes[largest]) {
+                largest = bin;
+            }
+        }
+
+        int[][][][] childHistograms = new int[children.length][][][];
+        for (int bin = 0; bin < children.length; bin++) {
+            if (bin != largest && sizes[bin] > 0) {
+                childHistograms[bin] = countBins(children[bin], remainingAttributes);
+            }
+        }
+
+        int[][][] subtracted = new int[histogram.length][][];
+        for (String name : remainingAttributes) {
+            int attribute = schema.indexOf(name);
+            if (attribute < 0) {
+                continue;
+            }
+            subtracted[attribute] = new int[histogram[attribute].length][];
+            for (int value = 0; value < histogram[attribute].length; value++) {
+                int[] counts = histogram[attribute][value].clone();
+                for (int bin = 0; bin < children.length; bin++) {
+                    if (childHistograms[bin] != null) {
+                        int[] siblingCounts = childHistograms[bin][attribute][value];
+                        for (int label = 0; label < counts.length; label++) {
+                            counts[label] -= siblingCounts[label];
+                        }
+                    }
+                }
+                subtracted[attribute][value] = counts;
+            }
+        }
+        childHistograms[largest] = subtracted;
+        return childHistograms;
+    }
+
+    /**
+     * Method to count the rows of a node per bin and per label, for each remaining attribute, from the population
+     * counts of the node ANDed with the label and bin bitmaps. The bins of the remaining attributes are counted in
+     * one tight loop over their positions in the interleaved words.
+     *
+     * @return counts indexed by attribute, bin and label id; null for attributes that are not remaining
+     */
+    private int[][][] countBins(RowSet rows, List<String> remainingAttributes) {
+        int[][][] histogram = new int[schema.attributes.length][][];
+        int[] slots = new int[binStride];
+        int[] slotAttribute = new int[binStride];
+        int[] slotBin = new int[binStride];
+        int slotCount = 0;
+        for (String name : remainingAttributes) {
+            int attribute = schema.indexOf(name);
+            if (attribute >= 0 && histogram[attribute] == null) {
+                histogram[attribute] = new int[schema.binCounts[attribute]][labelCount];
+                for (int bin = 0; bin < schema.binCounts[attribute]; bin++) {
+                    slots[slotCount] = binOffset[attribute] + bin;
+                    slotAttribute[slotCount] = attribute;
+                    slotBin[slotCount++] = bin;
+                }
+            }
+        }
+
+        long[] counts = new long[labelCount * slotCount];
+        for (int i = 0; i < rows.count; i++) {
+            int word = rows.words[i];
+            long nodeBits = rows.bits[i];
+            int binBase = word * binStride;
+            for (int label = 0; label < labelCount; label++) {
+                long labelBits = nodeBits & labelWords[word * labelCount + label];
+                if (labelBits != 0) {
+                    int countBase = label * slotCount;
+                    for (int slot = 0; slot < slotCount; slot++) {
+                        counts[countBase + slot] += Long.bitCount(labelBits & binWords[binBase + slots[slot]]);
+                    }
+                }
+            }
+        }
+
+        for (int slot = 0; slot < slotCount; slot++) {
+            for (int label = 0; label < labelCount; label++) {
+                histogram[slotAttribute[slot]][slotBin[slot]][label] = (int) counts[label * slotCount + slot];
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Method to split the rows of a node by the bins of an attribute.
+     *
+     * @return rows of each bin
+     */
+    private RowSet[] split(RowSet rows, int attribute) {
+        RowSet[] children = new RowSet[schema.binCounts[attribute]];
+        for (int bin = 0; bin < children.length; bin++) {
+            children[bin] = new RowSet(Math.min(rows.count, 16));
+        }
+        for (int i = 0; i < rows.count; i++) {
+            int word = rows.words[i];
+            int base = word * binStride + binOffset[attribute];
+            for (int bin = 0; bin < children.length; bin++) {
+                long bits = rows.bits[i] & binWords[base + bin];
+                if (bits != 0) {
+                    children[bin].add(word, bits);
+                }
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Class that holds a compressed bitmap of rows: the indexes of its non-empty words, in increasing order, and
+     * the bits of those words.
+     */
+
+    private static class RowSet {
+        int[] words;
+        long[] bits;
+        int count;
+
+        RowSet(int capacity) {
+            words = new int[Math.max(capacity, 1)];
+            bits = new long[words.length];
+        }
+
+        void add(int word, long wordBits) {
+            if (count == words.length) {
+                words = Arrays.copyOf(words, count * 2);
+                bits = Arrays.copyOf(bits, count * 2);
+            }
+            words[count] = word;
+            bits[count++] = wordBits;
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/**
+ * Buffered asynchronous output of predicted class labels.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Class that writes predictions one line per row, either as the bare label or as "row,label" CSV. With several
+ * columns, one per model, a line holds the label of each model, separated by commas.
+ * Label ids are turned into bytes through a table built once from the schema, and lines are appended to one of two
+ * buffers. A full buffer is handed to a background thread that writes it out while the caller fills the other one,
+ * so the caller only waits when the output is slower than the predictions for two buffers in a row.
+ */
+
+public class BufferedPredictionWriter implements PredictionSink {
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    // Longest row id (Long.MIN_VALUE has 20 characters) plus the comma
+    private static final int MAX_ROW_ID_LENGTH = 21;
+
+    private final OutputStream out;
+    private final boolean closeStream;
+    private final boolean rowIds;
+    private final byte[][][] labelBytes;
+    private final int maxLineLength;
+
+    private final BlockingQueue<Buffer> freeBuffers = new ArrayBlockingQueue<>(2);
+    private final BlockingQueue<Buffer> fullBuffers = new ArrayBlockingQueue<>(2);
+    private final Thread writerThread;
+    private volatile IOException failure;
+
+    private Buffer current = new Buffer();
+    private long nextRow;
+    private boolean closed;
+
+    /**
+     * @param out         - stream the predictions are written to
+     * @param closeStream - whether the stream is closed together with the writer
+     * @param schema      - schema whose labels the label ids refer to
+     * @param rowIds      - whether each line starts with the row number and a comma (CSV with a header line)
+     */
+    public BufferedPredictionWriter(OutputStream out, boolean closeStream, TreeSchema schema, boolean rowIds) {
+        this(out, closeStream, schema, rowIds, "label");
+    }
+
+    /**
+     * @param out         - stream the predictions are written to
+     * @param closeStream - whether the stream is closed together with the writer
+     * @param schema      - schema whose labels the label ids of every column refer to
+     * @param rowIds      - whether each line starts with the row number and a comma (CSV with a header line)
+     * @param columns     - names of the columns of predictions, for the header line
+     */
+    public BufferedPredictionWriter(OutputStream out, boolean closeStream, TreeSchema schema, boolean rowIds,
+                                    String... columns) {
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("No column of predictions");
+        }
+        this.out = out;
+        this.closeStream = closeStream;
+        this.rowIds = rowIds;
+
+        // Label id -1 (no prediction) is stored at index 0, printed as "null" like println does. The label of each
+        // column is followed by the comma before the next column, or by the line separator
+        byte[] lineSeparator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+        byte[] comma = {','};
+        labelBytes = new byte[columns.length][schema.labels.length + 1][];
+        int lineLength = rowIds ? MAX_ROW_ID_LENGTH : 0;
+        for (int column = 0; column < columns.length; column++) {
+            byte[] separator = column == columns.length - 1 ? lineSeparator : comma;
+            int longest = 0;
+            for (int labelId = -1; labelId < schema.labels.length; labelId++) {
+                byte[] label = String.valueOf(schema.label(labelId)).getBytes(StandardCharsets.UTF_8);
+                byte[] cell = new byte[label.length + separator.length];
+                System.arraycopy(label, 0, cell, 0, label.length);
+                System.arraycopy(separator, 0, cell, label.length, separator.length);
+                labelBytes[column][labelId + 1] = cell;
+                longest = Math.max(longest, cell.length);
+            }
+            lineLength += longest;
+        }
+        maxLineLength = lineLength;
+        if (maxLineLength > BUFFER_SIZE) {
+            throw new IllegalArgumentException("Too many columns of predictions: " + columns.length);
+        }
+
+        freeBuffers.add(new Buffer());
+        writerThread = new Thread(this::writeBuffers, "prediction-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        if (rowIds) {
+            append(("row," + String.join(",", columns) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Method to create a writer to standard output. The writer bypasses System.out, which is flushed first so that
+     * earlier output keeps its place; nothing may be printed to System.out until the writer is closed, so the
+     * parsers report the lines they reject on standard error.
+     */
+    public static BufferedPredictionWriter toStdout(TreeSchema schema, boolean rowIds) {
+        System.out.flush();
+        return new BufferedPredictionWriter(new FileOutputStream(FileDescriptor.out), false, schema, rowIds);
+    }
+
+    /**
+     * Method to create a writer to a file, replacing its contents.
+     */
+    public static BufferedPredictionWriter toFile(Path path, TreeSchema schema, boolean rowIds) throws IOException {
+        return new BufferedPredictionWriter(Files.newOutputStream(path), true, schema, rowIds);
+    }
+
+    /**
+     * Method to create a writer of several columns of predictions to a file, replacing its contents.
+     */
+    public static BufferedPredictionWriter toFile(Path path, TreeSchema schema, boolean rowIds, String... columns)
+            throws IOException {
+        return new BufferedPredictionWriter(Files.newOutputStream(path), true, schema, rowIds, columns);
+    }
+
+    @Override
+    public void write(byte[] labelIds, int from, int count) throws IOException {
+        write(new byte[][]{labelIds}, from, count);
+    }
+
+    @Override
+    public void write(byte[][] labelIds, int from, int count) throws IOException {
+        if (labelIds.length != labelBytes.length) {
+            throw new IllegalArgumentException("Expected " + labelBytes.length + " columns of predictions, not "
+                    + labelIds.length);
+        }
+        checkFailure();
+        for (int i = from; i < from + count; i++) {
+            if (current.length + maxLineLength > current.bytes.length) {
+                handOff();
+            }
+            if (rowIds) {
+                appendRowId(nextRow);
+            }
+            nextRow++;
+            for (int column = 0; column < labelIds.length; column++) {
+                byte[] cell = labelBytes[column][labelIds[column][i] + 1];
+                System.arraycopy(cell, 0, current.bytes, current.length, cell.length);
+                current.length += cell.length;
+            }
+        }
+    }
+
+    /**
+     * Method to write out the last buffer, stop the writer thread and close the stream. The writer thread is
+     * stopped and the stream closed even when writing fails; the first failure is thrown after that.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IOException error = null;
+        try {
+            if (current.length > 0) {
+                handOff();
+            }
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            error = stopWriter(error);
+        }
+        try {
+            if (error == null) {
+                checkFailure();
+                out.flush();
+            }
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            if (closeStream) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    if (error == null) {
+                        error = e;
+                    } else {
+                        error.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Method to enqueue the end of the output and wait for the writer thread. The writer thread takes every buffer
+     * it is given, also after a failed write, so the end is enqueued after any failure. An interruption of the
+     * caller is set aside until then and restored afterwards.
+     *
+     * @param error - failure so far, or null
+     * @return the failure so far, or the interruption when there was none
+     */
+    private IOException stopWriter(IOException error) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            fullBuffers.put(Buffer.END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            interrupted = true;
+            IOException interruption = new IOException("Interrupted while writing predictions", e);
+            if (error == null) {
+                return interruption;
+            }
+            error.addSuppressed(interruption);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return error;
+    }
+
+    private void append(byte[] bytes) {
+        System.arraycopy(bytes, 0, current.bytes, current.length, bytes.length);
+        current.length += bytes.length;
+    }
+
+    private void appendRowId(long row) {
+        byte[] bytes = current.bytes;
+        int start = current.length;
+        if (row == 0) {
+            bytes[current.length++] = '0';
+        }
+        while (row > 0) {
+            bytes[current.length++] = (byte) ('0' + row % 10);
+            row /= 10;
+        }
+        for (int i = start, j = current.length - 1; i < j; i++, j--) {
+            byte digit = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = digit;
+        }
+        bytes[current.length++] = ',';
+    }
+
+    /**
+     * Method to pass the current buffer to the writer thread and continue with the other one.
+     */
+    private void handOff() throws IOException {
+        try {
+            fullBuffers.put(current);
+            current = freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing predictions", e);
+        }
+        current.length = 0;
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Method run by the writer thread. After a failed write the buffers are still recycled, so that the caller
+     * never blocks and sees the failure on its next call.
+     */
+    private void writeBuffers() {
+        try {
+            Buffer buffer;
+            while ((buffer = fullBuffers.take()) != Buffer.END) {
+                if (failure == null) {
+                    try {
+                        out.write(buffer.bytes, 0, buffer.length);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                freeBuffers.put(buffer);
+            }
+        } catch (InterruptedException e) {
+            failure = new IOException("Prediction writer interrupted", e);
+        }
+    }
+
+    /**
+     * Class that holds the bytes of one output buffer.
+     */
+
+    private static class Buffer {
+        static final Buffer END = new Buffer(0);
+
+        final byte[] bytes;
+        int length;
+
+        Buffer() {
+            this(BUFFER_SIZE);
+        }
+
+        Buffer(int size) {
+            bytes = new byte[size];
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Block at a time scoring of data sets.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+/**
+ * Class with the batch routines used to score blocks of encoded rows, by a scalar loop over the rows. It also tells
+ * whether the jdk.incubator.vector module is present, in which case {@link QuantizedColumn#codes} bins whole numeric
+ * columns with {@link VectorColumnBatch}.
+ */
+
+public class ColumnBatch {
+
+    static final boolean VECTORIZED = vectorSupport();
+
+    // Rows per block when scoring a data set; small enough for the codes of a block to stay in cache
+    static final int BLOCK_ROWS = 4096;
+
+    private ColumnBatch() {
+    }
+
+    private static boolean vectorSupport() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return false;
+        }
+        try {
+            return VectorColumnBatch.supports();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Method to score a block of encoded rows. Each row walks the node arrays on its own: a walk with one row per
+     * vector lane, which has to load the node of every lane separately, took four times as long.
+     *
+     * @param tree    - tree in its flat array form
+     * @param columns - bin codes of each attribute, one column per attribute in the order of the schema
+     * @param count   - number of rows to score
+     * @param labels  - predicted label id of each row, written from index 0
+     */
+    public static void scoreColumns(CompiledTree tree, byte[][] columns, int count, byte[] labels) {
+        int[] attribute = tree.attribute;
+        int[] firstChild = tree.firstChild;
+        for (int row = 0; row < count; row++) {
+            int node = 0;
+            int splitAttribute;
+            while ((splitAttribute = attribute[node]) >= 0) {
+                node = firstChild[node] + 1 + columns[splitAttribute][row];
+            }
+            labels[row] = tree.label[node];
+        }
+    }
+
+    /**
+     * Method to score the rows of a binned data set, copying the codes of one block of rows at a time.
+     *
+     * @param tree   - tree in its flat array form
+     * @param data   - data set that is scored
+     * @param labels - predicted label id of each row of the data set
+     */
+    public static void scoreDataset(CompiledTree tree, BinnedDataset data, byte[] labels) {
+        int attributes = data.schema().attributes.length;
+        byte[][] columns = new byte[attributes][BLOCK_ROWS];
+        byte[] blockLabels = new byte[BLOCK_ROWS];
+        for (int from = 0; from < data.size(); from += BLOCK_ROWS) {
+            int count = Math.min(BLOCK_ROWS, data.size() - from);
+            for (int attribute = 0; attribute < attributes; attribute++) {
+                data.codes(attribute, from, count, columns[attribute]);
+            }
+            scoreColumns(tree, columns, count, blockLabels);
+            System.arraycopy(blockLabels, 0, labels, from, count);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * On-heap data set of bin code columns.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+/**
+ * Class that stores a binned data set as one byte array per attribute and one byte array of label ids.
+ */
+
+public class ColumnarDataset implements BinnedDataset {
+    private final TreeSchema schema;
+    private final byte[][] columns;
+    private final byte[] labels;
+    private final int size;
+
+    public ColumnarDataset(TreeSchema schema, byte[][] columns, byte[] labels, int size) {
+        this.schema = schema;
+        this.columns = columns;
+        this.labels = labels;
+        this.size = size;
+    }
+
+    @Override
+    public TreeSchema schema() {
+        return schema;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int code(int attribute, int row) {
+        return columns[attribute][row];
+    }
+
+    @Override
+    public int label(int row) {
+        return labels[row];
+    }
+
+    @Override
+    public void codes(int attribute, int from, int count, byte[] destination) {
+        System.arraycopy(columns[attribute], from, destination, 0, count);
+    }
+
+    @Override
+    public RowIndex allocateRows(int size) {
+        int[] rows = new int[size];
+        return new RowIndex() {
+            @Override
+            public int get(int position) {
+                return rows[position];
+            }
+
+            @Override
+            public void set(int position, int row) {
+                rows[position] = row;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
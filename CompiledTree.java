@@ -0,0 +1,187 @@
+/**
+ * Flat array representation of a trained decision tree.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Class that stores a decision tree as parallel arrays indexed by node position. The children of a node are
+ * stored next to each other, starting at firstChild. Slot 0 of the block holds the fallback used when the
+ * instance has no arrow label in the tree (code -1), and slot 1 + code holds the child for a bin code.
+ * Leaves have an attribute of -1.
+ */
+
+public class CompiledTree implements TreeScorer {
+    private static final int MAGIC = 0x49443354; // "ID3T"
+    private static final int VERSION = 1;
+
+    final TreeSchema schema;
+    final int[] attribute;
+    final int[] firstChild;
+    final byte[] label;
+
+    CompiledTree(TreeSchema schema, int[] attribute, int[] firstChild, byte[] label) {
+        this.schema = schema;
+        this.attribute = attribute;
+        this.firstChild = firstChild;
+        this.label = label;
+    }
+
+    /**
+     * Method to retrieve the number of nodes (including the fallback slots) of the tree.
+     *
+     * @return number of nodes
+     */
+    public int size() {
+        return attribute.length;
+    }
+
+    /**
+     * Method to predict the class label id by walking down the arrays until a leaf is reached.
+     *
+     * @param codes - bin code of each attribute, in the order of the schema
+     * @return id of the predicted class label, or -1 when the tree is empty
+     */
+    @Override
+    public int score(byte[] codes) {
+        int node = 0;
+        int splitAttribute;
+        while ((splitAttribute = attribute[node]) >= 0) {
+            node = firstChild[node] + 1 + codes[splitAttribute];
+        }
+        return label[node];
+    }
+
+    @Override
+    public void scoreColumns(byte[][] columns, int count, byte[] labels) {
+        ColumnBatch.scoreColumns(this, columns, count, labels);
+    }
+
+    /**
+     * Method to write the tree, with its schema, in the model file format read by {@link #read}.
+     *
+     * @param out - stream the tree is written to
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(schema.attributes.length);
+        for (int i = 0; i < schema.attributes.length; i++) {
+            out.writeUTF(schema.attributes[i]);
+            out.writeInt(schema.binCounts[i]);
+        }
+        out.writeInt(schema.labels.length);
+        for (String schemaLabel : schema.labels) {
+            out.writeUTF(schemaLabel);
+        }
+        out.writeInt(attribute.length);
+        for (int node = 0; node < attribute.length; node++) {
+            out.writeInt(attribute[node]);
+            out.writeInt(firstChild[node]);
+            out.writeByte(label[node]);
+        }
+    }
+
+    /**
+     * Method to read a tree written by {@link #write}. The structure of the tree is checked, so that a damaged
+     * file is rejected here rather than failing while scoring.
+     *
+     * @param in - stream the tree is read from
+     * @return the tree
+     */
+    public static CompiledTree read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a decision tree model file");
+        }
+        String[] attributes = new String[in.readInt()];
+        int[] binCounts = new int[attributes.length];
+        for (int i = 0; i < attributes.length; i++) {
+            attributes[i] = in.readUTF();
+            binCounts[i] = in.readInt();
+        }
+        String[] labels = new String[in.readInt()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = in.readUTF();
+        }
+        TreeSchema schema = new TreeSchema(attributes, binCounts, labels);
+
+        int size = in.readInt();
+        int[] attribute = new int[size];
+        int[] firstChild = new int[size];
+        byte[] label = new byte[size];
+        for (int node = 0; node < size; node++) {
+            attribute[node] = in.readInt();
+            firstChild[node] = in.readInt();
+            label[node] = in.readByte();
+            // Children always follow their parent, so a valid tree has no cycles
+            boolean valid = label[node] >= -1 && label[node] < labels.length && (attribute[node] == -1
+                    || attribute[node] >= 0 && attribute[node] < attributes.length && firstChild[node] > node
+                    && (long) firstChild[node] + binCounts[attribute[node]] < size);
+            if (!valid) {
+                throw new IOException("Invalid node " + node + " in model file");
+            }
+        }
+        return new CompiledTree(schema, attribute, firstChild, label);
+    }
+
+    /**
+     * Class to build a compiled tree top down. The builder starts with a single unassigned root at position 0.
+     * Every node position handed out by the builder must be assigned exactly once, either as a leaf or as a split.
+     */
+
+    public static class Builder {
+        private final TreeSchema schema;
+        private int[] attribute = new int[16];
+        private int[] firstChild = new int[16];
+        private byte[] label = new byte[16];
+        private int size = 1;
+
+        public Builder(TreeSchema schema) {
+            this.schema = schema;
+        }
+
+        /**
+         * Method to assign a leaf to a node position.
+         *
+         * @param node        - position of the node
+         * @param outputLabel - class label of the leaf, or null for an empty leaf
+         */
+        public void leaf(int node, String outputLabel) {
+            attribute[node] = -1;
+            label[node] = (byte) schema.labelId(outputLabel);
+        }
+
+        /**
+         * Method to assign a split to a node position. The returned block has one fallback slot followed by one
+         * slot per bin of the attribute; all of them must be assigned by the caller.
+         *
+         * @param node           - position of the node
+         * @param splitAttribute - position of the splitting attribute in the schema
+         * @param majorityLabel  - majority label of the node, used when the instance has no arrow label
+         * @return position of the first (fallback) slot of the children block
+         */
+        public int split(int node, int splitAttribute, String majorityLabel) {
+            int first = size;
+            size += schema.binCounts[splitAttribute] + 1;
+            if (size > attribute.length) {
+                int capacity = Math.max(size, attribute.length * 2);
+                attribute = Arrays.copyOf(attribute, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                label = Arrays.copyOf(label, capacity);
+            }
+            attribute[node] = splitAttribute;
+            firstChild[node] = first;
+            label[node] = (byte) schema.labelId(majorityLabel);
+            return first;
+        }
+
+        public CompiledTree build() {
+            return new CompiledTree(schema, Arrays.copyOf(attribute, size), Arrays.copyOf(firstChild, size),
+                    Arrays.copyOf(label, size));
+        }
+    }
+}
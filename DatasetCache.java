@@ -0,0 +1,361 @@
+/**
+ * Binary cache of parsed data sets.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Class that keeps a parsed data set in a binary columnar file next to its CSV source, so that later runs skip
+ * parsing the text. The file holds the header line, the size and CRC-32C content hash of every shard of the source,
+ * one column of fixed-point bytes per numeric value (QuantizedColumn) and one column of dictionary codes per
+ * categorical value (the class label included). A run whose shards still have the recorded sizes and hashes maps the
+ * file into memory and rebuilds the instances from the columns; any other run parses the source and rewrites the file.
+ *
+ * @param <T> type of the instances of the data set
+ */
+
+public class DatasetCache<T> {
+
+    private static final int MAGIC = 0x49443343; // "ID3C"
+    private static final int VERSION = 2;
+    private static final String SUFFIX = ".id3cache";
+
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    /**
+     * Interface that maps an instance to the values stored in the cache and back.
+     *
+     * @param <T> type of the instances
+     */
+    public interface RowCodec<T> {
+
+        /**
+         * Method to retrieve the categorical values of an instance, always in the same order.
+         */
+        String[] categories(T row);
+
+        /**
+         * Method to retrieve the fixed-point numeric values of an instance, always in the same order.
+         */
+        byte[] numbers(T row);
+
+        /**
+         * Method to create an instance from its values. The arrays are reused for the next instance.
+         */
+        T decode(String[] categories, byte[] numbers);
+    }
+
+    /**
+     * Interface for the parser that is used when the cache cannot be used.
+     *
+     * @param <T> type of the instances
+     */
+    public interface Parser<T> {
+
+        /**
+         * Method to parse the source of the data set.
+         *
+         * @param header - receives the header line of the source
+         * @return the instances of the data set
+         */
+        List<T> parse(Consumer<String> header) throws IOException;
+    }
+
+    private final RowCodec<T> codec;
+
+    public DatasetCache(RowCodec<T> codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Method to retrieve the path of the cache of a data set: a hidden file next to the file, directory or glob,
+     * named after it with glob characters replaced and the suffix .id3cache appended. Being hidden, the file is not
+     * taken for a shard of the data set.
+     *
+     * @param location - file, directory or glob of the shards of the data set
+     * @return path of the cache file
+     */
+    public static Path cachePath(String location) {
+        String name = location.replaceAll("[*?\\[\\]{}]", "_").replaceAll("[/\\\\]+$", "");
+        Path path = Paths.get(name).toAbsolutePath();
+        return path.resolveSibling("." + path.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Method to read a data set from its cache, or from its source when the cache is missing or stale.
+     * After parsing the source, the cache is rewritten; a cache that cannot be written only costs the next run
+     * another parse.
+     *
+     * @param location - file, directory or glob of the shards of the data set
+     * @param header   - receives the header line of the data set
+     * @param parser   - parses the source of the data set
+     * @return the instances of the data set
+     */
+    public List<T> read(String location, Consumer<String> header, Parser<T> parser) throws IOException {
+        List<Path> shards = ShardedInput.resolve(location);
+        long[] hashes = contentHashes(shards);
+        Path cache = cachePath(location);
+
+        if (Files.isRegularFile(cache)) {
+            try {
+                List<T> rows = load(cache, shards, hashes, header);
+                if (rows != null) {
+                    return rows;
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Ignoring unreadable data set cache " + cache + ": " + e);
+            }
+        }
+
+        String[] sourceHeader = new String[1];
+        List<T> rows = parser.parse(line -> {
+            sourceHeader[0] = line;
+            header.accept(line);
+        });
+        try {
+            store(cache, shards, hashes, sourceHeader[0], rows);
+        } catch (IOException e) {
+            System.err.println("Could not write the data set cache " + cache + ": " + e);
+        }
+        return rows;
+    }
+
+    /**
+     * Method to compute the CRC-32C of the content of each shard. The shards are hashed in parallel.
+     *
+     * @return hash of each shard
+     */
+    static long[] contentHashes(List<Path> shards) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(ShardedInput.DEFAULT_THREADS, shards.size())));
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (Path shard : shards) {
+                futures.add(executor.submit(() -> contentHash(shard)));
+            }
+            long[] hashes = new long[shards.size()];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = futures.get(i).get();
+            }
+            return hashes;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Hashing the data set failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing the data set", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static long contentHash(Path shard) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+        try (FileChannel channel = FileChannel.open(shard, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Method to write the cache file. The file is written next to its final path and moved into place, so that
+     * a concurrent run never maps a partly written file.
+     */
+    private void store(Path cache, List<Path> shards, long[] hashes, String header, List<T> rows) throws IOException {
+        int categoryColumns = rows.isEmpty() ? 0 : codec.categories(rows.get(0)).length;
+        int numberColumns = rows.isEmpty() ? 0 : codec.numbers(rows.get(0)).length;
+
+        List<Map<String, Integer>> dictionaries = new ArrayList<>();
+        for (int column = 0; column < categoryColumns; column++) {
+            dictionaries.add(new HashMap<>());
+        }
+        for (T row : rows) {
+            String[] categories = codec.categories(row);
+            for (int column = 0; column < categoryColumns; column++) {
+                Map<String, Integer> dictionary = dictionaries.get(column);
+                dictionary.putIfAbsent(categories[column], dictionary.size());
+            }
+        }
+
+        ByteArrayOutputStream metadataBytes = new ByteArrayOutputStream();
+        DataOutputStream metadata = new DataOutputStream(metadataBytes);
+        metadata.writeUTF(header == null ? "" : header);
+        metadata.writeInt(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            metadata.writeUTF(shards.get(i).getFileName().toString());
+            metadata.writeLong(Files.size(shards.get(i)));
+            metadata.writeLong(hashes[i]);
+        }
+        metadata.writeInt(rows.size());
+        metadata.writeInt(numberColumns);
+        metadata.writeInt(categoryColumns);
+        for (Map<String, Integer> dictionary : dictionaries) {
+            String[] values = new String[dictionary.size()];
+            for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+                values[entry.getValue()] = entry.getKey();
+            }
+            metadata.writeInt(values.length);
+            for (String value : values) {
+                metadata.writeUTF(value);
+            }
+        }
+        metadata.flush();
+
+        Path temporary = cache.resolveSibling(cache.getFileName() + "." + ProcessHandle.current().pid() + "-"
+                + Thread.currentThread().threadId() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                            StandardOpenOption.WRITE), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(metadataBytes.size());
+                metadataBytes.writeTo(out);
+                for (int column = 0; column < numberColumns; column++) {
+                    for (T row : rows) {
+                        out.writeByte(codec.numbers(row)[column]);
+                    }
+                }
+                for (int column = 0; column < categoryColumns; column++) {
+                    Map<String, Integer> dictionary = dictionaries.get(column);
+                    int width = codeWidth(dictionary.size());
+                    for (T row : rows) {
+                        int code = dictionary.get(codec.categories(row)[column]);
+                        if (width == 1) {
+                            out.writeByte(code);
+                        } else if (width == 2) {
+                            out.writeShort(code);
+                        } else {
+                            out.writeInt(code);
+                        }
+                    }
+                }
+            }
+            Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Method to map the cache file and rebuild the instances from its columns.
+     *
+     * @return the instances, or null when the cache was written for other content than the current shards
+     */
+    private List<T> load(Path cache, List<Path> shards, long[] hashes, Consumer<String> header) throws IOException {
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            MemorySegment file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            if (file.get(INT, 0) != MAGIC || file.get(INT, 4) != VERSION) {
+                return null;
+            }
+            int metadataLength = file.get(INT, 8);
+            DataInputStream metadata = new DataInputStream(new ByteArrayInputStream(
+                    file.asSlice(12, metadataLength).toArray(ValueLayout.JAVA_BYTE)));
+
+            String sourceHeader = metadata.readUTF();
+            if (metadata.readInt() != shards.size()) {
+                return null;
+            }
+            for (int i = 0; i < shards.size(); i++) {
+                String name = metadata.readUTF();
+                long shardSize = metadata.readLong();
+                long hash = metadata.readLong();
+                if (!name.equals(shards.get(i).getFileName().toString()) || shardSize != Files.size(shards.get(i))
+                        || hash != hashes[i]) {
+                    return null;
+                }
+            }
+
+            int size = metadata.readInt();
+            int numberColumns = metadata.readInt();
+            int categoryColumns = metadata.readInt();
+            String[][] dictionaries = new String[categoryColumns][];
+            for (int column = 0; column < categoryColumns; column++) {
+                dictionaries[column] = new String[metadata.readInt()];
+                for (int code = 0; code < dictionaries[column].length; code++) {
+                    dictionaries[column][code] = metadata.readUTF();
+                }
+            }
+
+            long[] numberOffsets = new long[numberColumns];
+            long offset = 12L + metadataLength;
+            for (int column = 0; column < numberColumns; column++) {
+                numberOffsets[column] = offset;
+                offset += size;
+            }
+            long[] categoryOffsets = new long[categoryColumns];
+            int[] widths = new int[categoryColumns];
+            for (int column = 0; column < categoryColumns; column++) {
+                categoryOffsets[column] = offset;
+                widths[column] = codeWidth(dictionaries[column].length);
+                offset += (long) widths[column] * size;
+            }
+            if (offset != file.byteSize()) {
+                throw new IOException("Cache file has " + file.byteSize() + " bytes instead of " + offset);
+            }
+
+            header.accept(sourceHeader);
+            List<T> rows = new ArrayList<>(size);
+            String[] categories = new String[categoryColumns];
+            byte[] numbers = new byte[numberColumns];
+            for (int row = 0; row < size; row++) {
+                for (int column = 0; column < numberColumns; column++) {
+                    numbers[column] = file.get(ValueLayout.JAVA_BYTE, numberOffsets[column] + row);
+                }
+                for (int column = 0; column < categoryColumns; column++) {
+                    long position = categoryOffsets[column] + (long) widths[column] * row;
+                    int code = widths[column] == 1 ? file.get(ValueLayout.JAVA_BYTE, position) & 0xff
+                            : widths[column] == 2 ? file.get(SHORT, position) & 0xffff
+                            : file.get(INT, position);
+                    categories[column] = dictionaries[column][code];
+                }
+                rows.add(codec.decode(categories, numbers));
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Method to retrieve the number of bytes of a dictionary code.
+     */
+    private static int codeWidth(int dictionarySize) {
+        return dictionarySize <= 1 << 8 ? 1 : dictionarySize <= 1 << 16 ? 2 : 4;
+    }
+}
@@ -0,0 +1,468 @@
+/**
+ * Decision tree training over several processes.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class that trains one decision tree from data sets spread over several worker processes. Each worker loads one
+ * shard of the rows and keeps them binned; the coordinator never sees a row. For every node the coordinator asks
+ * the workers for the counts per attribute, bin and label of their rows of that node, adds them up and makes the
+ * same choices as {@link BinnedTreeTrainer} - same gain, same pruning, same ties. It then tells the workers how the
+ * node is split, and they partition their rows. Like the single-process trainer, only the smaller children of a
+ * split are counted; the histogram of the largest child is the parent's minus its siblings'.
+ * <p>
+ * Coordinator and workers talk over a Unix domain socket, so several JVMs on one machine can train together:
+ * <pre>
+ *   java DistributedTrainer coordinator &lt;model&gt; &lt;socket&gt; &lt;workers&gt; &lt;model file&gt;
+ *   java DistributedTrainer worker &lt;model&gt; &lt;socket&gt; &lt;shard&gt;
+ * </pre>
+ * The model is ID3 or ID3PartB, and the trained tree is saved in the format read by {@link ModelRegistry}.
+ */
+
+public class DistributedTrainer {
+
+    private static final byte HISTOGRAM = 1;
+    private static final byte SPLIT = 2;
+    private static final byte DONE = 3;
+
+    static final long CONNECT_TIMEOUT_MILLIS = 60000;
+
+    private final TreeSchema schema;
+    private final int labelCount;
+    private final List<DataInputStream> inputs = new ArrayList<>();
+    private final List<DataOutputStream> outputs = new ArrayList<>();
+    private int nextNode = 1;
+
+    private DistributedTrainer(TreeSchema schema) {
+        this.schema = schema;
+        this.labelCount = schema.labels.length;
+    }
+
+    /**
+     * Main method of a coordinator or worker process.
+     *
+     * @param args - role, model and socket, then the number of workers and the model file for the coordinator
+     *             or the location of its shard for a worker
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 5 && args[0].equals("coordinator")) {
+            TrainingDaemon.Model model = TrainingDaemon.newModel(args[1]);
+            CompiledTree tree = coordinate(model.schema(), Paths.get(args[2]), Integer.parseInt(args[3]));
+            ModelRegistry.save(tree, Paths.get(args[4]));
+            System.out.println("Training successfully completed: " + tree.size() + " nodes");
+        } else if (args.length == 4 && args[0].equals("worker")) {
+            TrainingDaemon.Model model = TrainingDaemon.newModel(args[1]);
+            work(model.load(args[3]), Paths.get(args[2]));
+        } else {
+            System.out.println("Please enter either: coordinator <model> <socket> <workers> <model file>");
+            System.out.println("                 or: worker <model> <socket> <shard>");
+        }
+    }
+
+    /**
+     * Method to wait for the workers and train the tree from their rows.
+     *
+     * @param schema     - schema of the data set
+     * @param socketPath - path of the socket file, which is replaced if it exists
+     * @param workers    - number of workers to wait for
+     * @return the decision tree in its flat array form
+     */
+    public static CompiledTree coordinate(TreeSchema schema, Path socketPath, int workers) throws IOException {
+        return coordinate(schema, socketPath, workers, CONNECT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Method to wait for the workers and train the tree from their rows, giving up when they have not all connected
+     * in time.
+     *
+     * @param schema        - schema of the data set
+     * @param socketPath    - path of the socket file, which is replaced if it exists
+     * @param workers       - number of workers to wait for
+     * @param acceptTimeout - milliseconds the workers have to connect, from the creation of the socket
+     * @return the decision tree in its flat array form
+     * @throws IOException when fewer workers than expected have connected in time
+     */
+    static CompiledTree coordinate(TreeSchema schema, Path socketPath, int workers, long acceptTimeout)
+            throws IOException {
+        DistributedTrainer coordinator = new DistributedTrainer(schema);
+        List<SocketChannel> channels = new ArrayList<>();
+        Files.deleteIfExists(socketPath);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             Selector selector = Selector.open()) {
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+            // Accepts without blocking, so that the wait for a worker that never starts has a deadline
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            long deadline = System.currentTimeMillis() + acceptTimeout;
+            String header = null;
+            long rows = 0;
+            while (channels.size() < workers) {
+                SocketChannel channel = server.accept();
+                if (channel == null) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        throw new IOException("Only " + channels.size() + " of " + workers + " workers connected to "
+                                + socketPath + " within " + acceptTimeout + " ms");
+                    }
+                    selector.select(wait);
+                    selector.selectedKeys().clear();
+                    continue;
+                }
+                channels.add(channel);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+                coordinator.inputs.add(in);
+                coordinator.outputs.add(new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(channel))));
+                rows += in.readInt();
+                String workerHeader = in.readUTF();
+                if (header != null && !header.equals(workerHeader)) {
+                    throw new IOException("Worker attributes " + workerHeader + " do not match " + header);
+                }
+                header = workerHeader;
+            }
+            System.out.println(workers + " workers connected with " + rows + " rows");
+
+            List<String> remainingAttributes = new LinkedList<>(Arrays.asList(header.split(",")));
+            return coordinator.train(remainingAttributes);
+        } finally {
+            for (DataOutputStream out : coordinator.outputs) {
+                try {
+                    out.writeByte(DONE);
+                    out.flush();
+                } catch (IOException e) {
+                    // the worker is gone already
+                }
+            }
+            for (SocketChannel channel : channels) {
+                channel.close();
+            }
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    private CompiledTree train(List<String> remainingAttributes) throws IOException {
+        CompiledTree.Builder builder = new CompiledTree.Builder(schema);
+        int[][] labelCounts = new int[1][];
+        int[][][] histogram = histograms(new int[]{0}, remainingAttributes, labelCounts)[0];
+        trainNode(builder, 0, 0, remainingAttributes, null, labelCounts[0], histogram);
+        return builder.build();
+    }
+
+    /**
+     * Method to construct a node and its subtree, as BinnedTreeTrainer does.
+     *
+     * @param node        - id of the node at the workers
+     * @param labelCounts - label counts of the rows of the node, over all workers
+     * @param histogram   - counts per bin and label of the rows of the node, for every remaining attribute
+     */
+    private void trainNode(CompiledTree.Builder builder, int position, int node, List<String> remainingAttributes,
+                           String fallbackLabel, int[] labelCounts, int[][][] histogram) throws IOException {
+        int size = 0;
+        for (int count : labelCounts) {
+            size += count;
+        }
+        if (size == 0) {
+            builder.leaf(position, fallbackLabel);
+            return;
+        }
+
+        String opLabel = BinnedTreeTrainer.checkPureNode(schema, labelCounts, size, false);
+        if (opLabel != null) {
+            builder.leaf(position, opLabel);
+            return;
+        }
+
+        HashMap<String, Double> gainMap = new HashMap<>();
+        for (String attribute : remainingAttributes) {
+            int index = schema.indexOf(attribute);
+            if (index >= 0) {
+                gainMap.put(attribute, BinnedTreeTrainer.computeInformationGain(labelCounts, size, histogram[index]));
+            }
+        }
+
+        String splittingAttribute = BinnedTreeTrainer.getAttributeWithHighestGain(gainMap);
+        String majorityLabel = BinnedTreeTrainer.checkPureNode(schema, labelCounts, size, true);
+        if (splittingAttribute == null) {
+            builder.leaf(position, majorityLabel);
+            return;
+        }
+
+        remainingAttributes.remove(splittingAttribute);
+        int attribute = schema.indexOf(splittingAttribute);
+        int first = builder.split(position, attribute, majorityLabel);
+        builder.leaf(first, majorityLabel);
+
+        int[][] childLabelCounts = histogram[attribute];
+        int bins = childLabelCounts.length;
+        int firstChildNode = nextNode;
+        nextNode += bins;
+        for (DataOutputStream out : outputs) {
+            out.writeByte(SPLIT);
+            out.writeInt(node);
+            out.writeInt(attribute);
+            out.writeInt(firstChildNode);
+        }
+
+        int[][][][] childHistograms = childHistograms(histogram, childLabelCounts, firstChildNode, remainingAttributes);
+        for (int bin = 0; bin < bins; bin++) {
+            trainNode(builder, first + 1 + bin, firstChildNode + bin, remainingAttributes, majorityLabel,
+                    childLabelCounts[bin], childHistograms[bin]);
+        }
+    }
+
+    /**
+     * Method to collect the histograms of the children of a split: from the workers for all non-empty children
+     * but the largest, in one request, and by subtraction for the largest.
+     */
+    private int[][][][] childHistograms(int[][][] histogram, int[][] childLabelCounts, int firstChildNode,
+                                        List<String> remainingAttributes) throws IOException {
+        int bins = childLabelCounts.length;
+        int[] sizes = new int[bins];
+        int largest = 0;
+        int requested = 0;
+        for (int bin = 0; bin < bins; bin++) {
+            for (int count : childLabelCounts[bin]) {
+                sizes[bin] += count;
+            }
+            if (sizes[bin] > sizes[largest]) {
+                largest = bin;
+            }
+        }
+        int[] nodes = new int[bins];
+        for (int bin = 0; bin < bins; bin++) {
+            if (bin != largest && sizes[bin] > 0) {
+                nodes[requested++] = firstChildNode + bin;
+            }
+        }
+        int[][][][] counted = histograms(Arrays.copyOf(nodes, requested), remainingAttributes, null);
+
+        int[][][][] childHistograms = new int[bins][][][];
+        int[][][] subtracted = new int[histogram.length][][];
+        for (String name : remainingAttributes) {
+            int attribute = schema.indexOf(name);
+            if (attribute >= 0) {
+                subtracted[attribute] = new int[histogram[attribute].length][];
+                for (int value = 0; value < histogram[attribute].length; value++) {
+                    subtracted[attribute][value] = histogram[attribute][value].clone();
+                }
+            }
+        }
+        for (int bin = 0, i = 0; bin < bins; bin++) {
+            if (bin == largest) {
+                continue;
+            }
+            childHistograms[bin] = sizes[bin] > 0 ? counted[i++] : new int[histogram.length][][];
+            for (int attribute = 0; attribute < subtracted.length; attribute++) {
+                if (subtracted[attribute] != null && childHistograms[bin][attribute] != null) {
+                    for (int value = 0; value < subtracted[attribute].length; value++) {
+                        for (int label = 0; label < labelCount; label++) {
+                            subtracted[attribute][value][label] -= childHistograms[bin][attribute][value][label];
+                        }
+                    }
+                }
+            }
+        }
+        childHistograms[largest] = subtracted;
+        return childHistograms;
+    }
+
+    /**
+     * Method to request the histograms of some nodes from all workers and add them up.
+     *
+     * @param nodes       - ids of the nodes
+     * @param labelCounts - receives the label counts of each node, when not null
+     * @return histogram of each node, indexed by node, attribute, bin and label; null for attributes that are
+     * not remaining
+     */
+    private int[][][][] histograms(int[] nodes, List<String> remainingAttributes, int[][] labelCounts)
+            throws IOException {
+        int[][][][] histograms = new int[nodes.length][schema.attributes.length][][];
+        List<Integer> attributes = new ArrayList<>();
+        for (String name : remainingAttributes) {
+            int attribute = schema.indexOf(name);
+            if (attribute >= 0) {
+                attributes.add(attribute);
+                for (int[][][] histogram : histograms) {
+                    histogram[attribute] = new int[schema.binCounts[attribute]][labelCount];
+                }
+            }
+        }
+        if (labelCounts != null) {
+            for (int i = 0; i < nodes.length; i++) {
+                labelCounts[i] = new int[labelCount];
+            }
+        }
+        if (nodes.length == 0) {
+            return histograms;
+        }
+
+        // All workers count at the same time; the replies are read once every request is sent
+        for (DataOutputStream out : outputs) {
+            out.writeByte(HISTOGRAM);
+            out.writeInt(nodes.length);
+            for (int node : nodes) {
+                out.writeInt(node);
+            }
+            out.writeInt(attributes.size());
+            for (int attribute : attributes) {
+                out.writeInt(attribute);
+            }
+            out.flush();
+        }
+        for (DataInputStream in : inputs) {
+            for (int i = 0; i < nodes.length; i++) {
+                for (int label = 0; label < labelCount; label++) {
+                    int count = in.readInt();
+                    if (labelCounts != null) {
+                        labelCounts[i][label] += count;
+                    }
+                }
+                for (int attribute : attributes) {
+                    for (int[] counts : histograms[i][attribute]) {
+                        for (int label = 0; label < labelCount; label++) {
+                            counts[label] += in.readInt();
+                        }
+                    }
+                }
+            }
+        }
+        return histograms;
+    }
+
+    /**
+     * Method to serve a coordinator with the rows of one shard until training is done.
+     *
+     * @param dataset    - binned rows of the shard with the attributes of its header
+     * @param socketPath - path of the socket file of the coordinator, which may not exist yet
+     */
+    public static void work(TrainingDaemon.Dataset dataset, Path socketPath) throws IOException {
+        BinnedDataset data = dataset.data;
+        TreeSchema schema = data.schema();
+        int labelCount = schema.labels.length;
+
+        try (SocketChannel channel = connect(socketPath)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            out.writeInt(data.size());
+            out.writeUTF(String.join(",", dataset.attributes));
+            out.flush();
+
+            // Rows of a node are kept together in the row index; slices maps a node id to its from..to
+            int[] rows = new int[data.size()];
+            int[] scratch = new int[data.size()];
+            for (int row = 0; row < rows.length; row++) {
+                rows[row] = row;
+            }
+            Map<Integer, int[]> slices = new HashMap<>();
+            slices.put(0, new int[]{0, rows.length});
+
+            byte command;
+            while ((command = in.readByte()) != DONE) {
+                if (command == HISTOGRAM) {
+                    int[] nodes = new int[in.readInt()];
+                    for (int i = 0; i < nodes.length; i++) {
+                        nodes[i] = in.readInt();
+                    }
+                    int[] attributes = new int[in.readInt()];
+                    for (int i = 0; i < attributes.length; i++) {
+                        attributes[i] = in.readInt();
+                    }
+                    for (int node : nodes) {
+                        int[] slice = slices.get(node);
+                        int[] labelCounts = new int[labelCount];
+                        for (int i = slice[0]; i < slice[1]; i++) {
+                            labelCounts[data.label(rows[i])]++;
+                        }
+                        for (int count : labelCounts) {
+                            out.writeInt(count);
+                        }
+                        for (int attribute : attributes) {
+                            int[][] counts = new int[schema.binCounts[attribute]][labelCount];
+                            for (int i = slice[0]; i < slice[1]; i++) {
+                                counts[Math.max(data.code(attribute, rows[i]), 0)][data.label(rows[i])]++;
+                            }
+                            for (int[] binCounts : counts) {
+                                for (int count : binCounts) {
+                                    out.writeInt(count);
+                                }
+                            }
+                        }
+                    }
+                    out.flush();
+                } else if (command == SPLIT) {
+                    int node = in.readInt();
+                    int attribute = in.readInt();
+                    int firstChild = in.readInt();
+                    int[] slice = slices.remove(node);
+                    int bins = schema.binCounts[attribute];
+
+                    // Stable counting sort of the slice by bin, as BinnedTreeTrainer partitions
+                    int[] next = new int[bins + 1];
+                    for (int i = slice[0]; i < slice[1]; i++) {
+                        next[Math.max(data.code(attribute, rows[i]), 0) + 1]++;
+                    }
+                    next[0] = slice[0];
+                    for (int bin = 1; bin <= bins; bin++) {
+                        next[bin] += next[bin - 1];
+                    }
+                    for (int bin = 0; bin < bins; bin++) {
+                        slices.put(firstChild + bin, new int[]{next[bin], next[bin + 1]});
+                    }
+                    for (int i = slice[0]; i < slice[1]; i++) {
+                        scratch[next[Math.max(data.code(attribute, rows[i]), 0)]++] = rows[i];
+                    }
+                    System.arraycopy(scratch, slice[0], rows, slice[0], slice[1] - slice[0]);
+                } else {
+                    throw new IOException("Unknown command " + command);
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to connect to the coordinator, waiting for it to create its socket.
+     */
+    private static SocketChannel connect(Path socketPath) throws IOException {
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (true) {
+            SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                channel.connect(UnixDomainSocketAddress.of(socketPath));
+                return channel;
+            } catch (IOException e) {
+                channel.close();
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while connecting to " + socketPath, e);
+            }
+        }
+    }
+}
@@ -4,25 +4,34 @@
  */
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
- * Class that represents an instance of a customer from the data set.
+ * Class that represents an instance of a customer from the data set. The normalized numeric values are stored in
+ * fixed point (QuantizedColumn), which keeps the bin of every value.
  */
 
 class CustomerInfo {
     String type;
     String lifeStyle;
-    double vacation;
-    double eCredit;
-    double salary;
-    double property;
+    byte vacation;
+    byte eCredit;
+    byte salary;
+    byte property;
     String label;
 
     public CustomerInfo(String type, String lifeStyle, double vacation, double eCredit, double salary,
                         double property, String label) {
+        this(type, lifeStyle, QuantizedColumn.quantize(vacation), QuantizedColumn.quantize(eCredit),
+                QuantizedColumn.quantize(salary), QuantizedColumn.quantize(property), label);
+    }
+
+    CustomerInfo(String type, String lifeStyle, byte vacation, byte eCredit, byte salary, byte property,
+                 String label) {
         this.type = type;
         this.lifeStyle = lifeStyle;
         this.vacation = vacation;
@@ -62,7 +71,32 @@ public class ID3 {
     private static final String SALARY = "salary";
     private static final String PROPERTY = "property";
 
-    private static List<String> attributes = new ArrayList<>(); // list of attributes from the data set
+    // Attributes in the order of the columns of the data set, with the number of possible values of each
+    private static final TreeSchema SCHEMA = new TreeSchema(
+            new String[]{TYPE, LIFESTYLE, VACATION, ECREDIT, SALARY, PROPERTY},
+            new int[]{5, 4, 4, 4, 4, 4},
+            new String[]{"C1", "C2", "C3", "C4", "C5"});
+
+    private List<String> attributes = new ArrayList<>(); // list of attributes from the last data set read
+
+    // Binary cache of parsed training sets: categorical values, class label last, and fixed-point numeric values
+    private static final DatasetCache<CustomerInfo> CACHE = new DatasetCache<>(new DatasetCache.RowCodec<>() {
+        @Override
+        public String[] categories(CustomerInfo customer) {
+            return new String[]{customer.type, customer.lifeStyle, customer.label};
+        }
+
+        @Override
+        public byte[] numbers(CustomerInfo customer) {
+            return new byte[]{customer.vacation, customer.eCredit, customer.salary, customer.property};
+        }
+
+        @Override
+        public CustomerInfo decode(String[] categories, byte[] numbers) {
+            return new CustomerInfo(categories[0], categories[1], numbers[0], numbers[1], numbers[2], numbers[3],
+                            categories[2]);
+        }
+    });
 
     /**
      * Method to calculate the entropy for a given set of data.
@@ -98,7 +132,7 @@ public class ID3 {
                     labelCounts[4]++;
                     break;
                 default:
-                    System.out.println("Invalid class label");
+                    System.err.println("Invalid class label");
                     break;
             }
         }
@@ -152,7 +186,17 @@ public class ID3 {
      */
 
     public String getAttributeWithHighestGain(List<CustomerInfo> data, List<String> remainingAttributes) {
-        HashMap<String, Double> gainMap = new HashMap<>();
+        return getAttributeWithHighestGain(data, remainingAttributes, new HashMap<>());
+    }
+
+    /**
+     * Method to retrieve the attribute with the highest information gain, keeping the gain of every attribute.
+     * @param gainMap - receives the information gain of each remaining attribute
+     * @return the attribute with the highest information gain
+     */
+
+    private String getAttributeWithHighestGain(List<CustomerInfo> data, List<String> remainingAttributes,
+                                               HashMap<String, Double> gainMap) {
 
         for (String attribute : remainingAttributes) {
             gainMap.put(attribute, computeInformationGain(data, attribute));
@@ -264,25 +308,25 @@ public class ID3 {
                 break;
             case ECREDIT:
                 for (CustomerInfo customer : data) {
-                    int index = getValueMap(ECREDIT, null, customer.eCredit);
+                    int index = getValueMap(ECREDIT, null, QuantizedColumn.value(customer.eCredit));
                     chunked.get(index).add(customer);
                 }
                 break;
             case SALARY:
                 for (CustomerInfo customer : data) {
-                    int index = getValueMap(SALARY, null, customer.salary);
+                    int index = getValueMap(SALARY, null, QuantizedColumn.value(customer.salary));
                     chunked.get(index).add(customer);
                 }
                 break;
             case PROPERTY:
                 for (CustomerInfo customer : data) {
-                    int index = getValueMap(PROPERTY, null, customer.property);
+                    int index = getValueMap(PROPERTY, null, QuantizedColumn.value(customer.property));
                     chunked.get(index).add(customer);
                 }
                 break;
             case VACATION:
                 for (CustomerInfo customer : data) {
-                    int index = getValueMap(VACATION, null, customer.vacation);
+                    int index = getValueMap(VACATION, null, QuantizedColumn.value(customer.vacation));
                     chunked.get(index).add(customer);
                 }
                 break;
@@ -410,6 +454,15 @@ public class ID3 {
      */
 
     public Node train(List<CustomerInfo> data, List<String> remainingAttributes) {
+        return train(data, remainingAttributes, 0);
+    }
+
+    /**
+     * Method to construct a node of the decision tree and its subtree.
+     * @param depth - depth of the node, 0 for the root
+     */
+
+    private Node train(List<CustomerInfo> data, List<String> remainingAttributes, int depth) {
         if (data.size() == 0) {
             return null;
         }
@@ -426,7 +479,10 @@ public class ID3 {
             return node;
         }
 
-        String splittingAttribute = getAttributeWithHighestGain(data, remainingAttributes); // Get attribute with highest gain
+        TrainingEvents.NodeSplit event = new TrainingEvents.NodeSplit();
+        event.begin();
+        HashMap<String, Double> gainMap = new HashMap<>();
+        String splittingAttribute = getAttributeWithHighestGain(data, remainingAttributes, gainMap); // Get attribute with highest gain
         String majorityLabel = checkPureNode(data, true);
 
         if (splittingAttribute == null) {
@@ -444,9 +500,17 @@ public class ID3 {
 
         List<List<CustomerInfo>> chunkedData = getFilteredData(data, splittingAttribute);
         List<Double> possibleValues = getPossibleValues(splittingAttribute);
+        event.end();
+        if (event.shouldCommit()) {
+            event.depth = depth;
+            event.rows = data.size();
+            event.attribute = splittingAttribute;
+            event.gain = gainMap.get(splittingAttribute);
+            event.commit();
+        }
 
         for (int i = 0; i < possibleValues.size(); i++) {
-            Node child = train(chunkedData.get(i), remainingAttributes);
+            Node child = train(chunkedData.get(i), remainingAttributes, depth + 1);
             node.children.put(possibleValues.get(i), child);
         }
 
@@ -489,7 +553,7 @@ public class ID3 {
                     return op;
                 }
             case VACATION:
-                key = getArrowLabel(VACATION, null, customer.vacation);
+                key = getArrowLabel(VACATION, null, QuantizedColumn.value(customer.vacation));
                 op = predict(customer, node.children.get(key));
                 if (op == null) {
                     return node.outputLabel;
@@ -497,7 +561,7 @@ public class ID3 {
                     return op;
                 }
             case SALARY:
-                key = getArrowLabel(SALARY, null, customer.salary);
+                key = getArrowLabel(SALARY, null, QuantizedColumn.value(customer.salary));
                 op = predict(customer, node.children.get(key));
                 if (op == null) {
                     return node.outputLabel;
@@ -505,7 +569,7 @@ public class ID3 {
                     return op;
                 }
             case PROPERTY:
-                key = getArrowLabel(PROPERTY, null, customer.property);
+                key = getArrowLabel(PROPERTY, null, QuantizedColumn.value(customer.property));
                 op = predict(customer, node.children.get(key));
                 if (op == null) {
                     return node.outputLabel;
@@ -513,7 +577,7 @@ public class ID3 {
                     return op;
                 }
             case ECREDIT:
-                key = getArrowLabel(ECREDIT, null, customer.eCredit);
+                key = getArrowLabel(ECREDIT, null, QuantizedColumn.value(customer.eCredit));
                 op = predict(customer, node.children.get(key));
                 if (op == null) {
                     return node.outputLabel;
@@ -527,15 +591,277 @@ public class ID3 {
     }
 
 
+    /**
+     * Method to map an instance to the bin code of each of its attribute values. The bin code of a value is the
+     * position of its arrow label in the list of possible values for the attribute.
+     * @param customer instance that is encoded
+     * @return bin codes in the order of the schema, with -1 for values that have no arrow label
+     */
+
+    public byte[] encode(CustomerInfo customer) {
+        byte[] codes = new byte[SCHEMA.attributes.length];
+        codes[0] = arrowCode(0, getArrowLabel(TYPE, customer.type, 0));
+        codes[1] = arrowCode(1, getArrowLabel(LIFESTYLE, customer.lifeStyle, 0));
+        codes[2] = QuantizedColumn.code(customer.vacation);
+        codes[3] = QuantizedColumn.code(customer.eCredit);
+        codes[4] = QuantizedColumn.code(customer.salary);
+        codes[5] = QuantizedColumn.code(customer.property);
+        return codes;
+    }
+
+    /**
+     * Method to find the bin code of a categorical arrow label without building the list of possible values. The
+     * possible values of a categorical attribute are 0 to its bin count - 1, so the code is the label itself.
+     * @param attribute - position of the attribute in the schema
+     * @param arrowLabel - arrow label of the value
+     * @return bin code of the value, or -1 if the label is not a possible value of the attribute
+     */
+
+    private static byte arrowCode(int attribute, double arrowLabel) {
+        int code = (int) arrowLabel;
+        return code == arrowLabel && code >= 0 && code < SCHEMA.binCounts[attribute] ? (byte) code : -1;
+    }
+
+    /**
+     * Method to map a list of instances to bin code columns. Numeric columns are binned a whole column at a time.
+     * @param data instances that are encoded
+     * @return one column of bin codes per attribute, in the order of the schema
+     */
+
+    public byte[][] encodeColumns(List<CustomerInfo> data) {
+        int size = data.size();
+        byte[][] columns = new byte[SCHEMA.attributes.length][size];
+        byte[][] numericValues = new byte[4][size];
+
+        for (int i = 0; i < size; i++) {
+            CustomerInfo customer = data.get(i);
+            columns[0][i] = arrowCode(0, getArrowLabel(TYPE, customer.type, 0));
+            columns[1][i] = arrowCode(1, getArrowLabel(LIFESTYLE, customer.lifeStyle, 0));
+            numericValues[0][i] = customer.vacation;
+            numericValues[1][i] = customer.eCredit;
+            numericValues[2][i] = customer.salary;
+            numericValues[3][i] = customer.property;
+        }
+
+        for (int i = 0; i < numericValues.length; i++) {
+            QuantizedColumn.codes(numericValues[i], size, columns[2 + i]);
+        }
+        return columns;
+    }
+
+    /**
+     * Method to predict the label ids for a list of instances, encoding and scoring them a column at a time.
+     * @param data instances for which the prediction should be done
+     * @param tree compiled from the trained tree
+     * @return the predicted label id of each instance
+     */
+
+    public byte[] scoreBatch(List<CustomerInfo> data, CompiledTree tree) {
+        byte[] labelIds = new byte[data.size()];
+        ColumnBatch.scoreColumns(tree, encodeColumns(data), data.size(), labelIds);
+        return labelIds;
+    }
+
+    /**
+     * Method to predict the class labels for a list of instances, encoding and scoring them a column at a time.
+     * @param data instances for which the prediction should be done
+     * @param tree compiled from the trained tree
+     * @return the predicted class label of each instance
+     */
+
+    public String[] predictBatch(List<CustomerInfo> data, CompiledTree tree) {
+        byte[] labelIds = scoreBatch(data, tree);
+        String[] labels = new String[labelIds.length];
+        for (int i = 0; i < labelIds.length; i++) {
+            labels[i] = SCHEMA.label(labelIds[i]);
+        }
+        return labels;
+    }
+
+    /**
+     * Method to map a list of instances to a binned data set held on the heap.
+     * Instances with a class label that is not part of the schema are left out.
+     * @param data instances that are encoded
+     * @return the binned data set
+     */
+
+    public BinnedDataset toDataset(List<CustomerInfo> data) {
+        List<CustomerInfo> labelled = new ArrayList<>();
+        for (CustomerInfo customer : data) {
+            if (SCHEMA.labelId(customer.label) >= 0) {
+                labelled.add(customer);
+            }
+        }
+
+        byte[] labels = new byte[labelled.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = (byte) SCHEMA.labelId(labelled.get(i).label);
+        }
+        return new ColumnarDataset(SCHEMA, encodeColumns(labelled), labels, labels.length);
+    }
+
+    /**
+     * Method to construct the decision tree from a binned data set.
+     * @param data - binned data set, on or off the heap
+     * @param remainingAttributes - list of attributes that are considered while constructing the tree.
+     *                            Note: When an attribute is added as a node, it is removed from the list of remainingAttributes
+     *                            The tree is built on bitmap indexes when the system property id3.bitmap is true,
+     *                            and best first within id3.timeLimit (ms) or id3.maxNodes when either is set.
+     *                            With id3.compress the identical rows are collapsed into weighted rows first.
+     *                            id3.bitmap cannot be combined with id3.compress or id3.sample without a limit.
+     * @return the decision tree in its flat array form
+     */
+
+    public CompiledTree train(BinnedDataset data, List<String> remainingAttributes) {
+        if (Boolean.getBoolean(BitmapTreeTrainer.PROPERTY) && !AnytimeTreeTrainer.enabled()) {
+            BitmapTreeTrainer.checkOptions(Boolean.getBoolean(WeightedDataset.PROPERTY),
+                    Integer.getInteger(BinnedTreeTrainer.SAMPLE_PROPERTY, 0));
+            return new BitmapTreeTrainer(data).train(remainingAttributes);
+        }
+        // The binned and best-first trainers count the distinct rows of a compressed data set with their weights
+        BinnedDataset rows = Boolean.getBoolean(WeightedDataset.PROPERTY) ? WeightedDataset.compress(data) : data;
+        AnytimeTreeTrainer anytime = AnytimeTreeTrainer.fromProperties(rows);
+        if (anytime != null) {
+            return anytime.train(remainingAttributes);
+        }
+        return new BinnedTreeTrainer(rows).train(remainingAttributes);
+    }
+
+    /**
+     * Method to compute the information gain for an attribute from a binned data set.
+     * @param data - binned data set, on or off the heap
+     * @param attribute for which the information gain is computed
+     * @return the information gain value for the attribute in double
+     */
+
+    public Double computeInformationGain(BinnedDataset data, String attribute) {
+        return new BinnedTreeTrainer(data).computeInformationGain(attribute);
+    }
+
+    /**
+     * Method to predict the class labels for the rows of a binned data set.
+     * @param data rows for which the prediction should be done
+     * @param tree compiled from the trained tree
+     * @return the predicted class label of each row
+     */
+
+    public String[] predictBatch(BinnedDataset data, CompiledTree tree) {
+        byte[] labelIds = new byte[data.size()];
+        ColumnBatch.scoreDataset(tree, data, labelIds);
+
+        String[] labels = new String[labelIds.length];
+        for (int i = 0; i < labelIds.length; i++) {
+            labels[i] = SCHEMA.label(labelIds[i]);
+        }
+        return labels;
+    }
+
+    /**
+     * Method to convert a trained decision tree to its flat array form.
+     * A missing child is replaced by a leaf with the majority label of its parent, which is the label
+     * predict falls back to when it reaches a missing child.
+     * @param root of the trained tree
+     * @return the compiled tree
+     */
+
+    public CompiledTree compile(Node root) {
+        CompiledTree.Builder builder = new CompiledTree.Builder(SCHEMA);
+        compileNode(builder, 0, root, null);
+        return builder.build();
+    }
+
+    private void compileNode(CompiledTree.Builder builder, int position, Node node, String fallbackLabel) {
+        if (node == null) {
+            builder.leaf(position, fallbackLabel);
+            return;
+        }
+
+        int attribute = SCHEMA.indexOf(node.attribute);
+        if (node.isLeaf || attribute < 0) {
+            builder.leaf(position, node.outputLabel);
+            return;
+        }
+
+        int first = builder.split(position, attribute, node.outputLabel);
+        builder.leaf(first, node.outputLabel);
+
+        List<Double> possibleValues = getPossibleValues(node.attribute);
+        for (int i = 0; i < possibleValues.size(); i++) {
+            compileNode(builder, first + 1 + i, node.children.get(possibleValues.get(i)), node.outputLabel);
+        }
+    }
+
+    /**
+     * Method to predict the class label for a given instance with a compiled scorer.
+     * @param customer instance for which the prediction should be done
+     * @param scorer compiled from the trained tree
+     * @return the predicted class label
+     */
+
+    public String predict(CustomerInfo customer, TreeScorer scorer) {
+        return SCHEMA.label(scorer.score(encode(customer)));
+    }
+
+
+    /**
+     * Method to create the model of this data set for the training daemon. Data sets are loaded through the
+     * binary cache and binned, and trees are built by the binned trainer.
+     * @return - the model
+     */
+
+    static TrainingDaemon.Model daemonModel() {
+        ID3 id3 = new ID3();
+        return new TrainingDaemon.Model() {
+            @Override
+            public TreeSchema schema() {
+                return SCHEMA;
+            }
+
+            @Override
+            public int folds() {
+                return 10;
+            }
+
+            @Override
+            public TrainingDaemon.Dataset load(String location) throws IOException {
+                ID3 loader = new ID3(); // each load reads its own header, so loads can run concurrently
+                List<CustomerInfo> data = loader.loadData(location);
+                return new TrainingDaemon.Dataset(id3.toDataset(data), new ArrayList<>(loader.attributes));
+            }
+
+            @Override
+            public CompiledTree train(BinnedDataset data, List<String> remainingAttributes) {
+                return id3.train(data, remainingAttributes);
+            }
+
+            @Override
+            public int encodeLine(String line, byte[] codes) {
+                CustomerInfo customer = id3.parseLine(line);
+                if (customer == null) {
+                    return -2;
+                }
+                System.arraycopy(id3.encode(customer), 0, codes, 0, codes.length);
+                return SCHEMA.labelId(customer.label);
+            }
+
+            @Override
+            public StreamingScorer<?> streamingScorer(List<ModelRegistry> models, int threads) {
+                return new StreamingScorer<>(id3::parseLine, id3::encodeColumns, models, threads);
+            }
+        };
+    }
+
     /**
      * Main method of the class where arguments of the file paths are specified.
      * Note : First argument is for the input file path of the train data set.
      *        Second argument is for the input file path of the test data set.
+     *        Optional third argument is the path of a CSV file (row,label) that receives the predictions
+     *          instead of the standard output.
      * @param args - array of arguments (of the file paths)
      */
 
     public static void main(String[] args) {
-        if (args.length != 2) {
+        if (args.length != 2 && args.length != 3) {
             System.out.println("Please enter the file paths for train and test data sets.");
             return;
         }
@@ -544,8 +870,33 @@ public class ID3 {
         String testDataPath = args[1];
 
         ID3 id3 = new ID3();
+        String outputPath = args.length == 3 ? args[2] : null;
+        if (Boolean.getBoolean(OffHeapDataset.PROPERTY)) {
+            // The training set is binned straight into native memory instead of being held as a list of instances
+            id3.scoreTestSet(id3.trainOffHeap(trainDataPath), testDataPath, outputPath);
+            return;
+        }
+
         List<CustomerInfo> trainingData = id3.readData(trainDataPath);
-        Node root = id3.train(trainingData, attributes);
+        // With id3.bitmap the tree is built on the bitmap indexes of the binned training set instead of the list,
+        // and with id3.timeLimit, id3.maxNodes or id3.compress it is built from the binned training set too
+        CompiledTree compiledTree = Boolean.getBoolean(BitmapTreeTrainer.PROPERTY) || AnytimeTreeTrainer.enabled()
+                || Boolean.getBoolean(WeightedDataset.PROPERTY)
+                ? id3.train(id3.toDataset(trainingData), id3.attributes)
+                : id3.compile(id3.train(trainingData, id3.attributes));
+        TreeScorer scorer;
+        if (Boolean.getBoolean(TreeProfile.PROPERTY)) {
+            // Lays the tree out along the paths taken by the training set, as a sample of the test set
+            TreeProfile profile = new TreeProfile(compiledTree);
+            profile.scoreColumns(id3.encodeColumns(trainingData), trainingData.size());
+            scorer = profile.compile();
+            if (!(scorer instanceof LookupTableScorer)) {
+                // Only the scorers that walk the nodes depend on the layout
+                compiledTree = profile.relayout();
+            }
+        } else {
+            scorer = LookupTableScorer.compile(compiledTree);
+        }
 
         System.out.println("Training successfully completed");
 
@@ -556,17 +907,27 @@ public class ID3 {
         double sum = 0;
 
         while (foldCount <= folds) {
+            TrainingEvents.FoldEvaluation foldEvent = new TrainingEvents.FoldEvaluation();
+            foldEvent.begin();
             Collections.shuffle(validationList);
             List<CustomerInfo> testValidationSet = validationList.subList(0, validationSize);
             int count = 0;
 
             for (CustomerInfo customer : testValidationSet) {
-                String validateLabel = id3.predict(customer, root);
+                String validateLabel = id3.predict(customer, scorer);
                 if (validateLabel.equals(customer.label))
                     count++;
             }
 
             double accuracy = (double) count / testValidationSet.size() * 100;
+            foldEvent.end();
+            if (foldEvent.shouldCommit()) {
+                foldEvent.fold = foldCount;
+                foldEvent.rows = testValidationSet.size();
+                foldEvent.correct = count;
+                foldEvent.accuracy = accuracy;
+                foldEvent.commit();
+            }
             System.out.println("Accuracy for fold " + foldCount + " : " + String.format("%.2f", (double) accuracy));
             sum += accuracy;
             foldCount++;
@@ -574,57 +935,201 @@ public class ID3 {
 
         System.out.println("Cross-validation accuracy: " + String.format("%.2f", sum / folds) + "\n");
 
-        List<CustomerInfo> testData = id3.readData(testDataPath);
+        id3.scoreTestSet(ModelRegistry.of(compiledTree, scorer), testDataPath, outputPath);
+    }
+
+    /**
+     * Method to train the tree and report its cross-validation accuracy from a training set held in native memory,
+     * as main does with id3.offHeap. The training set is not kept as instances on the heap, and its native memory
+     * is freed once the tree is trained.
+     * @param filePath - path location from where the training set is read: a file, a directory or a glob of shards
+     * @return - registry of the trained tree with the scorer the folds were scored with, laid out along the paths
+     * taken by the training set with id3.profile
+     */
+    private ModelRegistry trainOffHeap(String filePath) {
+        try (OffHeapDataset trainingData = readOffHeapData(filePath)) {
+            CompiledTree compiledTree = train(trainingData, attributes);
+            TreeScorer scorer;
+            if (Boolean.getBoolean(TreeProfile.PROPERTY)) {
+                TreeProfile profile = new TreeProfile(compiledTree);
+                profile.scoreDataset(trainingData);
+                scorer = profile.compile();
+                if (!(scorer instanceof LookupTableScorer)) {
+                    // Only the scorers that walk the nodes depend on the layout
+                    compiledTree = profile.relayout();
+                }
+            } else {
+                scorer = LookupTableScorer.compile(compiledTree);
+            }
+
+            System.out.println("Training successfully completed");
+            TrainingDaemon.evaluate(10, trainingData, scorer, System.out);
+            System.out.println();
+            return ModelRegistry.of(compiledTree, scorer);
+        }
+    }
 
+    /**
+     * Method to print the predicted class labels of the test set, which is streamed through the scorer rather
+     * than loaded, so its size is not bound by memory.
+     * @param model - trained tree with the scorer that predicts its labels, such as the scorer of its profile
+     * @param testDataPath - path location from where the test set is read: a file, a directory or a glob of shards
+     * @param outputPath - CSV file (row,label) that receives the predictions, or null for the standard output
+     */
+    private void scoreTestSet(ModelRegistry model, String testDataPath, String outputPath) {
         System.out.println("Successfully loaded test data");
         System.out.println("Output class labels for the test set:");
 
-        for (int i = 0; i < testData.size(); i++) {
-            CustomerInfo customer = testData.get(i);
-            System.out.println(id3.predict(customer, root));
+        StreamingScorer<CustomerInfo> testScorer = new StreamingScorer<>(this::parseLine, this::encodeColumns, model,
+                StreamingScorer.DEFAULT_THREADS);
+        try (PredictionSink sink = outputPath != null
+                ? BufferedPredictionWriter.toFile(Paths.get(outputPath), SCHEMA, true)
+                : BufferedPredictionWriter.toStdout(SCHEMA, false)) {
+            testScorer.score(testDataPath, sink);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
     /**
      * Method to read instances from the data set.
-     * @param filePath - path location from where the data is read
+     * @param filePath - path location from where the data is read: a file, a directory or a glob of shards
      * @return - list of instances that are read from the specified file path.
      */
-    private List<CustomerInfo> readData(String filePath) {
-        List<CustomerInfo> instanceList = new ArrayList<>();
-        BufferedReader bufferedReader;
-        String inputFile = filePath;
+    List<CustomerInfo> readData(String filePath) {
         try {
-            bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(inputFile),
-                    StandardCharsets.UTF_8));
+            return loadData(filePath);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Method to read instances from the binary cache of the data set, or to parse them when the cache is missing
+     * or out of date.
+     * @param filePath - path location from where the data is read: a file, a directory or a glob of shards
+     * @return - list of instances that are read from the specified file path.
+     */
+    private List<CustomerInfo> loadData(String filePath) throws IOException {
+        TrainingEvents.DatasetLoad event = new TrainingEvents.DatasetLoad();
+        event.begin();
+        event.cached = true;
+        List<CustomerInfo> data = CACHE.read(filePath, this::setAttributes, header -> parseData(filePath, header, event));
+        TrainingEvents.loaded(event, filePath, data.size());
+        return data;
+    }
+
+    /**
+     * Method to parse the shards of the data set. The lists of instances of the shards are joined without copying.
+     * @param filePath - path location from where the data is read: a file, a directory or a glob of shards
+     * @param header - receives the header line of the data set
+     * @param event - load event that receives the number of rejected lines
+     * @return - list of instances that are read from the shards.
+     */
+    private List<CustomerInfo> parseData(String filePath, Consumer<String> header, TrainingEvents.DatasetLoad event)
+            throws IOException {
+        AtomicLong rejects = new AtomicLong();
+        List<CustomerInfo> data = ShardedInput.concat(readShards(filePath, header, lines -> {
+            List<CustomerInfo> instanceList = new ArrayList<>();
             String line;
-            line = bufferedReader.readLine();
-            line = line.toLowerCase(); // to maintain consistency of header names in CSV file
-            attributes = new LinkedList<>(Arrays.asList(line.split(",")));
-            attributes.remove(attributes.size() - 1);
-
-            while ((line = bufferedReader.readLine()) != null) {
-                String[] temp = line.split(",");
-                if (temp.length == 7) {
-                    try {
-                        CustomerInfo customerInfo = new CustomerInfo(temp[0], temp[1],
-                                Double.parseDouble(temp[2]), Double.parseDouble(temp[3]),
-                                Double.parseDouble(temp[4]), Double.parseDouble(temp[5]),
-                                temp[6]);
-                        instanceList.add(customerInfo);
-                    } catch (NumberFormatException e) {
-                        System.out.println("Error in parsing double value. ");
-                        e.printStackTrace();
-                    }
+            while ((line = lines.readLine()) != null) {
+                CustomerInfo customer = parseLine(line);
+                if (customer != null) {
+                    instanceList.add(customer);
+                } else {
+                    rejects.incrementAndGet();
                 }
             }
-
             return instanceList;
+        }));
+        event.cached = false;
+        event.rejects = rejects.get();
+        return data;
+    }
 
+    /**
+     * Method to read the data set straight into a binned data set held in native memory, without keeping
+     * the instances on the heap. Instances with a class label that is not part of the schema are left out.
+     * Each shard is encoded into a data set of its own, in parallel, and the shards are then joined in the order
+     * of their names, so the rows are in the same order as in readData.
+     * @param filePath - path location from where the data is read: a file, a directory or a glob of shards
+     * @return - the binned data set, which must be closed by the caller to free its memory. It is empty when
+     *           the data set cannot be read.
+     */
+    public OffHeapDataset readOffHeapData(String filePath) {
+        TrainingEvents.DatasetLoad event = new TrainingEvents.DatasetLoad();
+        event.begin();
+        List<OffHeapDataset> shards = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong rejects = new AtomicLong();
+        OffHeapDataset dataset;
+        try {
+            List<OffHeapDataset> shardData = readShards(filePath, this::setAttributes, lines -> {
+                OffHeapDataset shard = new OffHeapDataset(SCHEMA);
+                shards.add(shard);
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    CustomerInfo customer = parseLine(line);
+                    int labelId = customer == null ? -1 : SCHEMA.labelId(customer.label);
+                    if (labelId >= 0) {
+                        shard.add(encode(customer), labelId);
+                    } else {
+                        rejects.incrementAndGet();
+                    }
+                }
+                return shard;
+            });
+            dataset = OffHeapDataset.concat(SCHEMA, shardData);
         } catch (IOException e) {
             e.printStackTrace();
+            shards.forEach(OffHeapDataset::close);
+            dataset = new OffHeapDataset(SCHEMA);
         }
+        event.rejects = rejects.get();
+        TrainingEvents.loaded(event, filePath, dataset.size());
+        return dataset;
+    }
 
-        return instanceList;
+    /**
+     * Method to read the shards of the data set in parallel.
+     * @param filePath - path location from where the data is read: a file, a directory or a glob of shards
+     * @param header - receives the header line of the data set
+     * @param reader - reads the instances of one shard
+     * @return - the result of each shard, in the order of the shards
+     */
+    private <R> List<R> readShards(String filePath, Consumer<String> header, ShardedInput.ShardReader<R> reader)
+            throws IOException {
+        return ShardedInput.read(filePath, header, reader, ShardedInput.DEFAULT_THREADS);
     }
-}
+
+    /**
+     * Method to set the attributes from the header line of the data set.
+     * @param header - header line of the CSV file
+     */
+    private void setAttributes(String header) {
+        String line = header.toLowerCase(); // to maintain consistency of header names in CSV file
+        attributes = new LinkedList<>(Arrays.asList(line.split(",")));
+        attributes.remove(attributes.size() - 1);
+    }
+
+    /**
+     * Method to parse a line of the data set.
+     * @param line - line of the CSV file, other than the header
+     * @return - the instance, or null when the line does not hold a valid instance
+     */
+    private CustomerInfo parseLine(String line) {
+        String[] temp = line.split(",");
+        if (temp.length == 7) {
+            try {
+                return new CustomerInfo(temp[0], temp[1],
+                        Double.parseDouble(temp[2]), Double.parseDouble(temp[3]),
+                        Double.parseDouble(temp[4]), Double.parseDouble(temp[5]),
+                        temp[6]);
+            } catch (NumberFormatException e) {
+                System.err.println("Error in parsing double value. ");
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+}
\ No newline at end of file
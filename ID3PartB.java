@@ -4,27 +4,37 @@
  */
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
- * Class that represents an instance of a product from the data set.
+ * Class that represents an instance of a product from the data set. The normalized numeric values are stored in
+ * fixed point (QuantizedColumn), which keeps the bin of every value.
  */
 
 class ProductInfo {
     String service_type;
     String customer;
-    double monthly_fee;
-    double advertisement_budget;
+    byte monthly_fee;
+    byte advertisement_budget;
     String size;
     String promotion;
-    double interest_rate;
-    double period;
+    byte interest_rate;
+    byte period;
     String label;
 
     public ProductInfo(String service_type, String customer, double monthly_fee, double advertisement_budget,
                        String size, String promotion, double interest_rate, double period, String label) {
+        this(service_type, customer, QuantizedColumn.quantize(monthly_fee),
+                QuantizedColumn.quantize(advertisement_budget), size, promotion,
+                QuantizedColumn.quantize(interest_rate), QuantizedColumn.quantize(period), label);
+    }
+
+    ProductInfo(String service_type, String customer, byte monthly_fee, byte advertisement_budget, String size,
+                String promotion, byte interest_rate, byte period, String label) {
         this.service_type = service_type;
         this.customer = customer;
         this.monthly_fee = monthly_fee;
@@ -67,7 +77,33 @@ public class ID3PartB {
     private static final String INTEREST_RATE = "interest_rate";
     private static final String PERIOD = "period";
 
-    private static List<String> attributes = new ArrayList<>(); // list of attributes from the data set
+    // Attributes in the order of the columns of the data set, with the number of possible values of each
+    private static final TreeSchema SCHEMA = new TreeSchema(
+            new String[]{SERVICE_TYPE, CUSTOMER, MONTHLY_FEE, ADVERTISEMENT_BUDGET, SIZE, PROMOTION, INTEREST_RATE,
+                    PERIOD},
+            new int[]{5, 5, 4, 4, 3, 4, 4, 4},
+            new String[]{"1", "0"});
+
+    private List<String> attributes = new ArrayList<>(); // list of attributes from the last data set read
+
+    // Binary cache of parsed training sets: categorical values, class label last, and fixed-point numeric values
+    private static final DatasetCache<ProductInfo> CACHE = new DatasetCache<>(new DatasetCache.RowCodec<>() {
+        @Override
+        public String[] categories(ProductInfo product) {
+            return new String[]{product.service_type, product.customer, product.size, product.promotion, product.label};
+        }
+
+        @Override
+        public byte[] numbers(ProductInfo product) {
+            return new byte[]{product.monthly_fee, product.advertisement_budget, product.interest_rate, product.period};
+        }
+
+        @Override
+        public ProductInfo decode(String[] categories, byte[] numbers) {
+            return new ProductInfo(categories[0], categories[1], numbers[0], numbers[1], categories[2],
+                            categories[3], numbers[2], numbers[3], categories[4]);
+        }
+    });
 
     /**
      * Method to calculate the entropy for a given set of data.
@@ -94,7 +130,7 @@ public class ID3PartB {
                     labelCounts[1]++;
                     break;
                 default:
-                    System.out.println("Invalid class label");
+                    System.err.println("Invalid class label");
                     break;
             }
         }
@@ -157,7 +193,17 @@ public class ID3PartB {
      */
 
     public String getAttributeWithHighestGain(List<ProductInfo> data, List<String> remainingAttributes) {
-        HashMap<String, Double> gainMap = new HashMap<>();
+        return getAttributeWithHighestGain(data, remainingAttributes, new HashMap<>());
+    }
+
+    /**
+     * Method to retrieve the attribute with the highest information gain, keeping the gain of every attribute.
+     * @param gainMap - receives the information gain of each remaining attribute
+     * @return the attribute with the highest information gain
+     */
+
+    private String getAttributeWithHighestGain(List<ProductInfo> data, List<String> remainingAttributes,
+                                               HashMap<String, Double> gainMap) {
 
         for (String attribute : remainingAttributes) {
             gainMap.put(attribute, computeInformationGain(data, attribute));
@@ -269,13 +315,14 @@ public class ID3PartB {
                 break;
             case MONTHLY_FEE:
                 for (ProductInfo product : data) {
-                    int index = getValueMap(MONTHLY_FEE, null, product.monthly_fee);
+                    int index = getValueMap(MONTHLY_FEE, null, QuantizedColumn.value(product.monthly_fee));
                     chunked.get(index).add(product);
                 }
                 break;
             case ADVERTISEMENT_BUDGET:
                 for (ProductInfo product : data) {
-                    int index = getValueMap(ADVERTISEMENT_BUDGET, null, product.advertisement_budget);
+                    int index = getValueMap(ADVERTISEMENT_BUDGET, null,
+                            QuantizedColumn.value(product.advertisement_budget));
                     chunked.get(index).add(product);
                 }
                 break;
@@ -293,13 +340,13 @@ public class ID3PartB {
                 break;
             case INTEREST_RATE:
                 for (ProductInfo product : data) {
-                    int index = getValueMap(INTEREST_RATE, null, product.interest_rate);
+                    int index = getValueMap(INTEREST_RATE, null, QuantizedColumn.value(product.interest_rate));
                     chunked.get(index).add(product);
                 }
                 break;
             case PERIOD:
                 for (ProductInfo product : data) {
-                    int index = getValueMap(PERIOD, null, product.period);
+                    int index = getValueMap(PERIOD, null, QuantizedColumn.value(product.period));
                     chunked.get(index).add(product);
                 }
                 break;
@@ -468,6 +515,15 @@ public class ID3PartB {
      */
 
     public TreeNode train(List<ProductInfo> data, List<String> remainingAttributes) {
+        return train(data, remainingAttributes, 0);
+    }
+
+    /**
+     * Method to construct a node of the decision tree and its subtree.
+     * @param depth - depth of the node, 0 for the root
+     */
+
+    private TreeNode train(List<ProductInfo> data, List<String> remainingAttributes, int depth) {
         if (data.size() == 0) {
             return null;
         }
@@ -483,7 +539,10 @@ public class ID3PartB {
             return node;
         }
 
-        String splittingAttribute = getAttributeWithHighestGain(data, remainingAttributes); // Get attribute with highest gain
+        TrainingEvents.NodeSplit event = new TrainingEvents.NodeSplit();
+        event.begin();
+        HashMap<String, Double> gainMap = new HashMap<>();
+        String splittingAttribute = getAttributeWithHighestGain(data, remainingAttributes, gainMap); // Get attribute with highest gain
         String majorityLabel = checkPureNode(data, true);
 
         if (splittingAttribute == null) {
@@ -501,9 +560,17 @@ public class ID3PartB {
 
         List<List<ProductInfo>> chunkedData = getFilteredData(data, splittingAttribute);
         List<Double> possibleValues = getPossibleValues(splittingAttribute);
+        event.end();
+        if (event.shouldCommit()) {
+            event.depth = depth;
+            event.rows = data.size();
+            event.attribute = splittingAttribute;
+            event.gain = gainMap.get(splittingAttribute);
+            event.commit();
+        }
 
         for (int i = 0; i < possibleValues.size(); i++) {
-            TreeNode child = train(chunkedData.get(i), remainingAttributes);
+            TreeNode child = train(chunkedData.get(i), remainingAttributes, depth + 1);
             node.children.put(possibleValues.get(i), child);
         }
 
@@ -545,7 +612,7 @@ public class ID3PartB {
                     return op;
                 }
             case MONTHLY_FEE:
-                key = getArrowLabel(MONTHLY_FEE, null, product.monthly_fee);
+                key = getArrowLabel(MONTHLY_FEE, null, QuantizedColumn.value(product.monthly_fee));
                 op = predict(product, node.children.get(key));
                 if (op == null) {
                     return node.outputLabel;
@@ -553,7 +620,7 @@ public class ID3PartB {
                     return op;
                 }
             case ADVERTISEMENT_BUDGET:
-                key = getArrowLabel(ADVERTISEMENT_BUDGET, null, product.advertisement_budget);
+                key = getArrowLabel(ADVERTISEMENT_BUDGET, null, QuantizedColumn.value(product.advertisement_budget));
                 op = predict(product, node.children.get(key));
                 if (op == null) {
                     return node.outputLabel;
@@ -578,7 +645,7 @@ public class ID3PartB {
                 }
 
             case INTEREST_RATE:
-                key = getArrowLabel(INTEREST_RATE, null, product.interest_rate);
+                key = getArrowLabel(INTEREST_RATE, null, QuantizedColumn.value(product.interest_rate));
                 op = predict(product, node.children.get(key));
                 if (op == null) {
                     return node.outputLabel;
@@ -587,7 +654,7 @@ public class ID3PartB {
                 }
 
             case PERIOD:
-                key = getArrowLabel(PERIOD, null, product.period);
+                key = getArrowLabel(PERIOD, null, QuantizedColumn.value(product.period));
                 op = predict(product, node.children.get(key));
                 if (op == null) {
                     return node.outputLabel;
@@ -600,15 +667,270 @@ public class ID3PartB {
         }
     }
 
+    /**
+     * Method to map an instance to the bin code of each of its attribute values. The bin code of a value is the
+     * position of its arrow label in the list of possible values for the attribute.
+     * @param product instance that is encoded
+     * @return bin codes in the order of the schema, with -1 for values that have no arrow label
+     */
+    public byte[] encode(ProductInfo product) {
+        byte[] codes = new byte[SCHEMA.attributes.length];
+        codes[0] = arrowCode(0, getArrowLabel(SERVICE_TYPE, product.service_type, 0));
+        codes[1] = arrowCode(1, getArrowLabel(CUSTOMER, product.customer, 0));
+        codes[2] = QuantizedColumn.code(product.monthly_fee);
+        codes[3] = QuantizedColumn.code(product.advertisement_budget);
+        codes[4] = arrowCode(4, getArrowLabel(SIZE, product.size, 0));
+        codes[5] = arrowCode(5, getArrowLabel(PROMOTION, product.promotion, 0));
+        codes[6] = QuantizedColumn.code(product.interest_rate);
+        codes[7] = QuantizedColumn.code(product.period);
+        return codes;
+    }
+
+    /**
+     * Method to find the bin code of a categorical arrow label without building the list of possible values. The
+     * possible values of a categorical attribute are 0 to its bin count - 1, so the code is the label itself.
+     * @param attribute - position of the attribute in the schema
+     * @param arrowLabel - arrow label of the value
+     * @return bin code of the value, or -1 if the label is not a possible value of the attribute
+     */
+
+    private static byte arrowCode(int attribute, double arrowLabel) {
+        int code = (int) arrowLabel;
+        return code == arrowLabel && code >= 0 && code < SCHEMA.binCounts[attribute] ? (byte) code : -1;
+    }
+
+    /**
+     * Method to map a list of instances to bin code columns. Numeric columns are binned a whole column at a time.
+     * @param data instances that are encoded
+     * @return one column of bin codes per attribute, in the order of the schema
+     */
+    public byte[][] encodeColumns(List<ProductInfo> data) {
+        int size = data.size();
+        byte[][] columns = new byte[SCHEMA.attributes.length][size];
+        byte[][] numericValues = new byte[4][size];
+
+        for (int i = 0; i < size; i++) {
+            ProductInfo product = data.get(i);
+            columns[0][i] = arrowCode(0, getArrowLabel(SERVICE_TYPE, product.service_type, 0));
+            columns[1][i] = arrowCode(1, getArrowLabel(CUSTOMER, product.customer, 0));
+            columns[4][i] = arrowCode(4, getArrowLabel(SIZE, product.size, 0));
+            columns[5][i] = arrowCode(5, getArrowLabel(PROMOTION, product.promotion, 0));
+            numericValues[0][i] = product.monthly_fee;
+            numericValues[1][i] = product.advertisement_budget;
+            numericValues[2][i] = product.interest_rate;
+            numericValues[3][i] = product.period;
+        }
+
+        QuantizedColumn.codes(numericValues[0], size, columns[2]);
+        QuantizedColumn.codes(numericValues[1], size, columns[3]);
+        QuantizedColumn.codes(numericValues[2], size, columns[6]);
+        QuantizedColumn.codes(numericValues[3], size, columns[7]);
+        return columns;
+    }
+
+    /**
+     * Method to predict the label ids for a list of instances, encoding and scoring them a column at a time.
+     * @param data instances for which the prediction should be done
+     * @param tree compiled from the trained tree
+     * @return the predicted label id of each instance
+     */
+    public byte[] scoreBatch(List<ProductInfo> data, CompiledTree tree) {
+        byte[] labelIds = new byte[data.size()];
+        ColumnBatch.scoreColumns(tree, encodeColumns(data), data.size(), labelIds);
+        return labelIds;
+    }
+
+    /**
+     * Method to predict the class labels for a list of instances, encoding and scoring them a column at a time.
+     * @param data instances for which the prediction should be done
+     * @param tree compiled from the trained tree
+     * @return the predicted class label of each instance
+     */
+    public String[] predictBatch(List<ProductInfo> data, CompiledTree tree) {
+        byte[] labelIds = scoreBatch(data, tree);
+        String[] labels = new String[labelIds.length];
+        for (int i = 0; i < labelIds.length; i++) {
+            labels[i] = SCHEMA.label(labelIds[i]);
+        }
+        return labels;
+    }
+
+    /**
+     * Method to map a list of instances to a binned data set held on the heap.
+     * Instances with a class label that is not part of the schema are left out.
+     * @param data instances that are encoded
+     * @return the binned data set
+     */
+    public BinnedDataset toDataset(List<ProductInfo> data) {
+        List<ProductInfo> labelled = new ArrayList<>();
+        for (ProductInfo product : data) {
+            if (SCHEMA.labelId(product.label) >= 0) {
+                labelled.add(product);
+            }
+        }
+
+        byte[] labels = new byte[labelled.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = (byte) SCHEMA.labelId(labelled.get(i).label);
+        }
+        return new ColumnarDataset(SCHEMA, encodeColumns(labelled), labels, labels.length);
+    }
+
+    /**
+     * Method to construct the decision tree from a binned data set.
+     * @param data - binned data set, on or off the heap
+     * @param remainingAttributes - list of attributes that are considered while constructing the tree.
+     *                            Note: When an attribute is added as a node, it is removed from the list of remainingAttributes
+     *                            The tree is built on bitmap indexes when the system property id3.bitmap is true,
+     *                            and best first within id3.timeLimit (ms) or id3.maxNodes when either is set.
+     *                            With id3.compress the identical rows are collapsed into weighted rows first.
+     *                            id3.bitmap cannot be combined with id3.compress or id3.sample without a limit.
+     * @return the decision tree in its flat array form
+     */
+    public CompiledTree train(BinnedDataset data, List<String> remainingAttributes) {
+        if (Boolean.getBoolean(BitmapTreeTrainer.PROPERTY) && !AnytimeTreeTrainer.enabled()) {
+            BitmapTreeTrainer.checkOptions(Boolean.getBoolean(WeightedDataset.PROPERTY),
+                    Integer.getInteger(BinnedTreeTrainer.SAMPLE_PROPERTY, 0));
+            return new BitmapTreeTrainer(data).train(remainingAttributes);
+        }
+        // The binned and best-first trainers count the distinct rows of a compressed data set with their weights
+        BinnedDataset rows = Boolean.getBoolean(WeightedDataset.PROPERTY) ? WeightedDataset.compress(data) : data;
+        AnytimeTreeTrainer anytime = AnytimeTreeTrainer.fromProperties(rows);
+        if (anytime != null) {
+            return anytime.train(remainingAttributes);
+        }
+        return new BinnedTreeTrainer(rows).train(remainingAttributes);
+    }
+
+    /**
+     * Method to compute the information gain for an attribute from a binned data set.
+     * @param data - binned data set, on or off the heap
+     * @param attribute for which the information gain is computed
+     * @return the information gain value for the attribute in double
+     */
+    public double computeInformationGain(BinnedDataset data, String attribute) {
+        return new BinnedTreeTrainer(data).computeInformationGain(attribute);
+    }
+
+    /**
+     * Method to predict the class labels for the rows of a binned data set.
+     * @param data rows for which the prediction should be done
+     * @param tree compiled from the trained tree
+     * @return the predicted class label of each row
+     */
+    public String[] predictBatch(BinnedDataset data, CompiledTree tree) {
+        byte[] labelIds = new byte[data.size()];
+        ColumnBatch.scoreDataset(tree, data, labelIds);
+
+        String[] labels = new String[labelIds.length];
+        for (int i = 0; i < labelIds.length; i++) {
+            labels[i] = SCHEMA.label(labelIds[i]);
+        }
+        return labels;
+    }
+
+    /**
+     * Method to convert a trained decision tree to its flat array form.
+     * A missing child is replaced by a leaf with the majority label of its parent, which is the label
+     * predict falls back to when it reaches a missing child.
+     * @param root of the trained tree
+     * @return the compiled tree
+     */
+    public CompiledTree compile(TreeNode root) {
+        CompiledTree.Builder builder = new CompiledTree.Builder(SCHEMA);
+        compileNode(builder, 0, root, null);
+        return builder.build();
+    }
+
+    private void compileNode(CompiledTree.Builder builder, int position, TreeNode node, String fallbackLabel) {
+        if (node == null) {
+            builder.leaf(position, fallbackLabel);
+            return;
+        }
+
+        int attribute = SCHEMA.indexOf(node.attribute);
+        if (node.isLeaf || attribute < 0) {
+            builder.leaf(position, node.outputLabel);
+            return;
+        }
+
+        int first = builder.split(position, attribute, node.outputLabel);
+        builder.leaf(first, node.outputLabel);
+
+        List<Double> possibleValues = getPossibleValues(node.attribute);
+        for (int i = 0; i < possibleValues.size(); i++) {
+            compileNode(builder, first + 1 + i, node.children.get(possibleValues.get(i)), node.outputLabel);
+        }
+    }
+
+    /**
+     * Method to predict the class label for a given instance with a compiled scorer.
+     * @param product instance for which the prediction should be done
+     * @param scorer compiled from the trained tree
+     * @return the predicted class label
+     */
+    public String predict(ProductInfo product, TreeScorer scorer) {
+        return SCHEMA.label(scorer.score(encode(product)));
+    }
+
+    /**
+     * Method to create the model of this data set for the training daemon. Data sets are loaded through the
+     * binary cache and binned, and trees are built by the binned trainer.
+     * @return - the model
+     */
+    static TrainingDaemon.Model daemonModel() {
+        ID3PartB id3 = new ID3PartB();
+        return new TrainingDaemon.Model() {
+            @Override
+            public TreeSchema schema() {
+                return SCHEMA;
+            }
+
+            @Override
+            public int folds() {
+                return 5;
+            }
+
+            @Override
+            public TrainingDaemon.Dataset load(String location) throws IOException {
+                ID3PartB loader = new ID3PartB(); // each load reads its own header, so loads can run concurrently
+                List<ProductInfo> data = loader.loadData(location);
+                return new TrainingDaemon.Dataset(id3.toDataset(data), new ArrayList<>(loader.attributes));
+            }
+
+            @Override
+            public CompiledTree train(BinnedDataset data, List<String> remainingAttributes) {
+                return id3.train(data, remainingAttributes);
+            }
+
+            @Override
+            public int encodeLine(String line, byte[] codes) {
+                ProductInfo product = id3.parseLine(line);
+                if (product == null) {
+                    return -2;
+                }
+                System.arraycopy(id3.encode(product), 0, codes, 0, codes.length);
+                return SCHEMA.labelId(product.label);
+            }
+
+            @Override
+            public StreamingScorer<?> streamingScorer(List<ModelRegistry> models, int threads) {
+                return new StreamingScorer<>(id3::parseLine, id3::encodeColumns, models, threads);
+            }
+        };
+    }
+
     /**
      * Main method of the class where arguments of the file paths are specified.
      * Note : First argument is for the input file path of the train data set.
      *      : Second argument is for the input file path of the test data set.
+     *      : Optional third argument is the path of a CSV file (row,label) that receives the predictions
+     *          instead of the standard output.
      * @param args - array of arguments (of the file paths)
      */
 
     public static void main(String[] args) {
-        if (args.length != 2) {
+        if (args.length != 2 && args.length != 3) {
             System.out.println("Please enter the file paths for train and test data sets.");
             return;
         }
@@ -616,8 +938,33 @@ public class ID3PartB {
         String testDataPath = args[1];
         ID3PartB id3 = new ID3PartB();
 
+        String outputPath = args.length == 3 ? args[2] : null;
+        if (Boolean.getBoolean(OffHeapDataset.PROPERTY)) {
+            // The training set is binned straight into native memory instead of being held as a list of instances
+            id3.scoreTestSet(id3.trainOffHeap(trainDataPath), testDataPath, outputPath);
+            return;
+        }
+
         List<ProductInfo> trainingData = id3.readData(trainDataPath);
-        TreeNode root = id3.train(trainingData, attributes);
+        // With id3.bitmap the tree is built on the bitmap indexes of the binned training set instead of the list,
+        // and with id3.timeLimit, id3.maxNodes or id3.compress it is built from the binned training set too
+        CompiledTree compiledTree = Boolean.getBoolean(BitmapTreeTrainer.PROPERTY) || AnytimeTreeTrainer.enabled()
+                || Boolean.getBoolean(WeightedDataset.PROPERTY)
+                ? id3.train(id3.toDataset(trainingData), id3.attributes)
+                : id3.compile(id3.train(trainingData, id3.attributes));
+        TreeScorer scorer;
+        if (Boolean.getBoolean(TreeProfile.PROPERTY)) {
+            // Lays the tree out along the paths taken by the training set, as a sample of the test set
+            TreeProfile profile = new TreeProfile(compiledTree);
+            profile.scoreColumns(id3.encodeColumns(trainingData), trainingData.size());
+            scorer = profile.compile();
+            if (!(scorer instanceof LookupTableScorer)) {
+                // Only the scorers that walk the nodes depend on the layout
+                compiledTree = profile.relayout();
+            }
+        } else {
+            scorer = LookupTableScorer.compile(compiledTree);
+        }
 
         System.out.println("Training successfully completed");
 
@@ -628,17 +975,27 @@ public class ID3PartB {
         double sum = 0;
 
         while (foldCount <= folds) {
+            TrainingEvents.FoldEvaluation foldEvent = new TrainingEvents.FoldEvaluation();
+            foldEvent.begin();
             Collections.shuffle(validationList);
             List<ProductInfo> testValidationSet = validationList.subList(0, validationSize);
             int count = 0;
 
             for (ProductInfo product : testValidationSet) {
-                String validateLabel = id3.predict(product, root);
+                String validateLabel = id3.predict(product, scorer);
                 if (validateLabel.equals(product.label))
                     count++;
             }
 
             double accuracy = (double) count / testValidationSet.size() * 100;
+            foldEvent.end();
+            if (foldEvent.shouldCommit()) {
+                foldEvent.fold = foldCount;
+                foldEvent.rows = testValidationSet.size();
+                foldEvent.correct = count;
+                foldEvent.accuracy = accuracy;
+                foldEvent.commit();
+            }
             System.out.println("Accuracy for fold " + foldCount + " : " + String.format("%.2f", (double) accuracy));
             sum += accuracy;
             foldCount++;
@@ -646,55 +1003,199 @@ public class ID3PartB {
 
         System.out.println("Cross-validation accuracy: " + String.format("%.2f", (double) sum / folds) + "\n");
 
-        List<ProductInfo> testData = id3.readData(testDataPath);
+        id3.scoreTestSet(ModelRegistry.of(compiledTree, scorer), testDataPath, outputPath);
+    }
+
+    /**
+     * Method to train the tree and report its cross-validation accuracy from a training set held in native memory,
+     * as main does with id3.offHeap. The training set is not kept as instances on the heap, and its native memory
+     * is freed once the tree is trained.
+     * @param filePath - path location from where the training set is read: a file, a directory or a glob of shards
+     * @return - registry of the trained tree with the scorer the folds were scored with, laid out along the paths
+     * taken by the training set with id3.profile
+     */
+    private ModelRegistry trainOffHeap(String filePath) {
+        try (OffHeapDataset trainingData = readOffHeapData(filePath)) {
+            CompiledTree compiledTree = train(trainingData, attributes);
+            TreeScorer scorer;
+            if (Boolean.getBoolean(TreeProfile.PROPERTY)) {
+                TreeProfile profile = new TreeProfile(compiledTree);
+                profile.scoreDataset(trainingData);
+                scorer = profile.compile();
+                if (!(scorer instanceof LookupTableScorer)) {
+                    // Only the scorers that walk the nodes depend on the layout
+                    compiledTree = profile.relayout();
+                }
+            } else {
+                scorer = LookupTableScorer.compile(compiledTree);
+            }
 
+            System.out.println("Training successfully completed");
+            TrainingDaemon.evaluate(5, trainingData, scorer, System.out);
+            System.out.println();
+            return ModelRegistry.of(compiledTree, scorer);
+        }
+    }
+
+    /**
+     * Method to print the predicted class labels of the test set, which is streamed through the scorer rather
+     * than loaded, so its size is not bound by memory.
+     * @param model - trained tree with the scorer that predicts its labels, such as the scorer of its profile
+     * @param testDataPath - path location from where the test set is read: a file, a directory or a glob of shards
+     * @param outputPath - CSV file (row,label) that receives the predictions, or null for the standard output
+     */
+    private void scoreTestSet(ModelRegistry model, String testDataPath, String outputPath) {
         System.out.println("Successfully loaded test data");
         System.out.println("Output class labels for the test set:");
 
-        for (int i = 0; i < testData.size(); i++) {
-            ProductInfo product = testData.get(i);
-            System.out.println(id3.predict(product, root));
+        StreamingScorer<ProductInfo> testScorer = new StreamingScorer<>(this::parseLine, this::encodeColumns, model,
+                StreamingScorer.DEFAULT_THREADS);
+        try (PredictionSink sink = outputPath != null
+                ? BufferedPredictionWriter.toFile(Paths.get(outputPath), SCHEMA, true)
+                : BufferedPredictionWriter.toStdout(SCHEMA, false)) {
+            testScorer.score(testDataPath, sink);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
     }
 
     /**
      * Method to read instances from the data set.
-     * @param filePath - path location from where the data is read
+     * @param filePath - path location from where the data is read: a file, a directory or a glob of shards
      * @return - list of instances that are read from the specified file path.
      */
-    private List<ProductInfo> readData(String filePath) {
-        List<ProductInfo> instanceList = new ArrayList<>();
-        BufferedReader bufferedReader;
-        String inputFile = filePath;
+    List<ProductInfo> readData(String filePath) {
         try {
-            bufferedReader = new BufferedReader(new InputStreamReader(new FileInputStream(inputFile),
-                    StandardCharsets.UTF_8));
+            return loadData(filePath);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Method to read instances from the binary cache of the data set, or to parse them when the cache is missing
+     * or out of date.
+     * @param filePath - path location from where the data is read: a file, a directory or a glob of shards
+     * @return - list of instances that are read from the specified file path.
+     */
+    private List<ProductInfo> loadData(String filePath) throws IOException {
+        TrainingEvents.DatasetLoad event = new TrainingEvents.DatasetLoad();
+        event.begin();
+        event.cached = true;
+        List<ProductInfo> data = CACHE.read(filePath, this::setAttributes, header -> parseData(filePath, header, event));
+        TrainingEvents.loaded(event, filePath, data.size());
+        return data;
+    }
+
+    /**
+     * Method to parse the shards of the data set. The lists of instances of the shards are joined without copying.
+     * @param filePath - path location from where the data is read: a file, a directory or a glob of shards
+     * @param header - receives the header line of the data set
+     * @param event - load event that receives the number of rejected lines
+     * @return - list of instances that are read from the shards.
+     */
+    private List<ProductInfo> parseData(String filePath, Consumer<String> header, TrainingEvents.DatasetLoad event)
+            throws IOException {
+        AtomicLong rejects = new AtomicLong();
+        List<ProductInfo> data = ShardedInput.concat(readShards(filePath, header, lines -> {
+            List<ProductInfo> instanceList = new ArrayList<>();
             String line;
-            line = bufferedReader.readLine();
-            line = line.toLowerCase(); // to maintain consistency of header names in CSV file
-            attributes = new LinkedList<String>(Arrays.asList(line.split(",")));
-            attributes.remove(attributes.size() - 1);
-
-            while ((line = bufferedReader.readLine()) != null) {
-                String[] temp = line.split(",");
-                if (temp.length == 9) {
-                    try {
-                        ProductInfo testInfo = new ProductInfo(temp[0], temp[1],
-                                Double.parseDouble(temp[2]), Double.parseDouble(temp[3]), temp[4], temp[5],
-                                Double.parseDouble(temp[6]), Double.parseDouble(temp[7]), temp[8]);
-                        instanceList.add(testInfo);
-                    } catch (NumberFormatException e) {
-                        e.printStackTrace();
-                    }
+            while ((line = lines.readLine()) != null) {
+                ProductInfo product = parseLine(line);
+                if (product != null) {
+                    instanceList.add(product);
+                } else {
+                    rejects.incrementAndGet();
                 }
             }
-
             return instanceList;
+        }));
+        event.cached = false;
+        event.rejects = rejects.get();
+        return data;
+    }
 
+    /**
+     * Method to read the data set straight into a binned data set held in native memory, without keeping
+     * the instances on the heap. Instances with a class label that is not part of the schema are left out.
+     * Each shard is encoded into a data set of its own, in parallel, and the shards are then joined in the order
+     * of their names, so the rows are in the same order as in readData.
+     * @param filePath - path location from where the data is read: a file, a directory or a glob of shards
+     * @return - the binned data set, which must be closed by the caller to free its memory. It is empty when
+     *           the data set cannot be read.
+     */
+    public OffHeapDataset readOffHeapData(String filePath) {
+        TrainingEvents.DatasetLoad event = new TrainingEvents.DatasetLoad();
+        event.begin();
+        List<OffHeapDataset> shards = Collections.synchronizedList(new ArrayList<>());
+        AtomicLong rejects = new AtomicLong();
+        OffHeapDataset dataset;
+        try {
+            List<OffHeapDataset> shardData = readShards(filePath, this::setAttributes, lines -> {
+                OffHeapDataset shard = new OffHeapDataset(SCHEMA);
+                shards.add(shard);
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    ProductInfo product = parseLine(line);
+                    int labelId = product == null ? -1 : SCHEMA.labelId(product.label);
+                    if (labelId >= 0) {
+                        shard.add(encode(product), labelId);
+                    } else {
+                        rejects.incrementAndGet();
+                    }
+                }
+                return shard;
+            });
+            dataset = OffHeapDataset.concat(SCHEMA, shardData);
         } catch (IOException e) {
             e.printStackTrace();
+            shards.forEach(OffHeapDataset::close);
+            dataset = new OffHeapDataset(SCHEMA);
         }
+        event.rejects = rejects.get();
+        TrainingEvents.loaded(event, filePath, dataset.size());
+        return dataset;
+    }
 
-        return instanceList;
+    /**
+     * Method to read the shards of the data set in parallel.
+     * @param filePath - path location from where the data is read: a file, a directory or a glob of shards
+     * @param header - receives the header line of the data set
+     * @param reader - reads the instances of one shard
+     * @return - the result of each shard, in the order of the shards
+     */
+    private <R> List<R> readShards(String filePath, Consumer<String> header, ShardedInput.ShardReader<R> reader)
+            throws IOException {
+        return ShardedInput.read(filePath, header, reader, ShardedInput.DEFAULT_THREADS);
     }
-}
+
+    /**
+     * Method to set the attributes from the header line of the data set.
+     * @param header - header line of the CSV file
+     */
+    private void setAttributes(String header) {
+        String line = header.toLowerCase(); // to maintain consistency of header names in CSV file
+        attributes = new LinkedList<String>(Arrays.asList(line.split(",")));
+        attributes.remove(attributes.size() - 1);
+    }
+
+    /**
+     * Method to parse a line of the data set.
+     * @param line - line of the CSV file, other than the header
+     * @return - the instance, or null when the line does not hold a valid instance
+     */
+    private ProductInfo parseLine(String line) {
+        String[] temp = line.split(",");
+        if (temp.length == 9) {
+            try {
+                return new ProductInfo(temp[0], temp[1],
+                        Double.parseDouble(temp[2]), Double.parseDouble(temp[3]), temp[4], temp[5],
+                        Double.parseDouble(temp[6]), Double.parseDouble(temp[7]), temp[8]);
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+            }
+        }
+        return null;
+    }
+}
\ No newline at end of file
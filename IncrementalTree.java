@@ -0,0 +1,409 @@
+/**
+ * Incremental retraining of decision trees.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class that keeps a trained tree together with the sufficient statistics of each of its nodes - the label counts
+ * and the counts per bin and label of every attribute - so that it can be brought up to date with new rows without
+ * training again from the root, in the manner of ID5R.
+ * <p>
+ * An update routes the new rows down the tree and adds them to the counts of the nodes on their paths. It then
+ * replays the choices of {@link BinnedTreeTrainer} node by node, in the same order, from the counts alone: pruning,
+ * gains, majority labels and the attributes left for each node. A node whose splitting attribute is unchanged keeps
+ * its children, and only the subtrees whose split changed are trained again, from the rows of all days that reach
+ * them. The tree is the one a full retrain on all rows builds (without sampled splits). When no split changes, the
+ * update reads only the new rows.
+ */
+
+public class IncrementalTree {
+
+    private static final int MAGIC = 0x49443349; // "ID3I"
+    private static final int VERSION = 1;
+
+    final CompiledTree tree;
+    final List<String> attributes;
+    private final TreeSchema schema;
+    private final NodeStatistics[] statistics;
+    private final int rebuiltSubtrees;
+
+    private IncrementalTree(CompiledTree tree, List<String> attributes, NodeStatistics[] statistics,
+                            int rebuiltSubtrees) {
+        this.tree = tree;
+        this.attributes = attributes;
+        this.schema = tree.schema;
+        this.statistics = statistics;
+        this.rebuiltSubtrees = rebuiltSubtrees;
+    }
+
+    /**
+     * Interface of the source of all rows of the training set, which is only loaded when a subtree is rebuilt.
+     */
+
+    public interface History {
+        BinnedDataset load() throws IOException;
+    }
+
+    /**
+     * Method to train a tree and collect the statistics of its nodes.
+     *
+     * @param data       - the training set
+     * @param attributes - attributes that are considered while constructing the tree, in the order of the header
+     * @return the tree with its statistics
+     */
+    public static IncrementalTree train(BinnedDataset data, List<String> attributes) {
+        CompiledTree tree = new BinnedTreeTrainer(data, 0).train(new LinkedList<>(attributes));
+        NodeStatistics[] statistics = new NodeStatistics[tree.size()];
+        for (int row = 0; row < data.size(); row++) {
+            route(tree, statistics, data, row, 0);
+        }
+        return new IncrementalTree(tree, new ArrayList<>(attributes), statistics, 0);
+    }
+
+    /**
+     * Method to bring the tree up to date with new rows.
+     *
+     * @param added   - the new rows
+     * @param history - all rows of the training set, including the new rows; only loaded when a split changes
+     * @return the updated tree, which is the tree trained on all rows
+     */
+    public IncrementalTree update(BinnedDataset added, History history) throws IOException {
+        if (!added.schema().equals(schema)) {
+            throw new IllegalArgumentException("The new rows have another schema");
+        }
+        NodeStatistics[] updated = new NodeStatistics[statistics.length];
+        for (int node = 0; node < statistics.length; node++) {
+            updated[node] = statistics[node] == null ? null : statistics[node].copy();
+        }
+        for (int row = 0; row < added.size(); row++) {
+            route(tree, updated, added, row, 0);
+        }
+
+        Replay replay = new Replay(updated, history);
+        replay.replay(0, 0, 0, new LinkedList<>(attributes), null);
+        CompiledTree newTree = replay.builder.build();
+
+        NodeStatistics[] newStatistics = new NodeStatistics[newTree.size()];
+        for (Map.Entry<Integer, NodeStatistics> kept : replay.kept.entrySet()) {
+            newStatistics[kept.getKey()] = kept.getValue();
+        }
+        for (Map.Entry<Integer, int[]> rebuilt : replay.rebuilt.entrySet()) {
+            for (int row : rebuilt.getValue()) {
+                route(newTree, newStatistics, replay.data, row, rebuilt.getKey());
+            }
+        }
+        return new IncrementalTree(newTree, attributes, newStatistics, replay.rebuilt.size());
+    }
+
+    /**
+     * Method to retrieve the number of subtrees that were trained again by the update that made this tree.
+     */
+    public int rebuiltSubtrees() {
+        return rebuiltSubtrees;
+    }
+
+    /**
+     * Method to add a row to the statistics of the nodes on its path, from a node down to a leaf. Rows are routed
+     * the way BinnedTreeTrainer partitions them, so values without a bin go to the first bin.
+     */
+    private static void route(CompiledTree tree, NodeStatistics[] statistics, BinnedDataset data, int row,
+                              int node) {
+        int label = data.label(row);
+        while (true) {
+            if (statistics[node] == null) {
+                statistics[node] = new NodeStatistics(tree.schema);
+            }
+            statistics[node].add(data, row, label);
+            int splitAttribute = tree.attribute[node];
+            if (splitAttribute < 0) {
+                return;
+            }
+            node = tree.firstChild[node] + 1 + Math.max(data.code(splitAttribute, row), 0);
+        }
+    }
+
+    /**
+     * Class that replays the training of the tree from the updated statistics into a new tree.
+     */
+
+    private class Replay {
+        final CompiledTree.Builder builder = new CompiledTree.Builder(schema);
+        final NodeStatistics[] updated;
+        final History history;
+        final Map<Integer, NodeStatistics> kept = new HashMap<>();
+        final Map<Integer, int[]> rebuilt = new HashMap<>();
+        final int[] pathAttribute = new int[schema.attributes.length];
+        final int[] pathBin = new int[schema.attributes.length];
+        BinnedDataset data;
+
+        Replay(NodeStatistics[] updated, History history) {
+            this.updated = updated;
+            this.history = history;
+        }
+
+        /**
+         * Method to replay the choices of trainNode for a node of the old tree at a position of the new tree.
+         */
+        void replay(int node, int position, int depth, List<String> remainingAttributes, String fallbackLabel)
+                throws IOException {
+            NodeStatistics nodeStatistics = updated[node];
+            int size = nodeStatistics == null ? 0 : nodeStatistics.size();
+            if (size == 0) {
+                builder.leaf(position, fallbackLabel);
+                return;
+            }
+            kept.put(position, nodeStatistics);
+
+            int[] labelCounts = nodeStatistics.labelCounts;
+            String opLabel = BinnedTreeTrainer.checkPureNode(schema, labelCounts, size, false);
+            if (opLabel != null) {
+                builder.leaf(position, opLabel);
+                return;
+            }
+
+            HashMap<String, Double> gainMap = new HashMap<>();
+            for (String attribute : remainingAttributes) {
+                int index = schema.indexOf(attribute);
+                if (index >= 0) {
+                    gainMap.put(attribute, BinnedTreeTrainer.computeInformationGain(labelCounts, size,
+                            nodeStatistics.histogram[index]));
+                }
+            }
+            String splittingAttribute = BinnedTreeTrainer.getAttributeWithHighestGain(gainMap);
+            String majorityLabel = BinnedTreeTrainer.checkPureNode(schema, labelCounts, size, true);
+            if (splittingAttribute == null) {
+                builder.leaf(position, majorityLabel);
+                return;
+            }
+
+            int attribute = schema.indexOf(splittingAttribute);
+            if (tree.attribute[node] != attribute) {
+                rebuild(position, depth, size, remainingAttributes, fallbackLabel);
+                return;
+            }
+
+            remainingAttributes.remove(splittingAttribute);
+            int first = builder.split(position, attribute, majorityLabel);
+            builder.leaf(first, majorityLabel);
+            pathAttribute[depth] = attribute;
+            for (int bin = 0; bin < schema.binCounts[attribute]; bin++) {
+                pathBin[depth] = bin;
+                replay(tree.firstChild[node] + 1 + bin, first + 1 + bin, depth + 1, remainingAttributes,
+                        majorityLabel);
+            }
+        }
+
+        /**
+         * Method to train the subtree of a node again from the rows of all days that reach it.
+         */
+        private void rebuild(int position, int depth, int size, List<String> remainingAttributes,
+                             String fallbackLabel) throws IOException {
+            kept.remove(position);
+            if (data == null) {
+                data = history.load();
+                if (!data.schema().equals(schema)) {
+                    throw new IllegalArgumentException("The training set has another schema");
+                }
+            }
+
+            int[] nodeRows = new int[size];
+            int count = 0;
+            for (int row = 0; row < data.size(); row++) {
+                boolean reaches = true;
+                for (int level = 0; level < depth && reaches; level++) {
+                    reaches = Math.max(data.code(pathAttribute[level], row), 0) == pathBin[level];
+                }
+                if (reaches) {
+                    if (count == size) {
+                        throw new IllegalStateException("The training set has more rows than the model has seen");
+                    }
+                    nodeRows[count++] = row;
+                }
+            }
+            if (count != size) {
+                throw new IllegalStateException("The training set has fewer rows than the model has seen");
+            }
+
+            new BinnedTreeTrainer(data, 0).trainSubtree(builder, position, depth, nodeRows, remainingAttributes,
+                    fallbackLabel);
+            rebuilt.put(position, nodeRows);
+        }
+    }
+
+    /**
+     * Class that holds the label counts of the rows of a node, and their counts per bin and label for every
+     * attribute of the schema.
+     */
+
+    private static class NodeStatistics {
+        final int[] labelCounts;
+        final int[][][] histogram;
+
+        NodeStatistics(TreeSchema schema) {
+            labelCounts = new int[schema.labels.length];
+            histogram = new int[schema.attributes.length][][];
+            for (int attribute = 0; attribute < histogram.length; attribute++) {
+                histogram[attribute] = new int[schema.binCounts[attribute]][schema.labels.length];
+            }
+        }
+
+        void add(BinnedDataset data, int row, int label) {
+            labelCounts[label]++;
+            for (int attribute = 0; attribute < histogram.length; attribute++) {
+                histogram[attribute][Math.max(data.code(attribute, row), 0)][label]++;
+            }
+        }
+
+        int size() {
+            int size = 0;
+            for (int count : labelCounts) {
+                size += count;
+            }
+            return size;
+        }
+
+        private NodeStatistics(NodeStatistics original) {
+            labelCounts = original.labelCounts.clone();
+            histogram = new int[original.histogram.length][][];
+            for (int attribute = 0; attribute < histogram.length; attribute++) {
+                histogram[attribute] = new int[original.histogram[attribute].length][];
+                for (int bin = 0; bin < histogram[attribute].length; bin++) {
+                    histogram[attribute][bin] = original.histogram[attribute][bin].clone();
+                }
+            }
+        }
+
+        NodeStatistics copy() {
+            return new NodeStatistics(this);
+        }
+
+    }
+
+    /**
+     * Method to write the tree with its statistics. The file is written next to its final path and moved into
+     * place.
+     *
+     * @param file - path of the state file
+     */
+    public void save(Path file) throws IOException {
+        Path temporary = file.resolveSibling("." + file.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                tree.write(out);
+                out.writeInt(attributes.size());
+                for (String attribute : attributes) {
+                    out.writeUTF(attribute);
+                }
+                for (NodeStatistics nodeStatistics : statistics) {
+                    out.writeBoolean(nodeStatistics != null);
+                    if (nodeStatistics != null) {
+                        for (int count : nodeStatistics.labelCounts) {
+                            out.writeInt(count);
+                        }
+                        for (int[][] bins : nodeStatistics.histogram) {
+                            for (int[] counts : bins) {
+                                for (int count : counts) {
+                                    out.writeInt(count);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Method to read a tree with its statistics.
+     *
+     * @param file - path of the state file
+     * @return the tree with its statistics
+     */
+    public static IncrementalTree load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a tree state file");
+            }
+            CompiledTree tree = CompiledTree.read(in);
+            List<String> attributes = new ArrayList<>();
+            int attributeCount = in.readInt();
+            for (int i = 0; i < attributeCount; i++) {
+                attributes.add(in.readUTF());
+            }
+            NodeStatistics[] statistics = new NodeStatistics[tree.size()];
+            for (int node = 0; node < statistics.length; node++) {
+                if (in.readBoolean()) {
+                    NodeStatistics nodeStatistics = new NodeStatistics(tree.schema);
+                    for (int label = 0; label < nodeStatistics.labelCounts.length; label++) {
+                        nodeStatistics.labelCounts[label] = in.readInt();
+                    }
+                    for (int[][] bins : nodeStatistics.histogram) {
+                        for (int[] counts : bins) {
+                            for (int label = 0; label < counts.length; label++) {
+                                counts[label] = in.readInt();
+                            }
+                        }
+                    }
+                    statistics[node] = nodeStatistics;
+                }
+            }
+            return new IncrementalTree(tree, attributes, statistics, 0);
+        }
+    }
+
+    /**
+     * Main method to train a tree with its statistics, or to update one with new rows.
+     *
+     * @param args - train &lt;model&gt; &lt;train&gt; &lt;state file&gt; [model file], or
+     *             update &lt;model&gt; &lt;new rows&gt; &lt;all rows&gt; &lt;state file&gt; [model file]
+     */
+    public static void main(String[] args) throws IOException {
+        IncrementalTree state;
+        Path stateFile;
+        String modelFile;
+        if (args.length >= 4 && args.length <= 5 && args[0].equals("train")) {
+            TrainingDaemon.Dataset dataset = TrainingDaemon.newModel(args[1]).load(args[2]);
+            state = train(dataset.data, dataset.attributes);
+            stateFile = Paths.get(args[3]);
+            modelFile = args.length == 5 ? args[4] : null;
+        } else if (args.length >= 5 && args.length <= 6 && args[0].equals("update")) {
+            TrainingDaemon.Model model = TrainingDaemon.newModel(args[1]);
+            stateFile = Paths.get(args[4]);
+            String allRows = args[3];
+            state = load(stateFile).update(model.load(args[2]).data, () -> model.load(allRows).data);
+            modelFile = args.length == 6 ? args[5] : null;
+            System.out.println("Subtrees trained again: " + state.rebuiltSubtrees());
+        } else {
+            System.out.println("Please enter either: train <model> <train> <state file> [model file]");
+            System.out.println("                 or: update <model> <new rows> <all rows> <state file> [model file]");
+            return;
+        }
+
+        state.save(stateFile);
+        if (modelFile != null) {
+            ModelRegistry.save(state.tree, Paths.get(modelFile));
+        }
+        System.out.println("Training successfully completed: " + state.tree.size() + " nodes");
+    }
+}
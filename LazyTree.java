@@ -0,0 +1,223 @@
+/**
+ * Decision tree whose deeper subtrees are trained when prediction first reaches them.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Class that trains a tree only down to a given depth and the rest while it scores. Each node at that depth that is
+ * not a leaf keeps the row numbers of its slice of the training set and the attributes that were still unused, and
+ * scores as a leaf with its majority label until an instance reaches it; the first instance that does trains the
+ * subtree, another depth of levels with deferred nodes of its own, and scoring continues in it. Subtrees for bin
+ * combinations that are never predicted are never trained.
+ * <p>
+ * Scoring may run on any number of threads. A subtree is trained once: the thread that reaches it first trains it
+ * while holding the lock of the deferred node, and other threads that reach it meanwhile wait for the same result.
+ * The trained subtree is published through a volatile field, so the threads that come later read it without a lock.
+ * <p>
+ * A deferred node trains from the remaining attributes as they were when it was reached, while train() shares one
+ * list of remaining attributes across the siblings it visits later, so that an attribute it has used in one subtree
+ * no longer splits in the next. The lazy tree does not depend on the order in which its subtrees are reached, but
+ * below the given depth it is usually larger than the tree of train() and predicts differently: it is another model,
+ * which equals the tree of train() only when the depth is below every leaf. The README lists its sizes and accuracy.
+ */
+
+public class LazyTree implements TreeScorer {
+
+    /**
+     * System property with the depth down to which LoadTest trains the tree up front.
+     */
+    static final String PROPERTY = "id3.lazyDepth";
+
+    private final BinnedDataset data;
+    private final TreeSchema schema;
+    private final int depth;
+    private final int sampleThreshold;
+    private final Segment root;
+
+    /**
+     * Constructor of a lazy tree, which trains its levels above the given depth.
+     *
+     * @param data                - binned training set, kept until every subtree has been trained
+     * @param remainingAttributes - attributes that may still split, in the order of train()
+     * @param depth               - depth of the nodes that are deferred, 0 for the root; every subtree that is
+     *                            trained later goes down the same number of levels, and at least one
+     * @param sampleThreshold     - number of rows from which a node chooses its attribute from a sample, or 0
+     */
+    public LazyTree(BinnedDataset data, List<String> remainingAttributes, int depth, int sampleThreshold) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Negative lazy depth: " + depth);
+        }
+        this.data = data;
+        this.schema = data.schema();
+        this.depth = depth;
+        this.sampleThreshold = sampleThreshold;
+        List<Deferred> deferred = new ArrayList<>();
+        CompiledTree tree = new BinnedTreeTrainer(data, sampleThreshold, depth, collector(deferred))
+                .train(remainingAttributes);
+        this.root = new Segment(tree, deferred);
+    }
+
+    /**
+     * Method to retrieve the levels that were trained up front.
+     *
+     * @return the tree down to the lazy depth, with the majority label at each deferred node
+     */
+    public CompiledTree tree() {
+        return root.tree;
+    }
+
+    /**
+     * Method to predict the class label id, training the deferred subtrees on the path of the instance first.
+     *
+     * @param codes - bin code of each attribute, in the order of the schema
+     * @return id of the predicted class label, or -1 when the tree is empty
+     */
+    @Override
+    public int score(byte[] codes) {
+        Segment segment = root;
+        int node = 0;
+        while (true) {
+            CompiledTree tree = segment.tree;
+            int splitAttribute;
+            while ((splitAttribute = tree.attribute[node]) >= 0) {
+                node = tree.firstChild[node] + 1 + codes[splitAttribute];
+            }
+            Deferred deferred = segment.deferred == null ? null : segment.deferred[node];
+            if (deferred == null) {
+                return tree.label[node];
+            }
+            segment = expand(deferred);
+            node = 0;
+        }
+    }
+
+    /**
+     * Method to train every subtree that is still deferred and join the tree into one.
+     *
+     * @return the whole tree in its flat array form
+     */
+    public CompiledTree toCompiledTree() {
+        CompiledTree.Builder builder = new CompiledTree.Builder(schema);
+        copy(root, 0, builder, 0);
+        return builder.build();
+    }
+
+    /**
+     * Method to count the subtrees that have not been trained yet.
+     *
+     * @return number of deferred nodes reached from the trained part of the tree that no instance has reached
+     */
+    public int pendingSubtrees() {
+        return pendingSubtrees(root);
+    }
+
+    private int pendingSubtrees(Segment segment) {
+        if (segment.deferred == null) {
+            return 0;
+        }
+        int pending = 0;
+        for (Deferred deferred : segment.deferred) {
+            if (deferred != null) {
+                Segment subtree = deferred.segment;
+                pending += subtree == null ? 1 : pendingSubtrees(subtree);
+            }
+        }
+        return pending;
+    }
+
+    private void copy(Segment segment, int node, CompiledTree.Builder builder, int position) {
+        Deferred deferred = segment.deferred == null ? null : segment.deferred[node];
+        if (deferred != null) {
+            copy(expand(deferred), 0, builder, position);
+            return;
+        }
+        CompiledTree tree = segment.tree;
+        int splitAttribute = tree.attribute[node];
+        String label = schema.label(tree.label[node]);
+        if (splitAttribute < 0) {
+            builder.leaf(position, label);
+            return;
+        }
+        int first = builder.split(position, splitAttribute, label);
+        for (int slot = 0; slot <= schema.binCounts[splitAttribute]; slot++) {
+            copy(segment, tree.firstChild[node] + slot, builder, first + slot);
+        }
+    }
+
+    /**
+     * Method to train a deferred subtree, or wait for the thread that is training it.
+     *
+     * @return the trained subtree
+     */
+    private Segment expand(Deferred deferred) {
+        Segment segment = deferred.segment;
+        if (segment != null) {
+            return segment;
+        }
+        synchronized (deferred) {
+            segment = deferred.segment;
+            if (segment == null) {
+                List<Deferred> nested = new ArrayList<>();
+                CompiledTree.Builder builder = new CompiledTree.Builder(schema);
+                new BinnedTreeTrainer(data, sampleThreshold, deferred.depth + Math.max(depth, 1), collector(nested))
+                        .trainSubtree(builder, 0, deferred.depth, deferred.rows,
+                                new LinkedList<>(deferred.remainingAttributes), null);
+                segment = new Segment(builder.build(), nested);
+                deferred.segment = segment;
+                // The rows are no longer needed once the subtree is published
+                deferred.rows = null;
+                deferred.remainingAttributes = null;
+            }
+            return segment;
+        }
+    }
+
+    private static BinnedTreeTrainer.DeferredNodes collector(List<Deferred> deferred) {
+        return (position, depth, nodeRows, remainingAttributes) ->
+                deferred.add(new Deferred(position, depth, nodeRows, remainingAttributes));
+    }
+
+    /**
+     * Class that holds a trained part of the tree and its deferred nodes by position.
+     */
+
+    private static class Segment {
+        final CompiledTree tree;
+        final Deferred[] deferred;
+
+        Segment(CompiledTree tree, List<Deferred> deferredNodes) {
+            this.tree = tree;
+            if (deferredNodes.isEmpty()) {
+                this.deferred = null;
+            } else {
+                this.deferred = new Deferred[tree.size()];
+                for (Deferred node : deferredNodes) {
+                    this.deferred[node.position] = node;
+                }
+            }
+        }
+    }
+
+    /**
+     * Class that holds what a deferred node needs to be trained, and then its subtree.
+     */
+
+    private static class Deferred {
+        final int position;
+        final int depth;
+        int[] rows;
+        List<String> remainingAttributes;
+        volatile Segment segment;
+
+        Deferred(int position, int depth, int[] rows, List<String> remainingAttributes) {
+            this.position = position;
+            this.depth = depth;
+            this.rows = rows;
+            this.remainingAttributes = remainingAttributes;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ * Load generator for the latency of scoring.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class that drives a scorer at a fixed rate of requests from many threads and reports the throughput and the
+ * latency distribution, to check that a model holds a latency objective at a given peak rate before it is rolled
+ * out. A request is the prediction of one row replayed from a CSV file: parse, bin-encode and score.
+ * <p>
+ * Request i is due at start + i / rate, whatever happened to the requests before it. Threads take the next due
+ * request, wait for its time and score it, and its response time is measured from the time it was due, not from
+ * the time a thread got to it. A stall therefore shows up in the latency of every request that was due during the
+ * stall, as the clients of a service would see it, instead of being hidden because the generator stopped sending
+ * (coordinated omission). The service time, from the start of the prediction, is reported next to it.
+ * <p>
+ * Latencies are counted in log-linear histograms (exact below 128 ns, then 64 buckets per power of two, so within
+ * 1.6%), one per thread and merged at the end. The report is JSON.
+ */
+
+public class LoadTest {
+    private static final int SUB_BUCKETS = 64;
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = LINEAR_LIMIT + (64 - 7) * SUB_BUCKETS;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p99.9", "p99.99"};
+
+    // Rows predicted before the measurement, so that the scorer runs compiled code
+    private static final int WARMUP_ROWS = 200_000;
+
+    // Waits shorter than this are spun rather than parked, as parking overshoots by tens of microseconds
+    private static final long SPIN_NANOS = 50_000;
+
+    private final TreeTrainer.Scorer scorer;
+    private final List<String> rows;
+
+    /**
+     * @param scorer - scorer under test
+     * @param rows   - lines of the CSV file that are replayed, in order and from the start again when exhausted
+     */
+    public LoadTest(TreeTrainer.Scorer scorer, List<String> rows) {
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("No rows to replay");
+        }
+        this.scorer = scorer;
+        this.rows = rows;
+    }
+
+    /**
+     * Method to run the load.
+     *
+     * @param rate    - requests per second
+     * @param threads - number of threads sending requests
+     * @param seconds - length of the run
+     * @return the results of the run
+     */
+    public Result run(double rate, int threads, double seconds) throws InterruptedException {
+        for (int i = 0; i < Math.min(WARMUP_ROWS, rows.size() * 10); i++) {
+            scorer.predict(rows.get(i % rows.size()));
+        }
+
+        double period = 1e9 / rate;
+        long requests = (long) (rate * seconds);
+        AtomicLong next = new AtomicLong();
+        Histogram[] response = new Histogram[threads];
+        Histogram[] service = new Histogram[threads];
+        long[][] labels = new long[threads][scorer.tree().schema.labels.length];
+        long[] invalid = new long[threads];
+        Thread[] senders = new Thread[threads];
+        long start = System.nanoTime() + 10_000_000;
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            response[t] = new Histogram();
+            service[t] = new Histogram();
+            senders[t] = new Thread(() -> {
+                long request;
+                while ((request = next.getAndIncrement()) < requests) {
+                    long due = start + (long) (request * period);
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0) {
+                        if (wait > SPIN_NANOS) {
+                            LockSupport.parkNanos(wait - SPIN_NANOS);
+                        } else {
+                            Thread.onSpinWait();
+                        }
+                    }
+                    long begin = System.nanoTime();
+                    String label = scorer.predict(rows.get((int) (request % rows.size())));
+                    long end = System.nanoTime();
+                    response[thread].record(end - due);
+                    service[thread].record(end - begin);
+                    if (label == null) {
+                        invalid[thread]++;
+                    } else {
+                        labels[thread][scorer.tree().schema.labelId(label)]++;
+                    }
+                }
+            }, "load-" + t);
+            senders[t].start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Result result = new Result(rate, threads, requests, elapsed);
+        for (int t = 0; t < threads; t++) {
+            result.response.add(response[t]);
+            result.service.add(service[t]);
+            result.invalid += invalid[t];
+            for (int label = 0; label < result.labels.length; label++) {
+                result.labels[label] += labels[t][label];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Class that holds the results of a run.
+     */
+
+    public class Result {
+        final double rate;
+        final int threads;
+        final long requests;
+        final long elapsedNanos;
+        final Histogram response = new Histogram();
+        final Histogram service = new Histogram();
+        final long[] labels = new long[scorer.tree().schema.labels.length];
+        long invalid;
+
+        Result(double rate, int threads, long requests, long elapsedNanos) {
+            this.rate = rate;
+            this.threads = threads;
+            this.requests = requests;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return completed requests per second
+         */
+        public double throughput() {
+            return requests * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Method to write the results as a JSON object: the settings, the throughput, percentiles and maximum of
+         * the response and service times in nanoseconds, the non-empty buckets of the response time histogram as
+         * [upper bound, count] pairs, and the number of rows predicted per label.
+         */
+        public void writeJson(PrintStream out) {
+            StringBuilder json = new StringBuilder("{\n");
+            json.append("  \"rate\": ").append(format(rate)).append(",\n");
+            json.append("  \"threads\": ").append(threads).append(",\n");
+            json.append("  \"requests\": ").append(requests).append(",\n");
+            json.append("  \"invalid\": ").append(invalid).append(",\n");
+            json.append("  \"elapsedSeconds\": ").append(format(elapsedNanos / 1e9)).append(",\n");
+            json.append("  \"throughput\": ").append(format(throughput())).append(",\n");
+            json.append("  \"responseNanos\": ");
+            appendPercentiles(json, response);
+            json.append(",\n  \"serviceNanos\": ");
+            appendPercentiles(json, service);
+            json.append(",\n  \"responseHistogram\": [");
+            String separator = "";
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                if (response.counts[bucket] > 0) {
+                    json.append(separator).append('[').append(Math.min(upperBound(bucket), response.max)).append(", ")
+                            .append(response.counts[bucket]).append(']');
+                    separator = ", ";
+                }
+            }
+            json.append("],\n  \"labels\": {");
+            separator = "";
+            TreeSchema schema = scorer.tree().schema;
+            for (int label = 0; label < labels.length; label++) {
+                json.append(separator).append('"').append(schema.labels[label]).append("\": ").append(labels[label]);
+                separator = ", ";
+            }
+            json.append("}\n}");
+            out.println(json);
+        }
+
+        private void appendPercentiles(StringBuilder json, Histogram histogram) {
+            json.append('{');
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                json.append('"').append(PERCENTILE_NAMES[i]).append("\": ").append(histogram.percentile(PERCENTILES[i]))
+                        .append(", ");
+            }
+            json.append("\"max\": ").append(histogram.max).append(", \"mean\": ")
+                    .append(format(histogram.mean())).append('}');
+        }
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value)
+                : String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Class that counts latencies in log-linear buckets. Only the thread that owns it records into it.
+     */
+
+    static class Histogram {
+        final long[] counts = new long[BUCKETS];
+        long count;
+        long max;
+        double sum;
+
+        void record(long nanos) {
+            long value = Math.max(nanos, 0);
+            counts[bucket(value)]++;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        void add(Histogram other) {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                counts[bucket] += other.counts[bucket];
+            }
+            count += other.count;
+            sum += other.sum;
+            max = Math.max(max, other.max);
+        }
+
+        double mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * Method to retrieve the latency below which a percentage of the requests finished.
+         *
+         * @return upper bound of the bucket of that request, at most the largest latency
+         */
+        long percentile(double percentile) {
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += counts[bucket];
+                if (seen >= rank) {
+                    return Math.min(upperBound(bucket), max);
+                }
+            }
+            return max;
+        }
+    }
+
+    static int bucket(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (magnitude - 7) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int magnitude = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 7;
+        int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + subBucket) << shift) + (1L << shift) - 1;
+    }
+
+    /**
+     * Method to read the rows of a CSV file to replay, without its header line.
+     */
+    static List<String> readRows(String location) throws IOException {
+        List<String> rows = new ArrayList<>();
+        for (Path shard : ShardedInput.resolve(location)) {
+            try (BufferedReader lines = ShardedInput.open(shard)) {
+                lines.readLine();
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    rows.add(line);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Main method to run a load test.
+     *
+     * @param args - model (ID3 or ID3PartB); a model file (.tree) or a training set to train the tree from; the
+     *             CSV file of rows to replay; requests per second; threads; seconds; and optionally the file that
+     *             receives the JSON report instead of the standard output. With -Did3.lazyDepth=N, a tree trained
+     *             from a training set is trained down to depth N and the rest while the load test runs (LazyTree).
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length != 6 && args.length != 7) {
+            System.out.println("Please enter: <model> <model file | train> <rows> <rate> <threads> <seconds> [report]");
+            return;
+        }
+        TreeTrainer trainer = TreeTrainer.builder(args[0]).build();
+        Integer lazyDepth = Integer.getInteger(LazyTree.PROPERTY);
+        TreeTrainer.Scorer scorer;
+        if (args[1].endsWith(ModelRegistry.SUFFIX)) {
+            scorer = trainer.scorer(ModelRegistry.load(Paths.get(args[1])));
+        } else if (lazyDepth != null) {
+            scorer = trainer.scorer(trainer.trainLazily(trainer.load(args[1]), lazyDepth));
+        } else {
+            scorer = trainer.scorer(trainer.train(trainer.load(args[1])));
+        }
+        LoadTest test = new LoadTest(scorer, readRows(args[2]));
+        Result result = test.run(Double.parseDouble(args[3]), Integer.parseInt(args[4]), Double.parseDouble(args[5]));
+        if (args.length == 7) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(Paths.get(args[6])), false,
+                    StandardCharsets.UTF_8)) {
+                result.writeJson(out);
+            }
+        } else {
+            result.writeJson(System.out);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Compilation of trained decision trees to exhaustive lookup tables.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.util.Locale;
+
+/**
+ * Class that scores an instance with a single array load. Every attribute of the schema has at most a handful of
+ * bins, so the input space of a tree is small enough to enumerate: the table holds the label id of every
+ * combination of bin codes of the attributes the tree splits on, indexed by a mixed-radix number with one digit
+ * per attribute. A digit is the bin code plus one, so that values without an arrow label (code -1) have a cell too.
+ */
+
+public class LookupTableScorer implements TreeScorer {
+
+    /**
+     * Largest table that is built, in cells (one byte each).
+     */
+    static final int MAX_CELLS = 1 << 20;
+
+    /**
+     * System property that chooses the scorer of main, the training daemon and the model registry: table (the
+     * default), bytecode or array.
+     */
+    static final String PROPERTY = "id3.scorer";
+
+    private final int[] attributes;
+    private final int[] strides;
+    private final byte[] table;
+
+    private LookupTableScorer(int[] attributes, int[] strides, byte[] table) {
+        this.attributes = attributes;
+        this.strides = strides;
+        this.table = table;
+    }
+
+    /**
+     * Method to compile a tree to the scorer chosen by the id3.scorer system property.
+     *
+     * @param tree - trained tree in its flat array form
+     * @return the scorer
+     * @throws IllegalArgumentException when the property names no backend
+     */
+    public static TreeScorer compile(CompiledTree tree) {
+        return compile(tree, backend());
+    }
+
+    /**
+     * Method to compile a tree to a scorer. The table backend builds a lookup table when the tree splits on few
+     * enough attributes, otherwise the bytecode scorer of {@link TreeBytecodeCompiler}; the bytecode backend falls
+     * back to the array interpreter when the generated method would be too large to be JIT-compiled.
+     *
+     * @param tree    - trained tree in its flat array form
+     * @param backend - scorer to compile to
+     * @return the scorer
+     */
+    public static TreeScorer compile(CompiledTree tree, TreeScorer.Backend backend) {
+        switch (backend) {
+            case TABLE:
+                TreeScorer scorer = compile(tree, MAX_CELLS);
+                return scorer != null ? scorer : TreeBytecodeCompiler.compile(tree);
+            case BYTECODE:
+                return TreeBytecodeCompiler.compile(tree);
+            default:
+                return tree;
+        }
+    }
+
+    /**
+     * Method to retrieve the backend chosen by the id3.scorer system property.
+     *
+     * @return the backend, TABLE when the property is not set
+     * @throws IllegalArgumentException when the property names no backend
+     */
+    static TreeScorer.Backend backend() {
+        return TreeScorer.Backend.valueOf(System.getProperty(PROPERTY, "table").toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Method to compile a tree to a lookup table.
+     *
+     * @param tree     - trained tree in its flat array form
+     * @param maxCells - largest number of cells of the table
+     * @return the lookup table scorer, or null when the table would have more than maxCells cells
+     */
+    public static LookupTableScorer compile(CompiledTree tree, int maxCells) {
+        TreeSchema schema = tree.schema;
+        boolean[] used = new boolean[schema.attributes.length];
+        int usedCount = 0;
+        for (int splitAttribute : tree.attribute) {
+            if (splitAttribute >= 0 && !used[splitAttribute]) {
+                used[splitAttribute] = true;
+                usedCount++;
+            }
+        }
+
+        int[] attributes = new int[usedCount];
+        int[] strides = new int[usedCount];
+        long cells = 1;
+        for (int attribute = 0, i = 0; attribute < used.length; attribute++) {
+            if (used[attribute]) {
+                attributes[i] = attribute;
+                strides[i++] = (int) cells;
+                cells *= schema.binCounts[attribute] + 1;
+                if (cells > maxCells) {
+                    return null;
+                }
+            }
+        }
+
+        // Walk through every cell in index order, counting the bin codes up like an odometer
+        byte[] table = new byte[(int) cells];
+        byte[] codes = new byte[schema.attributes.length];
+        for (int attribute : attributes) {
+            codes[attribute] = -1;
+        }
+        for (int cell = 0; cell < table.length; cell++) {
+            table[cell] = (byte) tree.score(codes);
+            for (int attribute : attributes) {
+                if (++codes[attribute] < schema.binCounts[attribute]) {
+                    break;
+                }
+                codes[attribute] = -1;
+            }
+        }
+        return new LookupTableScorer(attributes, strides, table);
+    }
+
+    /**
+     * Method to retrieve the number of cells of the table.
+     *
+     * @return number of cells
+     */
+    public int size() {
+        return table.length;
+    }
+
+    @Override
+    public int score(byte[] codes) {
+        int cell = 0;
+        for (int i = 0; i < attributes.length; i++) {
+            cell += (codes[attributes[i]] + 1) * strides[i];
+        }
+        return table[cell];
+    }
+
+    /**
+     * Method to score a block of encoded rows a column at a time: the cells of all rows are summed one digit at a
+     * time, then looked up.
+     */
+    @Override
+    public void scoreColumns(byte[][] columns, int count, byte[] labels) {
+        int[] cells = new int[count];
+        for (int i = 0; i < attributes.length; i++) {
+            byte[] column = columns[attributes[i]];
+            int stride = strides[i];
+            for (int row = 0; row < count; row++) {
+                cells[row] += (column[row] + 1) * stride;
+            }
+        }
+        for (int row = 0; row < count; row++) {
+            labels[row] = table[cells[row]];
+        }
+    }
+}
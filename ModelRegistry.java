@@ -0,0 +1,333 @@
+/**
+ * Registry of trained models with hot reload.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Class that holds the current version of a model and replaces it while scoring goes on. A registry watches a
+ * directory of model files (*.tree, written by {@link #save}); the file whose name sorts last is the current
+ * version. A new or changed file is read and compiled on the watcher thread and then published by swapping one
+ * atomic reference, so scoring threads never wait for a reload.
+ * <p>
+ * Scoring threads take a lease on the current version for each batch. A replaced version is retired once its last
+ * lease is returned, so a batch always finishes with the version it started with.
+ */
+
+public class ModelRegistry implements AutoCloseable {
+
+    static final String SUFFIX = ".tree";
+    static final long POLL_MILLIS = 1000;
+
+    private final Path directory;
+    private final TreeSchema schema;
+    private final AtomicReference<Version> current = new AtomicReference<>();
+    private final WatchService watchService;
+    private final Thread watcherThread;
+    private volatile Consumer<Version> retiredListener = version -> { };
+
+    // Model file of the current version, as it was when it was read; only used by the watcher thread
+    private String currentFile;
+    private long currentModified;
+
+    private ModelRegistry(Path directory, TreeSchema schema, CompiledTree fixedTree, TreeScorer fixedScorer)
+            throws IOException {
+        this.directory = directory;
+        this.schema = schema;
+        if (fixedTree != null) {
+            current.set(new Version("fixed", fixedTree, fixedScorer));
+            watchService = null;
+            watcherThread = null;
+            return;
+        }
+
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        reload();
+        watcherThread = new Thread(this::watch, "model-registry");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    /**
+     * Method to open the registry of a model directory. The newest model in the directory is loaded before the
+     * method returns, when there is one.
+     *
+     * @param directory - directory of the model files
+     * @param schema    - schema the models must have, which is the schema the instances are encoded with
+     * @return the registry, which must be closed to stop watching the directory
+     */
+    public static ModelRegistry open(Path directory, TreeSchema schema) throws IOException {
+        return new ModelRegistry(directory, schema, null, null);
+    }
+
+    /**
+     * Method to create a registry that always holds the same tree.
+     *
+     * @param tree - the tree
+     * @return the registry
+     */
+    public static ModelRegistry of(CompiledTree tree) {
+        return of(tree, LookupTableScorer.compile(tree));
+    }
+
+    /**
+     * Method to create a registry that always holds the same tree, scored with a scorer compiled before, such as
+     * the scorer of a {@link TreeProfile}.
+     *
+     * @param tree   - the tree
+     * @param scorer - scorer that predicts the same labels as the tree
+     * @return the registry
+     */
+    public static ModelRegistry of(CompiledTree tree, TreeScorer scorer) {
+        try {
+            return new ModelRegistry(null, tree.schema, tree, scorer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not thrown without a directory
+        }
+    }
+
+    /**
+     * Method to write a model file. The file is written next to its final path and moved into place, so that a
+     * registry never reads a partly written model.
+     *
+     * @param tree - tree that is saved
+     * @param file - path of the model file
+     */
+    public static void save(CompiledTree tree, Path file) throws IOException {
+        Path temporary = file.resolveSibling("." + file.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary)))) {
+                tree.write(out);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Method to read a model file.
+     *
+     * @param file - path of the model file
+     * @return the tree
+     */
+    public static CompiledTree load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            return CompiledTree.read(in);
+        }
+    }
+
+    /**
+     * Method to take a lease on the current version. The lease must be closed when the batch is scored.
+     *
+     * @return the lease
+     * @throws IllegalStateException when no model has been loaded yet
+     */
+    public Lease acquire() {
+        while (true) {
+            Version version = current.get();
+            if (version == null) {
+                throw new IllegalStateException("No model in " + directory);
+            }
+            // Fails only when the version was retired after it was read, in which case a newer one is current
+            if (version.tryAcquire()) {
+                return new Lease(version);
+            }
+        }
+    }
+
+    /**
+     * Method to retrieve the current version, without a lease.
+     *
+     * @return the current version, or null when no model has been loaded yet
+     */
+    public Version current() {
+        return current.get();
+    }
+
+    /**
+     * Method to set the code that is run when a version has been replaced and its last lease is returned.
+     *
+     * @param listener - receives each retired version
+     */
+    public void onRetired(Consumer<Version> listener) {
+        retiredListener = listener;
+    }
+
+    /**
+     * Method to stop watching the model directory. Leases that were taken stay valid.
+     */
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+            try {
+                watcherThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Method run by the watcher thread. The directory is rescanned after every batch of events, and also every
+     * POLL_MILLIS in case events were lost.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+                reload();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Method to load and publish the newest model file when it is not the current version. A model that cannot be
+     * read, or has another schema, is reported and skipped; the current version stays in place.
+     */
+    private void reload() {
+        Path newest = null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(".") && (newest == null || name.compareTo(newest.getFileName().toString()) > 0)) {
+                    newest = file;
+                }
+            }
+            if (newest == null) {
+                return;
+            }
+
+            String name = newest.getFileName().toString();
+            long modified = Files.getLastModifiedTime(newest).toMillis();
+            if (name.equals(currentFile) && modified == currentModified) {
+                return;
+            }
+            currentFile = name;
+            currentModified = modified;
+
+            CompiledTree tree = load(newest);
+            if (!tree.schema.equals(schema)) {
+                throw new IOException("model has another schema");
+            }
+            publish(new Version(name, tree, LookupTableScorer.compile(tree)));
+        } catch (IOException e) {
+            System.err.println("Skipping model " + newest + ": " + e);
+        }
+    }
+
+    private void publish(Version version) {
+        Version previous = current.getAndSet(version);
+        if (previous != null) {
+            previous.release(); // the lease held by the registry itself
+        }
+    }
+
+    /**
+     * Class that holds one loaded version of a model with its compiled scorer. The lease count starts at one,
+     * for the registry, and the version is retired when it drops to zero.
+     */
+
+    public class Version {
+        final String name;
+        final CompiledTree tree;
+        final TreeScorer scorer;
+        private final AtomicInteger leases = new AtomicInteger(1);
+
+        Version(String name, CompiledTree tree, TreeScorer scorer) {
+            this.name = name;
+            this.tree = tree;
+            this.scorer = scorer;
+        }
+
+        private boolean tryAcquire() {
+            int count;
+            do {
+                count = leases.get();
+                if (count == 0) {
+                    return false;
+                }
+            } while (!leases.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        private void release() {
+            if (leases.decrementAndGet() == 0) {
+                retiredListener.accept(this);
+            }
+        }
+
+        public String name() {
+            return name;
+        }
+    }
+
+    /**
+     * Class that holds a lease on a version of the model.
+     */
+
+    public static class Lease implements AutoCloseable {
+        private Version version;
+
+        Lease(Version version) {
+            this.version = version;
+        }
+
+        public CompiledTree tree() {
+            return version.tree;
+        }
+
+        /**
+         * Method to retrieve the scorer of the version, compiled from its tree when the version was loaded with the
+         * backend chosen by the id3.scorer system property, or given to {@link #of(CompiledTree, TreeScorer)}.
+         * StreamingScorer scores its batches with it.
+         *
+         * @return the scorer, which predicts the same labels as the tree
+         */
+        public TreeScorer scorer() {
+            return version.scorer;
+        }
+
+        public String name() {
+            return version.name;
+        }
+
+        /**
+         * Method to return the lease. Closing a lease more than once has no effect.
+         */
+        @Override
+        public void close() {
+            if (version != null) {
+                version.release();
+                version = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,324 @@
+/**
+ * Training of decision trees for several targets from one scan of the data.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Class that trains one decision tree per target column over the same attributes. The root of every tree needs the
+ * counts of all rows for all attributes; those are taken in one scan for all targets: the codes of a block of rows
+ * are copied out of the data set one attribute at a time and counted for every target while they are in the cache.
+ * Only the root histograms are shared. Each target then trains its tree from its root counts with
+ * {@link BinnedTreeTrainer} on its own: it partitions all rows by its root split and counts the nodes below the root
+ * from their rows, even where two targets split alike and their partitions coincide. Sharing the nodes below the
+ * root is left out on purpose: as in train(), a split removes its attribute for every later node of its tree, so two
+ * targets only stay in step until their first differing split or leaf, and rows left out of one target but not the
+ * other give them different rows even under the same splits. Every tree is the one trained on its target alone.
+ * Values without a bin (code -1) are counted in the first bin, as getValueMap does for them.
+ */
+
+public class MultiTargetTrainer {
+    private static final int BLOCK_ROWS = 4096;
+
+    private final BinnedDataset data;
+    private final TreeSchema schema;
+    private final List<Target> targets;
+
+    /**
+     * @param data    - bin codes of the attributes; its own labels are not used
+     * @param targets - the targets, each with a label id per row of the data set
+     */
+    public MultiTargetTrainer(BinnedDataset data, List<Target> targets) {
+        this.data = data;
+        this.schema = data.schema();
+        this.targets = targets;
+        for (Target target : targets) {
+            if (target.labels.length != data.size()
+                    || !Arrays.equals(target.schema.binCounts, schema.binCounts)) {
+                throw new IllegalArgumentException("Target " + target.name + " does not match the data set");
+            }
+        }
+    }
+
+    /**
+     * Class that holds a target column: its name, the schema of its labels and the label id of every row.
+     */
+
+    public static class Target {
+        final String name;
+        final TreeSchema schema;
+        final byte[] labels;
+
+        /**
+         * @param name   - name of the target column
+         * @param schema - attributes and bins of the data set with the labels of the target
+         * @param labels - label id of each row, or -1 to leave the row out of this target
+         */
+        public Target(String name, TreeSchema schema, byte[] labels) {
+            this.name = name;
+            this.schema = schema;
+            this.labels = labels;
+        }
+    }
+
+    /**
+     * Method to construct the decision tree of every target.
+     *
+     * @param attributes - attributes that are considered while constructing the trees; each target works on its
+     *                   own copy of the list
+     * @return the tree of each target, in the order of the targets
+     */
+    public List<CompiledTree> train(List<String> attributes) {
+        int[][] labelCounts = new int[targets.size()][];
+        int[][][][] histograms = new int[targets.size()][][][];
+        countRoots(labelCounts, histograms);
+
+        List<CompiledTree> trees = new ArrayList<>();
+        for (int target = 0; target < targets.size(); target++) {
+            BinnedTreeTrainer trainer = new BinnedTreeTrainer(new TargetDataset(targets.get(target)));
+            trees.add(trainer.train(new LinkedList<>(attributes), labelCounts[target], histograms[target]));
+            histograms[target] = null;
+        }
+        return trees;
+    }
+
+    /**
+     * Method to count all rows per attribute, bin and label for every target, in one scan of the data set.
+     *
+     * @param labelCounts - receives the label counts of each target
+     * @param histograms  - receives the counts indexed by attribute, bin and label id of each target
+     */
+    private void countRoots(int[][] labelCounts, int[][][][] histograms) {
+        for (int target = 0; target < targets.size(); target++) {
+            int labelCount = targets.get(target).schema.labels.length;
+            labelCounts[target] = new int[labelCount];
+            histograms[target] = new int[schema.attributes.length][][];
+            for (int attribute = 0; attribute < schema.attributes.length; attribute++) {
+                histograms[target][attribute] = new int[schema.binCounts[attribute]][labelCount];
+            }
+        }
+
+        byte[] codes = new byte[BLOCK_ROWS];
+        for (int from = 0; from < data.size(); from += BLOCK_ROWS) {
+            int count = Math.min(BLOCK_ROWS, data.size() - from);
+            for (int target = 0; target < targets.size(); target++) {
+                byte[] labels = targets.get(target).labels;
+                int[] counts = labelCounts[target];
+                for (int i = 0; i < count; i++) {
+                    int label = labels[from + i];
+                    if (label >= 0) {
+                        counts[label]++;
+                    }
+                }
+            }
+            for (int attribute = 0; attribute < schema.attributes.length; attribute++) {
+                data.codes(attribute, from, count, codes);
+                for (int target = 0; target < targets.size(); target++) {
+                    byte[] labels = targets.get(target).labels;
+                    int[][] counts = histograms[target][attribute];
+                    for (int i = 0; i < count; i++) {
+                        int label = labels[from + i];
+                        if (label >= 0) {
+                            counts[Math.max(codes[i], 0)][label]++;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Class that shows the data set with the labels of one target, leaving out the rows without a label for it.
+     */
+
+    private class TargetDataset implements BinnedDataset {
+        private final Target target;
+        private final int[] rows;
+
+        TargetDataset(Target target) {
+            this.target = target;
+            int size = 0;
+            for (byte label : target.labels) {
+                if (label >= 0) {
+                    size++;
+                }
+            }
+            if (size == data.size()) {
+                rows = null;
+            } else {
+                rows = new int[size];
+                size = 0;
+                for (int row = 0; row < target.labels.length; row++) {
+                    if (target.labels[row] >= 0) {
+                        rows[size++] = row;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public TreeSchema schema() {
+            return target.schema;
+        }
+
+        @Override
+        public int size() {
+            return rows == null ? data.size() : rows.length;
+        }
+
+        @Override
+        public int code(int attribute, int row) {
+            return data.code(attribute, rows == null ? row : rows[row]);
+        }
+
+        @Override
+        public int label(int row) {
+            return target.labels[rows == null ? row : rows[row]];
+        }
+
+        @Override
+        public void codes(int attribute, int from, int count, byte[] destination) {
+            if (rows == null) {
+                data.codes(attribute, from, count, destination);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    destination[i] = (byte) data.code(attribute, rows[from + i]);
+                }
+            }
+        }
+
+        @Override
+        public RowIndex allocateRows(int size) {
+            return data.allocateRows(size);
+        }
+    }
+
+    /**
+     * Main method to train one tree per target from a data set whose lines hold the columns of a model followed by
+     * further target columns. The label column of the model is the first target; every further column is a target
+     * whose labels are the distinct values found in it (empty values leave the row out of that target).
+     *
+     * @param args - model (ID3 or ID3PartB), training set, and the directory that receives a &lt;target&gt;.tree
+     *             file per target
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.out.println("Please enter: <model> <train> <model directory>");
+            return;
+        }
+        TrainingDaemon.Model model = TrainingDaemon.newModel(args[0]);
+        TreeSchema schema = model.schema();
+        int modelColumns = schema.attributes.length + 1;
+
+        String[][] header = new String[1][];
+        List<ShardRows> shards = ShardedInput.read(args[1], line -> header[0] = line.toLowerCase().split(","),
+                lines -> readShard(model, modelColumns, lines), ShardedInput.DEFAULT_THREADS);
+        List<String> attributes = new ArrayList<>(Arrays.asList(header[0]).subList(0, modelColumns - 1));
+        List<String> targetNames = new ArrayList<>(Arrays.asList(header[0]).subList(modelColumns - 1,
+                header[0].length));
+
+        int size = 0;
+        for (ShardRows shard : shards) {
+            size += shard.labels.size();
+        }
+        byte[][] columns = new byte[schema.attributes.length][size];
+        byte[] modelLabels = new byte[size];
+        List<TreeSet<String>> values = new ArrayList<>();
+        for (int target = 1; target < targetNames.size(); target++) {
+            values.add(new TreeSet<>());
+        }
+        int row = 0;
+        for (ShardRows shard : shards) {
+            byte[] codes = shard.codes.toByteArray();
+            for (int i = 0; i < shard.labels.size(); i++, row++) {
+                for (int attribute = 0; attribute < columns.length; attribute++) {
+                    columns[attribute][row] = codes[i * columns.length + attribute];
+                }
+                modelLabels[row] = (byte) (int) shard.labels.get(i);
+                String[] extra = shard.extraValues.get(i);
+                for (int target = 0; target < values.size(); target++) {
+                    if (target < extra.length && !extra[target].isEmpty()) {
+                        values.get(target).add(extra[target]);
+                    }
+                }
+            }
+        }
+
+        List<Target> targets = new ArrayList<>();
+        targets.add(new Target(targetNames.get(0), schema, modelLabels));
+        for (int target = 0; target < values.size(); target++) {
+            String[] labels = values.get(target).toArray(new String[0]);
+            if (labels.length > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Target " + targetNames.get(target + 1) + " has too many values");
+            }
+            TreeSchema targetSchema = new TreeSchema(schema.attributes, schema.binCounts, labels);
+            byte[] labelIds = new byte[size];
+            row = 0;
+            for (ShardRows shard : shards) {
+                for (String[] extra : shard.extraValues) {
+                    String value = target < extra.length ? extra[target] : "";
+                    labelIds[row++] = (byte) (value.isEmpty() ? -1 : Arrays.binarySearch(labels, value));
+                }
+            }
+            targets.add(new Target(targetNames.get(target + 1), targetSchema, labelIds));
+        }
+
+        ColumnarDataset data = new ColumnarDataset(schema, columns, modelLabels, size);
+        List<CompiledTree> trees = new MultiTargetTrainer(data, targets).train(attributes);
+        Path directory = Files.createDirectories(Paths.get(args[2]));
+        for (int target = 0; target < targets.size(); target++) {
+            ModelRegistry.save(trees.get(target), directory.resolve(targets.get(target).name + ModelRegistry.SUFFIX));
+            System.out.println("Training successfully completed for " + targets.get(target).name + ": "
+                    + trees.get(target).size() + " nodes");
+        }
+    }
+
+    /**
+     * Method to read the lines of one shard, binning the columns of the model and keeping the further columns.
+     * Lines that do not hold a valid instance of the model are left out.
+     */
+    private static ShardRows readShard(TrainingDaemon.Model model, int modelColumns, BufferedReader lines)
+            throws IOException {
+        ShardRows shard = new ShardRows();
+        byte[] codes = new byte[modelColumns - 1];
+        String line;
+        while ((line = lines.readLine()) != null) {
+            int end = -1;
+            for (int column = 0; column < modelColumns && end < line.length(); column++) {
+                end = line.indexOf(',', end + 1);
+                if (end < 0) {
+                    end = line.length();
+                }
+            }
+            int label = model.encodeLine(line.substring(0, end), codes);
+            if (label == -2) {
+                continue;
+            }
+            shard.codes.write(codes, 0, codes.length);
+            shard.labels.add(label);
+            shard.extraValues.add(end < line.length() ? line.substring(end + 1).split(",", -1) : new String[0]);
+        }
+        return shard;
+    }
+
+    /**
+     * Class that holds the rows of one shard as they are read.
+     */
+
+    private static class ShardRows {
+        final ByteArrayOutputStream codes = new ByteArrayOutputStream();
+        final List<Integer> labels = new ArrayList<>();
+        final List<String[]> extraValues = new ArrayList<>();
+    }
+}
@@ -0,0 +1,266 @@
+/**
+ * Off-heap data set of bin code columns.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class that stores a binned data set in native memory, outside the reach of the garbage collector.
+ * Rows are appended to chunks; within a chunk each attribute has a column of one byte per row of the chunk,
+ * followed by the column of label ids. The chunks grow with the data set: the first two hold FIRST_ROWS rows, each
+ * of the next ones twice as many as the one before, up to CHUNK_ROWS, so a small data set takes little more memory
+ * than its rows. All chunks belong to one shared arena that is freed by close(), after which the data set must not
+ * be used any more.
+ * <p>
+ * The data set of several shards keeps the chunks of the shards instead of copying their rows. Its chunks are the
+ * filled chunks of every shard in order, each with its first row, and the first chunk of every block of FIRST_ROWS
+ * rows is kept too, so the chunk of a row is found in a step or two even though the shards do not start on block
+ * boundaries. No rows can be added to it, and closing it closes the shards.
+ */
+
+public class OffHeapDataset implements BinnedDataset, AutoCloseable {
+
+    /**
+     * System property that makes main read the training set into native memory instead of a list of instances.
+     */
+    static final String PROPERTY = "id3.offHeap";
+
+    static final int CHUNK_SHIFT = 20;
+    static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+    private static final int FIRST_SHIFT = 12;
+    private static final int FIRST_ROWS = 1 << FIRST_SHIFT;
+    // Chunks below CHUNK_ROWS rows, which together hold the first CHUNK_ROWS rows
+    private static final int GROWING_CHUNKS = CHUNK_SHIFT - FIRST_SHIFT + 1;
+
+    private final TreeSchema schema;
+    private final Arena arena = Arena.ofShared();
+    private final int labelColumn;
+    private MemorySegment[] chunks = new MemorySegment[4];
+    private int size;
+    // Shards of a joined data set, which own its chunks, or null for a data set rows are added to
+    private final List<OffHeapDataset> shards;
+    // Of a joined data set: the first row and the rows per column of each chunk, with the size after the last one,
+    // and the first chunk of each block of FIRST_ROWS rows
+    private final int[] chunkStarts;
+    private final int[] chunkColumns;
+    private final int[] blockChunks;
+
+    public OffHeapDataset(TreeSchema schema) {
+        this.schema = schema;
+        this.labelColumn = schema.attributes.length;
+        this.shards = null;
+        this.chunkStarts = null;
+        this.chunkColumns = null;
+        this.blockChunks = null;
+    }
+
+    private OffHeapDataset(TreeSchema schema, List<OffHeapDataset> shards) {
+        this.schema = schema;
+        this.labelColumn = schema.attributes.length;
+        this.shards = shards;
+        // Only the chunks that hold rows, so that the first rows are strictly increasing
+        int count = 0;
+        for (OffHeapDataset shard : shards) {
+            count += shard.size == 0 ? 0 : chunk(shard.size - 1) + 1;
+        }
+        chunks = new MemorySegment[count];
+        chunkStarts = new int[count + 1];
+        chunkColumns = new int[count];
+        count = 0;
+        for (OffHeapDataset shard : shards) {
+            for (int chunk = 0; chunkStart(chunk) < shard.size; chunk++, count++) {
+                chunks[count] = shard.chunks[chunk];
+                chunkStarts[count] = size + chunkStart(chunk);
+                chunkColumns[count] = chunkRows(chunk);
+            }
+            size += shard.size;
+        }
+        chunkStarts[count] = size;
+
+        this.blockChunks = new int[(size >>> FIRST_SHIFT) + 1];
+        int chunk = 0;
+        for (int block = 0; block < blockChunks.length; block++) {
+            while (chunk + 1 < chunks.length && chunkStarts[chunk + 1] <= block << FIRST_SHIFT) {
+                chunk++;
+            }
+            blockChunks[block] = chunk;
+        }
+    }
+
+    /**
+     * Method to append a row to the data set.
+     *
+     * @param codes   - bin code of each attribute, in the order of the schema
+     * @param labelId - id of the class label of the row
+     * @throws IllegalStateException when the data set joins shards
+     */
+    public void add(byte[] codes, int labelId) {
+        if (shards != null) {
+            throw new IllegalStateException("Rows cannot be added to joined shards");
+        }
+        int chunk = chunk(size);
+        MemorySegment segment = allocateChunk(chunk);
+        long rows = chunkRows(chunk);
+        long row = size - chunkStart(chunk);
+        for (int attribute = 0; attribute < codes.length; attribute++) {
+            segment.set(ValueLayout.JAVA_BYTE, attribute * rows + row, codes[attribute]);
+        }
+        segment.set(ValueLayout.JAVA_BYTE, labelColumn * rows + row, (byte) labelId);
+        size++;
+    }
+
+    /**
+     * Method to join the data sets of the shards of a data set, in the order of the shards. The rows stay in the
+     * native memory of their shards, which belong to the joined data set from then on; a single shard is returned
+     * as it is.
+     *
+     * @param schema - schema of the shards
+     * @param shards - data sets of the shards, in the order of their rows
+     * @return the data set of all rows
+     */
+    static OffHeapDataset concat(TreeSchema schema, List<OffHeapDataset> shards) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+        return new OffHeapDataset(schema, shards);
+    }
+
+    private MemorySegment allocateChunk(int chunk) {
+        if (chunk == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+        if (chunks[chunk] == null) {
+            chunks[chunk] = arena.allocate((long) (labelColumn + 1) * chunkRows(chunk), 8);
+        }
+        return chunks[chunk];
+    }
+
+    /**
+     * Method to find the chunk of a row: chunks 0 and 1 hold FIRST_ROWS rows, chunk k up to GROWING_CHUNKS holds
+     * FIRST_ROWS << (k - 1) rows from row FIRST_ROWS << (k - 1), and the chunks after them CHUNK_ROWS rows each.
+     */
+    private static int chunk(int row) {
+        return row < CHUNK_ROWS ? 32 - Integer.numberOfLeadingZeros(row >>> FIRST_SHIFT)
+                : GROWING_CHUNKS - 1 + (row >>> CHUNK_SHIFT);
+    }
+
+    private static int chunkStart(int chunk) {
+        if (chunk == 0) {
+            return 0;
+        }
+        return chunk < GROWING_CHUNKS ? FIRST_ROWS << (chunk - 1) : (chunk - GROWING_CHUNKS + 1) << CHUNK_SHIFT;
+    }
+
+    private static int chunkRows(int chunk) {
+        if (chunk == 0) {
+            return FIRST_ROWS;
+        }
+        return chunk < GROWING_CHUNKS ? FIRST_ROWS << (chunk - 1) : CHUNK_ROWS;
+    }
+
+    @Override
+    public TreeSchema schema() {
+        return schema;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to find the chunk of a row of a joined data set, from the first chunk of its block.
+     */
+    private int joinedChunk(int row) {
+        int chunk = blockChunks[row >>> FIRST_SHIFT];
+        while (chunkStarts[chunk + 1] <= row) {
+            chunk++;
+        }
+        return chunk;
+    }
+
+    @Override
+    public int code(int attribute, int row) {
+        if (shards != null) {
+            int chunk = joinedChunk(row);
+            return chunks[chunk].get(ValueLayout.JAVA_BYTE,
+                    (long) attribute * chunkColumns[chunk] + (row - chunkStarts[chunk]));
+        }
+        int chunk = chunk(row);
+        return chunks[chunk].get(ValueLayout.JAVA_BYTE,
+                (long) attribute * chunkRows(chunk) + (row - chunkStart(chunk)));
+    }
+
+    @Override
+    public int label(int row) {
+        if (shards != null) {
+            int chunk = joinedChunk(row);
+            return chunks[chunk].get(ValueLayout.JAVA_BYTE,
+                    (long) labelColumn * chunkColumns[chunk] + (row - chunkStarts[chunk]));
+        }
+        int chunk = chunk(row);
+        return chunks[chunk].get(ValueLayout.JAVA_BYTE,
+                (long) labelColumn * chunkRows(chunk) + (row - chunkStart(chunk)));
+    }
+
+    @Override
+    public void codes(int attribute, int from, int count, byte[] destination) {
+        int copied = 0;
+        while (copied < count) {
+            int row = from + copied;
+            int chunk = shards != null ? joinedChunk(row) : chunk(row);
+            int start = shards != null ? chunkStarts[chunk] : chunkStart(chunk);
+            int columnRows = shards != null ? chunkColumns[chunk] : chunkRows(chunk);
+            int end = shards != null ? chunkStarts[chunk + 1] : start + columnRows;
+            int length = Math.min(count - copied, end - row);
+            MemorySegment.copy(chunks[chunk], ValueLayout.JAVA_BYTE,
+                    (long) attribute * columnRows + (row - start), destination, copied, length);
+            copied += length;
+        }
+    }
+
+    /**
+     * Method to allocate a buffer of row indexes in native memory. The buffer has its own confined arena,
+     * so it is freed as soon as the caller closes it rather than when the data set is closed.
+     *
+     * @param size - number of row indexes the buffer holds
+     * @return the buffer
+     */
+    @Override
+    public RowIndex allocateRows(int size) {
+        Arena rowArena = Arena.ofConfined();
+        MemorySegment rows = rowArena.allocate(4L * Math.max(size, 1), 4);
+        return new RowIndex() {
+            @Override
+            public int get(int position) {
+                return rows.getAtIndex(ValueLayout.JAVA_INT, position);
+            }
+
+            @Override
+            public void set(int position, int row) {
+                rows.setAtIndex(ValueLayout.JAVA_INT, position, row);
+            }
+
+            @Override
+            public void close() {
+                rowArena.close();
+            }
+        };
+    }
+
+    /**
+     * Method to free the native memory of the data set, and of its shards when it joins shards.
+     */
+    @Override
+    public void close() {
+        arena.close();
+        if (shards != null) {
+            shards.forEach(OffHeapDataset::close);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Output of predicted class labels.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.IOException;
+
+/**
+ * Interface for a destination of predictions. Predictions are handed over in batches of label ids, in row order.
+ */
+
+public interface PredictionSink extends AutoCloseable {
+
+    /**
+     * Method to write a batch of predictions.
+     *
+     * @param labelIds - predicted label ids, as returned by a {@link TreeScorer}
+     * @param from     - index of the first prediction of the batch
+     * @param count    - number of predictions in the batch
+     */
+    void write(byte[] labelIds, int from, int count) throws IOException;
+
+    /**
+     * Method to write a batch of predictions of several models, one column per model.
+     *
+     * @param labelIds - predicted label ids of each model
+     * @param from     - index of the first prediction of the batch
+     * @param count    - number of predictions in the batch
+     */
+    default void write(byte[][] labelIds, int from, int count) throws IOException {
+        if (labelIds.length != 1) {
+            throw new IllegalArgumentException("Sink takes one column of predictions, not " + labelIds.length);
+        }
+        write(labelIds[0], from, count);
+    }
+
+    /**
+     * Method to write out every prediction handed over so far and release the destination.
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,121 @@
+/**
+ * Fixed-point storage of normalized numeric values.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+/**
+ * Class that stores normalized numeric values, and columns of them, in fixed point and bins them with integer
+ * comparisons. A value v in [0, 1] is stored as ceil(v * SCALE), one byte. The bin thresholds of getValueMap (0.25,
+ * 0.5 and 0.75) are whole multiples of 1 / SCALE, and rounding up keeps every comparison with them: v <= t exactly
+ * when ceil(v * SCALE) <= t * SCALE, where v * SCALE is exact because SCALE is a power of two. Values outside [0, 1]
+ * (negative, above 1 or NaN) all fall in the last bin of getValueMap and are stored as OUT_OF_RANGE, which is in the
+ * last bin too. So the bin of a stored value is always the bin of the original value; only the value itself is
+ * rounded up to a multiple of 1 / 128.
+ * <p>
+ * Bins whose thresholds are not multiples of 1 / 128 would need 16 bits (SCALE 32768) to stay exact; bitsFor tells
+ * how many bits a set of thresholds needs, and the class refuses to load if the thresholds of getValueMap ever need
+ * more than one byte.
+ */
+
+public final class QuantizedColumn {
+
+    static final int SCALE = 1 << 7;
+    static final byte OUT_OF_RANGE = (byte) 0xFF;
+
+    // Thresholds of getValueMap; bin i holds the values up to THRESHOLDS[i]
+    private static final double[] THRESHOLDS = {0.25, 0.5, 0.75};
+    private static final int FIRST = quantizedThreshold(0);
+    private static final int SECOND = quantizedThreshold(1);
+    private static final int THIRD = quantizedThreshold(2);
+
+    static {
+        if (bitsFor(THRESHOLDS) != Byte.SIZE) {
+            throw new ExceptionInInitializerError("Bin thresholds are not multiples of 1/" + SCALE);
+        }
+    }
+
+    private QuantizedColumn() {
+    }
+
+    private static int quantizedThreshold(int bin) {
+        return (int) (THRESHOLDS[bin] * SCALE);
+    }
+
+    /**
+     * Method to retrieve the number of bits that keep the comparisons with a set of thresholds in [0, 1] exact.
+     *
+     * @return 8 when the thresholds are multiples of 1 / 128, 16 when they are multiples of 1 / 32768, otherwise 0
+     */
+    static int bitsFor(double... thresholds) {
+        for (int bits : new int[]{Byte.SIZE, Short.SIZE}) {
+            // The largest code is kept for OUT_OF_RANGE, so the scale is the largest power of two below it
+            double scale = 1 << (bits - 1);
+            boolean exact = true;
+            for (double threshold : thresholds) {
+                exact &= threshold >= 0 && threshold <= 1 && threshold * scale == Math.rint(threshold * scale);
+            }
+            if (exact) {
+                return bits;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Method to store a normalized numeric value in fixed point.
+     *
+     * @param value - normalized numeric value
+     * @return ceil(value * SCALE) for values in [0, 1], otherwise OUT_OF_RANGE
+     */
+    static byte quantize(double value) {
+        if (value >= 0 && value <= 1) {
+            return (byte) Math.ceil(value * SCALE);
+        }
+        return OUT_OF_RANGE;
+    }
+
+    /**
+     * Method to retrieve the value of a fixed-point number, for code that compares values with the thresholds of
+     * getValueMap and getArrowLabel. It falls in the same bin as the value that was stored.
+     *
+     * @return the stored value rounded up to a multiple of 1 / SCALE, or NaN when it was outside [0, 1]
+     */
+    static double value(byte quantized) {
+        return quantized == OUT_OF_RANGE ? Double.NaN : (quantized & 0xFF) / (double) SCALE;
+    }
+
+    /**
+     * Method to map a fixed-point number to its bin code, with the comparisons of getValueMap on integers.
+     *
+     * @return bin code between 0 and 3
+     */
+    static byte code(byte quantized) {
+        int value = quantized & 0xFF;
+        if (value <= FIRST)
+            return 0;
+        else if (value <= SECOND)
+            return 1;
+        else if (value <= THIRD)
+            return 2;
+        else
+            return 3;
+    }
+
+    /**
+     * Method to bin a column of fixed-point numbers, a vector at a time when the jdk.incubator.vector module is
+     * present, with the same results as code.
+     *
+     * @param values - fixed-point numbers of the column
+     * @param count  - number of values to bin
+     * @param codes  - bin code of each value, written from index 0
+     */
+    static void codes(byte[] values, int count, byte[] codes) {
+        if (ColumnBatch.VECTORIZED) {
+            VectorColumnBatch.binQuantized(values, count, codes, FIRST, SECOND, THIRD);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            codes[i] = code(values[i]);
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Reading of data sets that are split over several files.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Class that reads a CSV data set stored as one or more shards. The location of a data set is a file, a directory
+ * (every regular file in it) or a glob in the file name part of the path, such as data/train-*.csv.gz. Hidden files
+ * are never taken as shards of a directory or glob.
+ * Shards are read in parallel, one thread per shard, and gzip compressed shards are recognised by their first bytes
+ * and decompressed on the fly. Every shard starts with the same header line, which is handed to the caller once.
+ */
+
+public class ShardedInput {
+
+    static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Interface for the code that reads the rows of one shard.
+     *
+     * @param <R> type of the result of a shard
+     */
+    public interface ShardReader<R> {
+
+        /**
+         * Method to read the rows of a shard.
+         *
+         * @param lines - lines of the shard after its header line
+         * @return result of the shard
+         */
+        R read(BufferedReader lines) throws IOException;
+    }
+
+    /**
+     * Method to list the shards of a data set.
+     *
+     * @param location - file, directory or glob of the shards
+     * @return paths of the shards, sorted by name
+     */
+    public static List<Path> resolve(String location) throws IOException {
+        List<Path> shards = new ArrayList<>();
+        if (location.matches(".*[*?\\[{].*")) {
+            int slash = location.lastIndexOf('/');
+            Path directory = Paths.get(slash < 0 ? "." : location.substring(0, slash + 1));
+            PathMatcher matcher = directory.getFileSystem().getPathMatcher("glob:" + location.substring(slash + 1));
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    if (Files.isRegularFile(file) && matcher.matches(file.getFileName())
+                            && !file.getFileName().toString().startsWith(".")) {
+                        shards.add(file);
+                    }
+                }
+            }
+        } else if (Files.isDirectory(Paths.get(location))) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(location))) {
+                for (Path file : files) {
+                    if (Files.isRegularFile(file) && !file.getFileName().toString().startsWith(".")) {
+                        shards.add(file);
+                    }
+                }
+            }
+        } else {
+            shards.add(Paths.get(location));
+        }
+
+        if (shards.isEmpty()) {
+            throw new NoSuchFileException(location, null, "no shards found");
+        }
+        shards.sort(null);
+        return shards;
+    }
+
+    /**
+     * Method to open a shard for reading, decompressing it when it starts with the gzip magic bytes.
+     *
+     * @param shard - path of the shard
+     * @return reader of the lines of the shard
+     */
+    public static BufferedReader open(Path shard) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(shard), BUFFER_SIZE);
+        try {
+            in.mark(2);
+            boolean gzip = in.read() == 0x1f && in.read() == 0x8b;
+            in.reset();
+            if (gzip) {
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Method to read all shards of a data set in parallel.
+     *
+     * @param location - file, directory or glob of the shards
+     * @param header   - receives the header line of the first shard. The header of every other shard must be the
+     *                 same, ignoring case, or the data set is rejected.
+     * @param reader   - reads the rows of each shard; called concurrently for different shards
+     * @param threads  - largest number of shards read at the same time
+     * @return the result of each shard, in the order of the shards
+     */
+    public static <R> List<R> read(String location, Consumer<String> header, ShardReader<R> reader, int threads)
+            throws IOException {
+        List<Path> shards = resolve(location);
+        String expectedHeader;
+        try (BufferedReader lines = open(shards.get(0))) {
+            expectedHeader = lines.readLine();
+        }
+        if (expectedHeader == null) {
+            throw new IOException("Shard " + shards.get(0) + " has no header line");
+        }
+        header.accept(expectedHeader);
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, shards.size())));
+        try {
+            List<Future<R>> shardResults = new ArrayList<>();
+            for (Path shard : shards) {
+                shardResults.add(executor.submit(() -> readShard(shard, expectedHeader, reader)));
+            }
+            List<R> results = new ArrayList<>(shards.size());
+            for (Future<R> shardResult : shardResults) {
+                results.add(shardResult.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Reading the shards of " + location + " failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + location, e);
+        } finally {
+            // Stops the other shards if one of them failed
+            executor.shutdownNow();
+        }
+    }
+
+    private static <R> R readShard(Path shard, String expectedHeader, ShardReader<R> reader) throws IOException {
+        try (BufferedReader lines = open(shard)) {
+            String header = lines.readLine();
+            if (!expectedHeader.equalsIgnoreCase(header)) {
+                throw new IOException("Header of shard " + shard + " does not match the header of the data set: "
+                        + header);
+            }
+            return reader.read(lines);
+        }
+    }
+
+    /**
+     * Method to join the lists of instances of the shards into one list. The list is a read-only view over the
+     * lists of the shards, so no instance is copied.
+     *
+     * @param shards - list of instances of each shard
+     * @return list of all instances, in the order of the shards
+     */
+    public static <T> List<T> concat(List<List<T>> shards) {
+        return shards.size() == 1 ? shards.get(0) : new ShardedList<>(shards);
+    }
+
+    /**
+     * Class that presents the lists of several shards as one list. An index is found by a binary search over
+     * the first index of each shard.
+     */
+
+    private static class ShardedList<T> extends AbstractList<T> implements RandomAccess {
+        private final List<List<T>> shards = new ArrayList<>();
+        private final int[] offsets;
+        private final int size;
+
+        ShardedList(List<List<T>> shardLists) {
+            int[] starts = new int[shardLists.size()];
+            int total = 0;
+            for (List<T> shard : shardLists) {
+                // Empty shards are left out, so that the first indexes are strictly increasing
+                if (!shard.isEmpty()) {
+                    starts[shards.size()] = total;
+                    shards.add(shard);
+                    total += shard.size();
+                }
+            }
+            offsets = Arrays.copyOf(starts, shards.size());
+            size = total;
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            int shard = Arrays.binarySearch(offsets, index);
+            if (shard < 0) {
+                shard = -shard - 2;
+            }
+            return shards.get(shard).get(index - offsets[shard]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
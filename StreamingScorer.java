@@ -0,0 +1,290 @@
+/**
+ * Pipelined streaming scoring of data sets.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Class that scores a CSV data set without loading it. The lines go through four stages - parse, bin-encode, predict
+ * and write - that run on their own threads and pass batches of rows to each other through bounded queues, so
+ * reading, parsing and scoring overlap. The writer puts the batches back in input order before handing them to the
+ * sink. The number of batches in flight is capped, so memory use does not depend on the size of the file.
+ * <p>
+ * Several models can score the same data set in one pass, for example a champion and its challengers: each batch is
+ * parsed and bin-encoded once, and the predict stage runs every model over the encoded batch while it is in the
+ * cache (a batch of 4096 rows takes a few dozen kilobytes), so each further model costs one scoring of the batch by
+ * the compiled scorer of its current version (the lookup table, unless id3.scorer chooses another backend). The
+ * sink receives one column of predictions per model.
+ *
+ * @param <T> type of the instances of the data set
+ */
+
+public class StreamingScorer<T> {
+
+    static final int BATCH_ROWS = ColumnBatch.BLOCK_ROWS;
+    static final int DEFAULT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 3);
+
+    private final Function<String, T> parser;
+    private final Function<List<T>, byte[][]> encoder;
+    private final List<ModelRegistry> models;
+    private final int threads;
+
+    /**
+     * @param parser  - parses a line into an instance, or returns null for a line that does not hold one
+     * @param encoder - maps a batch of instances to one column of bin codes per attribute
+     * @param tree    - tree the instances are scored with
+     * @param threads - number of threads of each of the parse, encode and predict stages
+     */
+    public StreamingScorer(Function<String, T> parser, Function<List<T>, byte[][]> encoder, CompiledTree tree,
+                           int threads) {
+        this(parser, encoder, ModelRegistry.of(tree), threads);
+    }
+
+    /**
+     * @param parser  - parses a line into an instance, or returns null for a line that does not hold one
+     * @param encoder - maps a batch of instances to one column of bin codes per attribute
+     * @param models  - registry whose current model scores each batch. A new version is picked up by the next
+     *                batch, while the batches being scored finish with the version they started with.
+     * @param threads - number of threads of each of the parse, encode and predict stages
+     */
+    public StreamingScorer(Function<String, T> parser, Function<List<T>, byte[][]> encoder, ModelRegistry models,
+                           int threads) {
+        this(parser, encoder, List.of(models), threads);
+    }
+
+    /**
+     * @param parser  - parses a line into an instance, or returns null for a line that does not hold one
+     * @param encoder - maps a batch of instances to one column of bin codes per attribute
+     * @param models  - registries whose current models score each batch, one column of predictions each
+     * @param threads - number of threads of each of the parse, encode and predict stages
+     */
+    public StreamingScorer(Function<String, T> parser, Function<List<T>, byte[][]> encoder,
+                           List<ModelRegistry> models, int threads) {
+        if (models.isEmpty()) {
+            throw new IllegalArgumentException("No model to score with");
+        }
+        this.parser = parser;
+        this.encoder = encoder;
+        this.models = models;
+        this.threads = threads;
+    }
+
+    /**
+     * Method to score every line of a CSV data set after the header line of each of its shards.
+     *
+     * @param input - file, directory or glob of the shards of the data set (see {@link ShardedInput})
+     * @param sink  - receives the predictions in the order of the file, one column per model
+     * @return number of rows that were scored
+     */
+    public long score(String input, PredictionSink sink) throws IOException {
+        int stageCapacity = 2 * threads;
+        Semaphore inFlight = new Semaphore(3 * stageCapacity + 3 * threads + 2);
+        BlockingQueue<Batch<T>> lines = new ArrayBlockingQueue<>(stageCapacity);
+        BlockingQueue<Batch<T>> parsed = new ArrayBlockingQueue<>(stageCapacity);
+        BlockingQueue<Batch<T>> encoded = new ArrayBlockingQueue<>(stageCapacity);
+        BlockingQueue<Batch<T>> scored = new ArrayBlockingQueue<>(stageCapacity);
+
+        ExecutorService executor = Executors.newFixedThreadPool(3 * threads + 2);
+        // Stages are waited for in the order they finish, so the first one to fail is reported at once; the threads
+        // of the other stages may be blocked on a queue or on inFlight for good by then, until shutdownNow()
+        // interrupts them
+        CompletionService<Long> stages = new ExecutorCompletionService<>(executor);
+        try {
+            stages.submit(() -> read(input, lines, inFlight));
+            AtomicInteger parsing = new AtomicInteger(threads);
+            AtomicInteger encoding = new AtomicInteger(threads);
+            AtomicInteger predicting = new AtomicInteger(threads);
+            for (int i = 0; i < threads; i++) {
+                stages.submit(() -> stage(lines, parsed, parsing, this::parse));
+                stages.submit(() -> stage(parsed, encoded, encoding, this::encode));
+                stages.submit(() -> stage(encoded, scored, predicting, this::predict));
+            }
+            Future<Long> writer = stages.submit(() -> write(scored, sink, inFlight));
+
+            for (int stage = 0; stage < 3 * threads + 2; stage++) {
+                stages.take().get();
+            }
+            return writer.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Streaming scoring failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while scoring", e);
+        } finally {
+            // Stops the other stages if one of them failed
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Method run by the reader thread. The shards are read one after the other, and a batch may hold the last
+     * lines of one shard and the first lines of the next.
+     */
+    private Long read(String input, BlockingQueue<Batch<T>> lines, Semaphore inFlight)
+            throws IOException, InterruptedException {
+        long sequence = 0;
+        String[] batchLines = new String[BATCH_ROWS];
+        int count = 0;
+        for (Path shard : ShardedInput.resolve(input)) {
+            try (BufferedReader reader = ShardedInput.open(shard)) {
+                reader.readLine(); // header
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    batchLines[count++] = line;
+                    if (count == BATCH_ROWS) {
+                        inFlight.acquire();
+                        lines.put(new Batch<>(sequence++, batchLines, count));
+                        batchLines = new String[BATCH_ROWS];
+                        count = 0;
+                    }
+                }
+            }
+        }
+        if (count > 0) {
+            inFlight.acquire();
+            lines.put(new Batch<>(sequence, batchLines, count));
+        }
+        lines.put(Batch.end());
+        return null;
+    }
+
+    /**
+     * Method run by each thread of a stage. The end marker is put back for the other threads of the stage,
+     * and the last thread to finish passes it on to the next stage.
+     */
+    private Long stage(BlockingQueue<Batch<T>> input, BlockingQueue<Batch<T>> output, AtomicInteger running,
+                       StageTask<T> task) throws InterruptedException {
+        while (true) {
+            Batch<T> batch = input.take();
+            if (batch.isEnd()) {
+                input.put(batch);
+                if (running.decrementAndGet() == 0) {
+                    output.put(batch);
+                }
+                return null;
+            }
+            task.run(batch);
+            output.put(batch);
+        }
+    }
+
+    private void parse(Batch<T> batch) {
+        List<T> rows = new ArrayList<>(batch.count);
+        for (int i = 0; i < batch.count; i++) {
+            T row = parser.apply(batch.lines[i]);
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        batch.lines = null;
+        batch.rows = rows;
+    }
+
+    private void encode(Batch<T> batch) {
+        batch.columns = encoder.apply(batch.rows);
+        batch.count = batch.rows.size();
+        batch.rows = null;
+    }
+
+    private void predict(Batch<T> batch) {
+        batch.labelIds = new byte[models.size()][batch.count];
+        StringBuilder names = new StringBuilder();
+        for (int model = 0; model < models.size(); model++) {
+            try (ModelRegistry.Lease lease = models.get(model).acquire()) {
+                // The scorer of the version, compiled to the backend chosen by id3.scorer
+                lease.scorer().scoreColumns(batch.columns, batch.count, batch.labelIds[model]);
+                names.append(model == 0 ? "" : ",").append(lease.name());
+            }
+        }
+        batch.model = names.toString();
+        batch.columns = null;
+    }
+
+    private Long write(BlockingQueue<Batch<T>> scored, PredictionSink sink, Semaphore inFlight)
+            throws IOException, InterruptedException {
+        Map<Long, Batch<T>> waiting = new HashMap<>();
+        long nextSequence = 0;
+        long rows = 0;
+        Batch<T> batch;
+        while (!(batch = scored.take()).isEnd()) {
+            waiting.put(batch.sequence, batch);
+            while ((batch = waiting.remove(nextSequence)) != null) {
+                sink.write(batch.labelIds, 0, batch.count);
+                rows += batch.count;
+                commitEvent(batch);
+                nextSequence++;
+                inFlight.release();
+            }
+        }
+        return rows;
+    }
+
+    private void commitEvent(Batch<T> batch) {
+        TrainingEvents.ScoringBatch event = batch.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.sequence = batch.sequence;
+            event.rows = batch.count;
+            event.model = batch.model;
+            event.commit();
+        }
+    }
+
+    private interface StageTask<T> {
+        void run(Batch<T> batch);
+    }
+
+    /**
+     * Class that holds one batch of lines as it moves through the stages. Each stage replaces the data of the
+     * previous stage, so a batch only keeps what the next stage needs. Its flight recorder event is begun when
+     * the batch is read and committed when it is written.
+     */
+
+    private static class Batch<T> {
+        final long sequence;
+        String[] lines;
+        List<T> rows;
+        byte[][] columns;
+        byte[][] labelIds;
+        int count;
+        String model;
+        final TrainingEvents.ScoringBatch event = new TrainingEvents.ScoringBatch();
+
+        Batch(long sequence, String[] lines, int count) {
+            this.sequence = sequence;
+            this.lines = lines;
+            this.count = count;
+            event.begin();
+        }
+
+        static <T> Batch<T> end() {
+            return new Batch<>(-1, null, 0);
+        }
+
+        boolean isEnd() {
+            return sequence < 0;
+        }
+    }
+}
@@ -0,0 +1,497 @@
+/**
+ * Resident training and scoring service.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Class that keeps a JVM running and serves training jobs over a Unix domain socket, so that small jobs run on
+ * warm, compiled code instead of paying for JVM startup and a fresh load of their data set. A client connects,
+ * sends one job as a line of text and reads the response until its last line, which starts with OK or ERROR:
+ * <pre>
+ *   train    &lt;model&gt; &lt;train&gt; [model file]       - train a tree, report its size and save it if asked
+ *   evaluate &lt;model&gt; &lt;train&gt;                    - train and print the accuracy of each fold, like main
+ *   score    &lt;model&gt; &lt;train&gt; &lt;test&gt; [output]  - train and score the test set, to the output CSV file
+ *                                                or else back over the socket, one label per line
+ *   predict  &lt;model&gt; &lt;model dir&gt;[,&lt;model dir&gt;...] &lt;test&gt; [output]
+ *                                              - score the test set with the current model of a directory, or
+ *                                                of each directory in one pass, one column per directory
+ *   shutdown
+ * </pre>
+ * The model is ID3 or ID3PartB. Paths must be absolute: the daemon runs in its own working directory, so a relative
+ * path would not name the file the client means, and a job with one is rejected. Data sets are kept binned in memory
+ * in a least recently used cache with a budget in bytes, keyed by model and location and reloaded when the size or
+ * modification time of a shard changes. Jobs run on one shared thread pool. Model directories stay registered once
+ * a predict job used them, so models dropped into them are picked up without pausing the jobs that are scoring.
+ */
+
+public class TrainingDaemon {
+
+    static final long DEFAULT_MEMORY_BUDGET = 1L << 30;
+    static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Interface of a model the daemon can train: loading a data set, training a tree and streaming a test set.
+     */
+    public interface Model {
+
+        TreeSchema schema();
+
+        /**
+         * Method to retrieve the number of folds of the accuracy report.
+         */
+        int folds();
+
+        /**
+         * Method to load and bin a data set.
+         *
+         * @param location - file, directory or glob of the shards of the data set
+         * @return the binned data set with the attributes of its header
+         */
+        Dataset load(String location) throws IOException;
+
+        /**
+         * Method to construct the decision tree.
+         *
+         * @param remainingAttributes - attributes that are considered; the list is changed by training
+         */
+        CompiledTree train(BinnedDataset data, List<String> remainingAttributes);
+
+        /**
+         * Method to parse and bin one line of the data set.
+         *
+         * @param line  - line of the CSV file, other than the header, with the columns of the model only
+         * @param codes - receives the bin code of each attribute
+         * @return label id of the line, -1 for a label outside the schema, or -2 when the line does not hold a
+         * valid instance
+         */
+        int encodeLine(String line, byte[] codes);
+
+        /**
+         * Method to create a streaming scorer of test sets that scores each batch with the current model of each
+         * registry, one column of predictions per registry.
+         */
+        StreamingScorer<?> streamingScorer(List<ModelRegistry> models, int threads);
+    }
+
+    /**
+     * Class that holds a loaded data set with the attributes of its header line.
+     */
+
+    public static class Dataset {
+        final BinnedDataset data;
+        final List<String> attributes;
+
+        public Dataset(BinnedDataset data, List<String> attributes) {
+            this.data = data;
+            this.attributes = attributes;
+        }
+
+        /**
+         * Method to estimate the memory held by the data set: one byte per bin code and label id.
+         */
+        long bytes() {
+            return (long) data.size() * (data.schema().attributes.length + 1);
+        }
+    }
+
+    /**
+     * Class that holds a data set of the cache, which may still be loading.
+     */
+
+    private static class CachedDataset {
+        final String fingerprint;
+        final CompletableFuture<Dataset> dataset = new CompletableFuture<>();
+        long bytes;
+
+        CachedDataset(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private static final Map<String, Supplier<Model>> MODELS = Map.of("ID3", ID3::daemonModel,
+            "ID3PartB", ID3PartB::daemonModel);
+
+    private final Map<String, Model> loadedModels = new HashMap<>();
+    private final long memoryBudget;
+    private final ExecutorService pool;
+
+    // Access order, so that the first entry is the least recently used data set
+    private final LinkedHashMap<String, CachedDataset> datasets = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    private final Map<String, ModelRegistry> registries = new HashMap<>();
+
+    private ServerSocketChannel server;
+
+    /**
+     * @param memoryBudget - largest number of bytes of binned data kept in the cache
+     * @param threads      - number of jobs run at the same time
+     */
+    public TrainingDaemon(long memoryBudget, int threads) {
+        this.memoryBudget = memoryBudget;
+        this.pool = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Main method of the daemon.
+     * Note : First argument is the path of the socket file.
+     *        Optional second argument is the memory budget of the data set cache in megabytes.
+     *        Optional third argument is the number of jobs run at the same time.
+     *
+     * @param args - array of arguments
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 3) {
+            System.out.println("Please enter the path of the socket, and optionally the memory budget in MB"
+                    + " and the number of threads.");
+            return;
+        }
+
+        long memoryBudget = args.length > 1 ? Long.parseLong(args[1]) << 20 : DEFAULT_MEMORY_BUDGET;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_THREADS;
+        new TrainingDaemon(memoryBudget, threads).serve(Paths.get(args[0]));
+    }
+
+    /**
+     * Method to accept jobs until a shutdown job is received.
+     *
+     * @param socketPath - path of the socket file, which is replaced if it exists
+     */
+    public void serve(Path socketPath) throws IOException {
+        Files.deleteIfExists(socketPath);
+        try (ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.bind(UnixDomainSocketAddress.of(socketPath));
+            synchronized (this) {
+                server = channel;
+            }
+            System.out.println("Listening on " + socketPath);
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = channel.accept();
+                } catch (ClosedChannelException e) {
+                    break; // shutdown
+                }
+                pool.execute(() -> handle(client));
+            }
+        } finally {
+            pool.shutdown();
+            Files.deleteIfExists(socketPath);
+            synchronized (registries) {
+                for (ModelRegistry registry : registries.values()) {
+                    registry.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to stop accepting jobs. Jobs that are running are finished.
+     */
+    public synchronized void shutdown() throws IOException {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            BufferedReader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            PrintStream response = new PrintStream(out, false, StandardCharsets.UTF_8);
+            String line = in.readLine();
+            try {
+                long start = System.nanoTime();
+                run(line == null ? new String[0] : line.trim().split("\\s+"), out, response);
+                response.println("OK " + (System.nanoTime() - start) / 1000000 + " ms");
+            } catch (Exception e) {
+                response.println("ERROR " + e);
+            }
+            response.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void run(String[] job, OutputStream out, PrintStream response) throws IOException {
+        String command = job.length == 0 ? "" : job[0];
+        if (command.equals("shutdown") && job.length == 1) {
+            shutdown();
+            return;
+        }
+        if (!(command.equals("train") && (job.length == 3 || job.length == 4)
+                || command.equals("evaluate") && job.length == 3
+                || (command.equals("score") || command.equals("predict")) && (job.length == 4 || job.length == 5))) {
+            throw new IllegalArgumentException("Unknown job: " + String.join(" ", job));
+        }
+        for (int argument = 2; argument < job.length; argument++) {
+            for (String path : job[argument].split(",")) {
+                checkAbsolute(path);
+            }
+        }
+
+        Model model = model(job[1]);
+        if (command.equals("predict")) {
+            List<ModelRegistry> registries = new ArrayList<>();
+            for (String directory : job[2].split(",")) {
+                registries.add(registry(model, directory));
+            }
+            score(model, registries, job, out, response);
+            return;
+        }
+        Dataset dataset = dataset(job[1], model, job[2]);
+        CompiledTree tree = model.train(dataset.data, new LinkedList<>(dataset.attributes));
+        switch (command) {
+            case "train":
+                if (job.length == 4) {
+                    ModelRegistry.save(tree, Paths.get(job[3]));
+                }
+                response.println("Training successfully completed: " + dataset.data.size() + " rows, "
+                        + tree.attribute.length + " nodes");
+                break;
+            case "evaluate":
+                evaluate(model.folds(), dataset.data, LookupTableScorer.compile(tree), response);
+                break;
+            default:
+                score(model, List.of(ModelRegistry.of(tree)), job, out, response);
+        }
+    }
+
+    /**
+     * Method to check that a path of a job is absolute, since the daemon would resolve a relative one against its
+     * own working directory rather than the client's.
+     *
+     * @param path - file, directory or glob of a job
+     * @throws IllegalArgumentException when the path is relative
+     */
+    private static void checkAbsolute(String path) {
+        if (!Paths.get(path).isAbsolute()) {
+            throw new IllegalArgumentException("Relative path " + path + ": paths of a job must be absolute, since "
+                    + "the daemon runs in " + Paths.get("").toAbsolutePath());
+        }
+    }
+
+    /**
+     * Method to score the test set of a score or predict job, to the output file of the job or else to the socket.
+     * A single model writes the label column; several models write a column each, named after their directory.
+     */
+    private void score(Model model, List<ModelRegistry> models, String[] job, OutputStream out, PrintStream response)
+            throws IOException {
+        response.flush();
+        StreamingScorer<?> scorer = model.streamingScorer(models, 1);
+        String[] columns = {"label"};
+        if (models.size() > 1) {
+            columns = job[2].split(",");
+            for (int column = 0; column < columns.length; column++) {
+                columns[column] = Paths.get(columns[column]).getFileName().toString();
+            }
+        }
+        long rows;
+        if (job.length == 5) {
+            try (PredictionSink sink = BufferedPredictionWriter.toFile(Paths.get(job[4]), model.schema(), true,
+                    columns)) {
+                rows = scorer.score(job[3], sink);
+            }
+        } else {
+            try (PredictionSink sink = new BufferedPredictionWriter(out, false, model.schema(), false, columns)) {
+                rows = scorer.score(job[3], sink);
+            }
+        }
+        response.println("Scored " + rows + " rows");
+    }
+
+    /**
+     * Method to retrieve the registry of a model directory, opening it on first use.
+     */
+    private ModelRegistry registry(Model model, String directory) throws IOException {
+        String key = Paths.get(directory).toAbsolutePath().normalize().toString();
+        synchronized (registries) {
+            ModelRegistry registry = registries.get(key);
+            if (registry == null) {
+                registry = ModelRegistry.open(Paths.get(key), model.schema());
+                registry.onRetired(version -> System.out.println("Retired model " + key + " " + version.name()));
+                registries.put(key, registry);
+            }
+            return registry;
+        }
+    }
+
+    /**
+     * Method to report the accuracy of a tree the way main does: each fold checks the predictions for a random
+     * tenth (or fifth) of the training set.
+     *
+     * @param folds    - number of folds
+     * @param data     - binned training set
+     * @param scorer   - scorer of the tree
+     * @param response - receives the accuracy of each fold and their mean
+     */
+    static void evaluate(int folds, BinnedDataset data, TreeScorer scorer, PrintStream response) {
+        List<Integer> validationList = new ArrayList<>(data.size());
+        for (int row = 0; row < data.size(); row++) {
+            validationList.add(row);
+        }
+
+        int validationSize = data.size() / folds;
+        byte[] codes = new byte[data.schema().attributes.length];
+        double sum = 0;
+        for (int foldCount = 1; foldCount <= folds; foldCount++) {
+            TrainingEvents.FoldEvaluation event = new TrainingEvents.FoldEvaluation();
+            event.begin();
+            Collections.shuffle(validationList);
+            int count = 0;
+            for (int row : validationList.subList(0, validationSize)) {
+                for (int attribute = 0; attribute < codes.length; attribute++) {
+                    codes[attribute] = (byte) data.code(attribute, row);
+                }
+                if (scorer.score(codes) == data.label(row)) {
+                    count++;
+                }
+            }
+
+            double accuracy = (double) count / validationSize * 100;
+            event.end();
+            if (event.shouldCommit()) {
+                event.fold = foldCount;
+                event.rows = validationSize;
+                event.correct = count;
+                event.accuracy = accuracy;
+                event.commit();
+            }
+            response.println("Accuracy for fold " + foldCount + " : " + String.format("%.2f", accuracy));
+            sum += accuracy;
+        }
+        response.println("Cross-validation accuracy: " + String.format("%.2f", sum / folds));
+    }
+
+    private synchronized Model model(String name) {
+        return loadedModels.computeIfAbsent(name, TrainingDaemon::newModel);
+    }
+
+    /**
+     * Method to create a model by its name.
+     *
+     * @param name - ID3 or ID3PartB
+     * @return the model
+     */
+    static Model newModel(String name) {
+        Supplier<Model> factory = MODELS.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("Unknown model: " + name);
+        }
+        return factory.get();
+    }
+
+    /**
+     * Method to retrieve a data set from the cache, loading it when it is missing or its shards changed.
+     * Jobs that ask for a data set that is being loaded wait for that load instead of starting another one.
+     */
+    private Dataset dataset(String modelName, Model model, String location) throws IOException {
+        String key = modelName + " " + location;
+        String fingerprint = fingerprint(location);
+        CachedDataset loading = new CachedDataset(fingerprint);
+        CachedDataset cached;
+        synchronized (datasets) {
+            // A data set whose shards changed is replaced and its bytes are no longer counted, in the same step
+            cached = datasets.compute(key, (k, current) -> {
+                if (current != null && current.fingerprint.equals(fingerprint)) {
+                    return current;
+                }
+                if (current != null) {
+                    cachedBytes -= current.bytes;
+                }
+                return loading;
+            });
+        }
+
+        if (cached == loading) {
+            try {
+                Dataset dataset = model.load(location);
+                synchronized (datasets) {
+                    // The bytes are counted only while the entry is in the cache: a load that was replaced while
+                    // it ran was never counted, so it is not subtracted either
+                    datasets.computeIfPresent(key, (k, current) -> {
+                        if (current == loading) {
+                            loading.bytes = dataset.bytes();
+                            cachedBytes += loading.bytes;
+                        }
+                        return current;
+                    });
+                    loading.dataset.complete(dataset);
+                    evict();
+                }
+                return dataset;
+            } catch (IOException | RuntimeException e) {
+                synchronized (datasets) {
+                    datasets.remove(key, loading);
+                }
+                loading.dataset.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        try {
+            return cached.dataset.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Loading " + location + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + location, e);
+        }
+    }
+
+    /**
+     * Method to drop least recently used data sets until the cache fits the memory budget. Data sets that are
+     * still loading are kept; a data set larger than the whole budget is not kept at all.
+     */
+    private void evict() {
+        Iterator<CachedDataset> iterator = datasets.values().iterator();
+        while (cachedBytes > memoryBudget && iterator.hasNext()) {
+            CachedDataset cached = iterator.next();
+            if (cached.dataset.isDone()) {
+                cachedBytes -= cached.bytes;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Method to describe the current shards of a data set by their names, sizes and modification times.
+     */
+    private static String fingerprint(String location) throws IOException {
+        StringBuilder fingerprint = new StringBuilder();
+        for (Path shard : ShardedInput.resolve(location)) {
+            fingerprint.append(shard.toAbsolutePath()).append(' ').append(Files.size(shard)).append(' ')
+                    .append(Files.getLastModifiedTime(shard).toMillis()).append('\n');
+        }
+        return fingerprint.toString();
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Flight recorder events of training and scoring.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Class that holds the Java Flight Recorder events of the decision tree, so that a recording shows data set loads,
+ * node splits, training limits, fold evaluations and scoring batches next to GC and I/O. The events are enabled by
+ * default, carry no stack trace and are only filled in when a recording takes them (shouldCommit), so they are cheap
+ * enough to leave in production:
+ * <pre>
+ *   java -XX:StartFlightRecording=filename=id3.jfr ... ID3 train.csv test.csv
+ *   jfr print --categories ID3 id3.jfr
+ * </pre>
+ */
+
+public class TrainingEvents {
+
+    private TrainingEvents() {
+    }
+
+    /**
+     * Method to commit a data set load event.
+     *
+     * @param event    - event that was begun before the load
+     * @param location - file, directory or glob of the shards
+     * @param rows     - number of rows that were loaded
+     */
+    static void loaded(DatasetLoad event, String location, long rows) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.location = location;
+            event.rows = rows;
+            try {
+                for (Path shard : ShardedInput.resolve(location)) {
+                    event.shards++;
+                    event.bytes += Files.size(shard);
+                }
+            } catch (IOException e) {
+                event.bytes = -1;
+            }
+            event.commit();
+        }
+    }
+
+    /**
+     * Event of the loading of a training set, from its CSV shards or from the binary cache.
+     */
+
+    @Name("id3.DatasetLoad")
+    @Label("Dataset Load")
+    @Category("ID3")
+    @Description("Training set read from its shards or from the binary cache")
+    @StackTrace(false)
+    static class DatasetLoad extends Event {
+        @Label("Location")
+        String location;
+
+        @Label("Shards")
+        int shards;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Rejected Lines")
+        @Description("Lines that did not hold a valid instance, or rows with an unknown label")
+        long rejects;
+
+        @Label("Cached")
+        @Description("Read from the binary cache instead of parsing the CSV text")
+        boolean cached;
+    }
+
+    /**
+     * Event of the split of one node while a tree is trained. The duration covers the choice of the attribute and
+     * the split of the rows, but not the subtrees.
+     */
+
+    @Name("id3.NodeSplit")
+    @Label("Node Split")
+    @Category({"ID3", "Training"})
+    @Description("Split of a node of the decision tree")
+    @StackTrace(false)
+    static class NodeSplit extends Event {
+        @Label("Depth")
+        int depth;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Attribute")
+        String attribute;
+
+        @Label("Information Gain")
+        double gain;
+
+        @Label("Sampled")
+        @Description("Attribute chosen from a sample of the rows")
+        boolean sampled;
+    }
+
+    /**
+     * Event of a best-first training that stopped at its time limit or node budget and turned its open nodes into
+     * leaves.
+     */
+
+    @Name("id3.TrainingLimit")
+    @Label("Training Limit")
+    @Category({"ID3", "Training"})
+    @Description("Training cut short by its time limit or node budget")
+    @StackTrace(false)
+    static class TrainingLimit extends Event {
+        @Label("Nodes")
+        @Description("Nodes of the returned tree, including the fallback slots")
+        int nodes;
+
+        @Label("Finalized Nodes")
+        @Description("Open nodes that became leaves with their majority label")
+        int finalizedNodes;
+
+        @Label("Time Limit Reached")
+        boolean timeLimitReached;
+    }
+
+    /**
+     * Event of one fold of the accuracy report.
+     */
+
+    @Name("id3.FoldEvaluation")
+    @Label("Fold Evaluation")
+    @Category({"ID3", "Training"})
+    @Description("Accuracy of the tree on one fold of the training set")
+    @StackTrace(false)
+    static class FoldEvaluation extends Event {
+        @Label("Fold")
+        int fold;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Correct")
+        long correct;
+
+        @Label("Accuracy")
+        @Description("Percentage of the rows predicted correctly")
+        double accuracy;
+    }
+
+    /**
+     * Event of one batch of the streaming scorer. The duration runs from the moment the batch is read until its
+     * predictions are written, so it is the latency of the batch.
+     */
+
+    @Name("id3.ScoringBatch")
+    @Label("Scoring Batch")
+    @Category({"ID3", "Scoring"})
+    @Description("Batch of rows read, parsed, encoded, scored and written")
+    @StackTrace(false)
+    static class ScoringBatch extends Event {
+        @Label("Sequence")
+        long sequence;
+
+        @Label("Rows")
+        int rows;
+
+        @Label("Model")
+        @Description("Version of the model that scored the batch, or of each model when several did")
+        String model;
+    }
+}
@@ -0,0 +1,276 @@
+/**
+ * Compilation of trained decision trees to JVM bytecode.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+
+/**
+ * Class that turns a {@link CompiledTree} into a hidden class whose score method is a nested tableswitch on the
+ * bin codes, with the leaf labels as constants. The generated method has no data-dependent loads other than the
+ * bin codes themselves, so once it is hot the JIT compiles it to straight branches on the codes. It is compiled, but
+ * not necessarily inlined into the calling loop: C2 only inlines hot methods up to FreqInlineSize (325 bytes of
+ * bytecode by default), which holds for small trees only.
+ */
+
+public class TreeBytecodeCompiler {
+
+    /**
+     * HotSpot does not JIT-compile methods with more bytes of code than this (HugeMethodLimit), so larger trees
+     * are left to the interpreter of the compiled tree.
+     */
+    static final int MAX_CODE_LENGTH = 8000;
+
+    private static final int CLASS_NAME = 2;
+    private static final int OBJECT_CLASS = 4;
+    private static final int SCORER_INTERFACE = 6;
+    private static final int INIT_NAME = 7;
+    private static final int VOID_DESCRIPTOR = 8;
+    private static final int OBJECT_INIT = 10;
+    private static final int SCORE_NAME = 11;
+    private static final int SCORE_DESCRIPTOR = 12;
+    private static final int CODE_ATTRIBUTE = 13;
+    private static final int STACK_MAP_ATTRIBUTE = 14;
+
+    private byte[] code = new byte[256];
+    private int length;
+    private int[] branchTargets = new int[16];
+    private int targetCount;
+    private long[] visits;
+
+    private TreeBytecodeCompiler() {
+    }
+
+    /**
+     * Method to compile a tree to a scorer.
+     *
+     * @param tree - trained tree in its flat array form
+     * @return the generated scorer, or the tree itself when the generated method would be too large to be
+     * JIT-compiled or the class cannot be defined
+     */
+    public static TreeScorer compile(CompiledTree tree) {
+        return compile(tree, null);
+    }
+
+    /**
+     * Method to compile a tree to a scorer, emitting the children of each split hottest first so that the code of
+     * the hot paths is laid out together.
+     *
+     * @param tree   - trained tree in its flat array form
+     * @param visits - visits of each node while a sample was scored (see {@link TreeProfile}), or null to emit the
+     *               children in slot order
+     * @return the generated scorer, or the tree itself when the generated method would be too large to be
+     * JIT-compiled or the class cannot be defined
+     */
+    public static TreeScorer compile(CompiledTree tree, long[] visits) {
+        TreeBytecodeCompiler compiler = new TreeBytecodeCompiler();
+        compiler.visits = visits;
+        compiler.emitNode(tree, 0);
+        if (compiler.length > MAX_CODE_LENGTH) {
+            return tree;
+        }
+        try {
+            byte[] classBytes = compiler.classFile();
+            Class<?> scorerClass = MethodHandles.lookup().defineHiddenClass(classBytes, true).lookupClass();
+            return (TreeScorer) scorerClass.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | IOException | LinkageError e) {
+            e.printStackTrace();
+            return tree;
+        }
+    }
+
+    /**
+     * Method to emit the code of a node. A leaf returns its label id. A split loads the bin code of its attribute
+     * and jumps to the code of the matching child, or to the fallback slot for codes outside the bins.
+     *
+     * @param tree - tree that is compiled
+     * @param node - position of the node in the tree
+     */
+    private void emitNode(CompiledTree tree, int node) {
+        int splitAttribute = tree.attribute[node];
+        if (splitAttribute < 0) {
+            emitConstant(tree.label[node]);
+            emit(0xac); // ireturn
+            return;
+        }
+
+        int bins = tree.schema.binCounts[splitAttribute];
+        emit(0x2b); // aload_1
+        emitConstant(splitAttribute);
+        emit(0x33); // baload
+
+        int switchPosition = length;
+        emit(0xaa); // tableswitch
+        while (length % 4 != 0) {
+            emit(0);
+        }
+        int jumpTable = length;
+        emitInt(0);
+        emitInt(0);
+        emitInt(bins - 1);
+        for (int i = 0; i < bins; i++) {
+            emitInt(0);
+        }
+
+        // Slot 0 is the default of the switch, slot 1 + i the case for bin code i
+        int first = tree.firstChild[node];
+        for (int slot : visits == null ? slotOrder(bins) : TreeProfile.hottestFirst(tree, visits, node)) {
+            patchInt(slot == 0 ? jumpTable : jumpTable + 8 + 4 * slot, markTarget() - switchPosition);
+            emitNode(tree, first + slot);
+        }
+    }
+
+    private static Integer[] slotOrder(int bins) {
+        Integer[] slots = new Integer[bins + 1];
+        for (int slot = 0; slot <= bins; slot++) {
+            slots[slot] = slot;
+        }
+        return slots;
+    }
+
+    private void emitConstant(int value) {
+        if (value >= -1 && value <= 5) {
+            emit(0x03 + value); // iconst_<n>
+        } else {
+            emit(0x10); // bipush
+            emit(value);
+        }
+    }
+
+    private int markTarget() {
+        if (targetCount == branchTargets.length) {
+            branchTargets = Arrays.copyOf(branchTargets, targetCount * 2);
+        }
+        branchTargets[targetCount++] = length;
+        return length;
+    }
+
+    private void emit(int value) {
+        if (length == code.length) {
+            code = Arrays.copyOf(code, length * 2);
+        }
+        code[length++] = (byte) value;
+    }
+
+    private void emitInt(int value) {
+        emit(value >>> 24);
+        emit(value >>> 16);
+        emit(value >>> 8);
+        emit(value);
+    }
+
+    private void patchInt(int position, int value) {
+        code[position] = (byte) (value >>> 24);
+        code[position + 1] = (byte) (value >>> 16);
+        code[position + 2] = (byte) (value >>> 8);
+        code[position + 3] = (byte) value;
+    }
+
+    /**
+     * Method to write the class file of the scorer. Every branch target has the same locals (this and the codes)
+     * and an empty operand stack, so each stack map frame is a same_frame.
+     *
+     * @return bytes of the class file
+     */
+    private byte[] classFile() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length + 512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+
+        out.writeShort(15); // constant pool count
+        writeUtf8(out, "CompiledTreeScorer");
+        writeClass(out, 1);
+        writeUtf8(out, "java/lang/Object");
+        writeClass(out, 3);
+        writeUtf8(out, "TreeScorer");
+        writeClass(out, 5);
+        writeUtf8(out, "<init>");
+        writeUtf8(out, "()V");
+        out.writeByte(12); // NameAndType
+        out.writeShort(INIT_NAME);
+        out.writeShort(VOID_DESCRIPTOR);
+        out.writeByte(10); // Methodref
+        out.writeShort(OBJECT_CLASS);
+        out.writeShort(9);
+        writeUtf8(out, "score");
+        writeUtf8(out, "([B)I");
+        writeUtf8(out, "Code");
+        writeUtf8(out, "StackMapTable");
+
+        out.writeShort(0x0031); // public final super
+        out.writeShort(CLASS_NAME);
+        out.writeShort(OBJECT_CLASS);
+        out.writeShort(1);
+        out.writeShort(SCORER_INTERFACE);
+        out.writeShort(0); // fields
+        out.writeShort(2); // methods
+
+        out.writeShort(0x0001);
+        out.writeShort(INIT_NAME);
+        out.writeShort(VOID_DESCRIPTOR);
+        out.writeShort(1);
+        out.writeShort(CODE_ATTRIBUTE);
+        out.writeInt(17);
+        out.writeShort(1);
+        out.writeShort(1);
+        out.writeInt(5);
+        out.write(new byte[]{0x2a, (byte) 0xb7, 0, OBJECT_INIT, (byte) 0xb1}); // aload_0, invokespecial, return
+        out.writeShort(0);
+        out.writeShort(0);
+
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        DataOutputStream frameOut = new DataOutputStream(frames);
+        int[] targets = Arrays.stream(branchTargets, 0, targetCount).sorted().distinct().toArray();
+        int previous = -1;
+        for (int target : targets) {
+            int delta = target - previous - 1;
+            if (delta < 64) {
+                frameOut.writeByte(delta); // same_frame
+            } else {
+                frameOut.writeByte(251); // same_frame_extended
+                frameOut.writeShort(delta);
+            }
+            previous = target;
+        }
+
+        out.writeShort(0x0001);
+        out.writeShort(SCORE_NAME);
+        out.writeShort(SCORE_DESCRIPTOR);
+        out.writeShort(1);
+        out.writeShort(CODE_ATTRIBUTE);
+        out.writeInt(12 + length + (targets.length == 0 ? 0 : 8 + frames.size()));
+        out.writeShort(2);
+        out.writeShort(2);
+        out.writeInt(length);
+        out.write(code, 0, length);
+        out.writeShort(0);
+        if (targets.length == 0) {
+            out.writeShort(0);
+        } else {
+            out.writeShort(1);
+            out.writeShort(STACK_MAP_ATTRIBUTE);
+            out.writeInt(2 + frames.size());
+            out.writeShort(targets.length);
+            frames.writeTo(out);
+        }
+
+        out.writeShort(0); // class attributes
+        return bytes.toByteArray();
+    }
+
+    private static void writeUtf8(DataOutputStream out, String value) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+    private static void writeClass(DataOutputStream out, int nameIndex) throws IOException {
+        out.writeByte(7);
+        out.writeShort(nameIndex);
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * Profile-guided layout of compiled decision trees.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Class that counts how often each node of a tree is visited while a sample is scored, and lays the tree out again
+ * along the paths the sample takes. Every thread counts into an array of its own, so profiling scorers can run
+ * concurrently without sharing a cache line; the arrays are summed when the profile is read.
+ * <p>
+ * In the new layout each children block is followed by the subtrees of its children, hottest child first, so the
+ * nodes of a hot path sit next to each other. The slots within a block keep their order, since the slot is chosen
+ * by the bin code. The scorer generated from a profile also emits the code of the hottest child right after the
+ * switch, ahead of its siblings.
+ * <p>
+ * The new layout is computed once, from the visits counted when it is first needed; visits counted later do not
+ * change it. The lookup table scorer does not walk the nodes, so it is built from the tree as it was trained and
+ * needs no layout.
+ */
+
+public class TreeProfile implements TreeScorer {
+
+    /**
+     * System property that turns on profile-guided layout of the tree trained by main.
+     */
+    static final String PROPERTY = "id3.profile";
+
+    private final CompiledTree tree;
+    private final List<long[]> threadCounts = new ArrayList<>();
+    private final ThreadLocal<long[]> counts = ThreadLocal.withInitial(this::newCounts);
+    private Layout layout;
+
+    public TreeProfile(CompiledTree tree) {
+        this.tree = tree;
+    }
+
+    private long[] newCounts() {
+        long[] visits = new long[tree.size()];
+        synchronized (threadCounts) {
+            threadCounts.add(visits);
+        }
+        return visits;
+    }
+
+    /**
+     * Method to score an instance and count the nodes on its path.
+     */
+    @Override
+    public int score(byte[] codes) {
+        long[] visits = counts.get();
+        int node = 0;
+        int splitAttribute;
+        visits[0]++;
+        while ((splitAttribute = tree.attribute[node]) >= 0) {
+            node = tree.firstChild[node] + 1 + codes[splitAttribute];
+            visits[node]++;
+        }
+        return tree.label[node];
+    }
+
+    /**
+     * Method to score a block of encoded rows and count the nodes on their paths.
+     *
+     * @param columns - bin codes of each attribute, one column per attribute in the order of the schema
+     * @param count   - number of rows to score
+     */
+    public void scoreColumns(byte[][] columns, int count) {
+        long[] visits = counts.get();
+        for (int row = 0; row < count; row++) {
+            int node = 0;
+            int splitAttribute;
+            visits[0]++;
+            while ((splitAttribute = tree.attribute[node]) >= 0) {
+                node = tree.firstChild[node] + 1 + columns[splitAttribute][row];
+                visits[node]++;
+            }
+        }
+    }
+
+    /**
+     * Method to score the rows of a binned data set and count the nodes on their paths, a block of rows at a time.
+     *
+     * @param data - data set that is scored
+     */
+    public void scoreDataset(BinnedDataset data) {
+        int attributes = data.schema().attributes.length;
+        byte[][] columns = new byte[attributes][ColumnBatch.BLOCK_ROWS];
+        for (int from = 0; from < data.size(); from += ColumnBatch.BLOCK_ROWS) {
+            int count = Math.min(ColumnBatch.BLOCK_ROWS, data.size() - from);
+            for (int attribute = 0; attribute < attributes; attribute++) {
+                data.codes(attribute, from, count, columns[attribute]);
+            }
+            scoreColumns(columns, count);
+        }
+    }
+
+    /**
+     * Method to retrieve the number of visits of each node, summed over all threads. Counts of threads that are
+     * still scoring may be slightly behind.
+     *
+     * @return visits indexed by node position
+     */
+    public long[] visits() {
+        long[] total = new long[tree.size()];
+        synchronized (threadCounts) {
+            for (long[] visits : threadCounts) {
+                for (int node = 0; node < total.length; node++) {
+                    total[node] += visits[node];
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Method to lay the tree out along the profiled paths. The new tree gives the same prediction for every
+     * instance.
+     *
+     * @return the tree in its new layout
+     */
+    public CompiledTree relayout() {
+        return layout().tree;
+    }
+
+    private synchronized Layout layout() {
+        if (layout == null) {
+            layout = new Layout(tree, visits());
+        }
+        return layout;
+    }
+
+    /**
+     * Method to compile the tree in its new layout to the scorer chosen by the id3.scorer system property, like
+     * {@link LookupTableScorer#compile(CompiledTree)}, with the hottest child of each split emitted first when the
+     * bytecode scorer is used.
+     *
+     * @return the scorer
+     */
+    public TreeScorer compile() {
+        return compile(LookupTableScorer.backend());
+    }
+
+    /**
+     * Method to compile the tree in its new layout to a scorer, with the hottest child of each split emitted first
+     * when the bytecode scorer is used.
+     *
+     * @param backend - scorer to compile to
+     * @return the scorer
+     */
+    public TreeScorer compile(TreeScorer.Backend backend) {
+        if (backend == TreeScorer.Backend.TABLE) {
+            TreeScorer scorer = LookupTableScorer.compile(tree, LookupTableScorer.MAX_CELLS);
+            if (scorer != null) {
+                return scorer;
+            }
+        }
+        if (backend == TreeScorer.Backend.ARRAY) {
+            return layout().tree;
+        }
+        Layout layout = layout();
+        return TreeBytecodeCompiler.compile(layout.tree, layout.visits);
+    }
+
+    /**
+     * Method to order the slots of a children block by their visits, hottest first. Ties keep the slot order.
+     *
+     * @param tree   - tree of the block
+     * @param visits - visits indexed by node position
+     * @param node   - split node whose children are ordered
+     * @return the slots (0 for the fallback, 1 + code for a bin) in the order they are laid out
+     */
+    static Integer[] hottestFirst(CompiledTree tree, long[] visits, int node) {
+        int first = tree.firstChild[node];
+        Integer[] slots = new Integer[tree.schema.binCounts[tree.attribute[node]] + 1];
+        for (int slot = 0; slot < slots.length; slot++) {
+            slots[slot] = slot;
+        }
+        Arrays.sort(slots, Comparator.comparingLong((Integer slot) -> -visits[first + slot]));
+        return slots;
+    }
+
+    /**
+     * Class that computes the new layout of a tree: the root stays at position 0, and every split places its
+     * children block at the next free position before the subtrees of its children are placed, hottest first.
+     */
+
+    private static class Layout {
+        final CompiledTree tree;
+        final long[] visits;
+        private final int[] attribute;
+        private final int[] firstChild;
+        private final byte[] label;
+        private int next = 1;
+
+        Layout(CompiledTree original, long[] originalVisits) {
+            int size = original.size();
+            attribute = new int[size];
+            firstChild = new int[size];
+            label = new byte[size];
+            visits = new long[size];
+            place(original, originalVisits, 0, 0);
+            tree = new CompiledTree(original.schema, attribute, firstChild, label);
+        }
+
+        private void place(CompiledTree original, long[] originalVisits, int node, int position) {
+            attribute[position] = original.attribute[node];
+            label[position] = original.label[node];
+            visits[position] = originalVisits[node];
+            if (original.attribute[node] < 0) {
+                return;
+            }
+
+            int block = next;
+            next += original.schema.binCounts[original.attribute[node]] + 1;
+            firstChild[position] = block;
+            for (int slot : hottestFirst(original, originalVisits, node)) {
+                place(original, originalVisits, original.firstChild[node] + slot, block + slot);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Schema of a data set once its attribute values are mapped to bin codes.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.util.Arrays;
+
+/**
+ * Class that describes the attributes, the number of bins of each attribute and the class labels of a data set.
+ * The position of an attribute in the schema is the position of its bin code in an encoded instance, and the
+ * position of a label is the label id returned by a {@link TreeScorer}.
+ */
+
+public class TreeSchema {
+    final String[] attributes;
+    final int[] binCounts;
+    final String[] labels;
+
+    public TreeSchema(String[] attributes, int[] binCounts, String[] labels) {
+        if (attributes.length != binCounts.length) {
+            throw new IllegalArgumentException("Every attribute needs a bin count");
+        }
+        this.attributes = attributes;
+        this.binCounts = binCounts;
+        this.labels = labels;
+    }
+
+    /**
+     * Method to retrieve the position of an attribute in the schema.
+     *
+     * @param attribute - name of the attribute, as used in the header of the data set
+     * @return position of the attribute, or -1 if the attribute is not part of the schema
+     */
+    public int indexOf(String attribute) {
+        return Arrays.asList(attributes).indexOf(attribute);
+    }
+
+    /**
+     * Method to retrieve the id of a class label.
+     *
+     * @param label - class label as it appears in the data set
+     * @return id of the label, or -1 for a null or unknown label
+     */
+    public int labelId(String label) {
+        return label == null ? -1 : Arrays.asList(labels).indexOf(label);
+    }
+
+    /**
+     * Method to retrieve the class label for a label id.
+     *
+     * @param labelId - id returned by a scorer
+     * @return the class label, or null for the id -1
+     */
+    public String label(int labelId) {
+        return labelId < 0 ? null : labels[labelId];
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof TreeSchema)) {
+            return false;
+        }
+        TreeSchema schema = (TreeSchema) other;
+        return Arrays.equals(attributes, schema.attributes) && Arrays.equals(binCounts, schema.binCounts)
+                && Arrays.equals(labels, schema.labels);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(attributes) + Arrays.hashCode(binCounts)) + Arrays.hashCode(labels);
+    }
+}
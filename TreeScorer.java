@@ -0,0 +1,52 @@
+/**
+ * Scoring interface for trained decision trees.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+/**
+ * Interface for a scorer that classifies an instance from the bin codes of its attribute values.
+ */
+
+public interface TreeScorer {
+
+    /**
+     * Method to predict the class label for an instance that has been mapped to bin codes.
+     *
+     * @param codes - bin code of each attribute, in the order of the schema. A code of -1 marks a value that
+     *              has no arrow label in the tree, in which case the majority label of the node is used.
+     * @return id of the predicted class label in the schema, or -1 when the tree is empty
+     */
+    int score(byte[] codes);
+
+    /**
+     * Method to predict the class labels of a block of encoded rows. By default the codes of each row are gathered
+     * and the row is scored on its own.
+     *
+     * @param columns - bin codes of each attribute, one column per attribute in the order of the schema
+     * @param count   - number of rows to score
+     * @param labels  - predicted label id of each row, written from index 0
+     */
+    default void scoreColumns(byte[][] columns, int count, byte[] labels) {
+        byte[] codes = new byte[columns.length];
+        for (int row = 0; row < count; row++) {
+            for (int attribute = 0; attribute < codes.length; attribute++) {
+                codes[attribute] = columns[attribute][row];
+            }
+            labels[row] = (byte) score(codes);
+        }
+    }
+
+    /**
+     * Scorers that a trained tree can be compiled to.
+     */
+    enum Backend {
+        /** Lookup table of every combination of bin codes ({@link LookupTableScorer}), or the bytecode scorer when
+         * the table would be too large */
+        TABLE,
+        /** Hidden class with a nested tableswitch ({@link TreeBytecodeCompiler}), or the array interpreter when the
+         * method would be too large */
+        BYTECODE,
+        /** Array interpreter of the compiled tree */
+        ARRAY
+    }
+}
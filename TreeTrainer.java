@@ -0,0 +1,292 @@
+/**
+ * Library interface for training and scoring decision trees.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Class that trains and scores the decision trees of one model (ID3 or ID3PartB) for programs that embed the
+ * library instead of running main. A trainer holds its settings and nothing else: it is immutable once built, and
+ * every data set, tree and scorer belongs to the call that made it, so any number of training and scoring jobs can
+ * run concurrently on one trainer, or on several trainers of different models, in the same JVM:
+ * <pre>
+ *   TreeTrainer trainer = TreeTrainer.builder("ID3").engine(TreeTrainer.Engine.BITMAP).build();
+ *   TrainingDaemon.Dataset data = trainer.load("train.csv");
+ *   TreeTrainer.Scorer scorer = trainer.scorer(trainer.train(data));
+ *   String label = scorer.predict("engineer,spend>saving,0.25,0.49,0.44,0.65,C3");
+ * </pre>
+ * The settings are given to the builder rather than read from the id3.* system properties, so that jobs with
+ * different settings do not affect each other.
+ */
+
+public final class TreeTrainer {
+
+    /**
+     * Training engines for binned data sets.
+     */
+    public enum Engine {
+        /** Row index buffers and histograms ({@link BinnedTreeTrainer}) */
+        BINNED,
+        /** Bitmap indexes of the bins and labels ({@link BitmapTreeTrainer}) */
+        BITMAP
+    }
+
+    private final String modelName;
+    private final TrainingDaemon.Model model;
+    private final Engine engine;
+    private final int sampleThreshold;
+    private final Duration timeLimit;
+    private final int maxNodes;
+    private final boolean compress;
+    private final TreeScorer.Backend backend;
+
+    private TreeTrainer(Builder builder) {
+        this.modelName = builder.modelName;
+        this.model = TrainingDaemon.newModel(builder.modelName);
+        this.engine = builder.engine;
+        this.sampleThreshold = builder.sampleThreshold;
+        this.timeLimit = builder.timeLimit;
+        this.maxNodes = builder.maxNodes;
+        this.compress = builder.compress;
+        this.backend = builder.backend;
+    }
+
+    /**
+     * Method to start building a trainer.
+     *
+     * @param modelName - ID3 or ID3PartB
+     * @return the builder, with the binned engine, without sampling and without limits, and with lookup table
+     * scorers
+     */
+    public static Builder builder(String modelName) {
+        return new Builder(modelName);
+    }
+
+    /**
+     * Class that collects the settings of a trainer.
+     */
+
+    public static final class Builder {
+        private final String modelName;
+        private Engine engine = Engine.BINNED;
+        private int sampleThreshold;
+        private Duration timeLimit;
+        private int maxNodes;
+        private boolean compress;
+        private TreeScorer.Backend backend = TreeScorer.Backend.TABLE;
+
+        private Builder(String modelName) {
+            this.modelName = modelName;
+        }
+
+        /**
+         * @param engine - training engine
+         */
+        public Builder engine(Engine engine) {
+            this.engine = engine;
+            return this;
+        }
+
+        /**
+         * @param sampleThreshold - number of rows from which a node of the binned engine chooses its splitting
+         *                        attribute from a sample, or 0 to count every node exactly
+         */
+        public Builder sampleThreshold(int sampleThreshold) {
+            if (sampleThreshold < 0) {
+                throw new IllegalArgumentException("Negative sample threshold: " + sampleThreshold);
+            }
+            this.sampleThreshold = sampleThreshold;
+            return this;
+        }
+
+        /**
+         * @param timeLimit - time that each training may take; the tree is then grown best first and the nodes
+         *                  still open at the limit become leaves ({@link AnytimeTreeTrainer}), whatever the engine
+         */
+        public Builder timeLimit(Duration timeLimit) {
+            if (timeLimit.isNegative()) {
+                throw new IllegalArgumentException("Negative time limit: " + timeLimit);
+            }
+            this.timeLimit = timeLimit;
+            return this;
+        }
+
+        /**
+         * @param maxNodes - largest number of nodes (including the fallback slots) of each tree; the tree is then
+         *                 grown best first within that budget ({@link AnytimeTreeTrainer}), whatever the engine
+         */
+        public Builder maxNodes(int maxNodes) {
+            if (maxNodes < 1) {
+                throw new IllegalArgumentException("Node budget below one node: " + maxNodes);
+            }
+            this.maxNodes = maxNodes;
+            return this;
+        }
+
+        /**
+         * @param compress - whether the identical rows of a data set are collapsed into weighted rows
+         *                 ({@link WeightedDataset}) before the binned engine or a limited training works on them
+         */
+        public Builder compress(boolean compress) {
+            this.compress = compress;
+            return this;
+        }
+
+        /**
+         * @param backend - scorer that trees are compiled to by {@link #scorer(CompiledTree)}
+         */
+        public Builder backend(TreeScorer.Backend backend) {
+            this.backend = backend;
+            return this;
+        }
+
+        /**
+         * @return the trainer
+         * @throws IllegalArgumentException when the model is unknown, or the bitmap engine is combined with
+         *                                  compression or sampling without a time or node limit
+         */
+        public TreeTrainer build() {
+            // With a limit the tree is grown best first on the binned rows, whatever the engine
+            if (engine == Engine.BITMAP && timeLimit == null && maxNodes == 0) {
+                BitmapTreeTrainer.checkOptions(compress, sampleThreshold);
+            }
+            return new TreeTrainer(this);
+        }
+    }
+
+    /**
+     * @return schema of the model
+     */
+    public TreeSchema schema() {
+        return model.schema();
+    }
+
+    /**
+     * Method to load and bin a data set.
+     *
+     * @param location - file, directory or glob of the shards of the data set
+     * @return the binned data set with the attributes of its header
+     */
+    public TrainingDaemon.Dataset load(String location) throws IOException {
+        return model.load(location);
+    }
+
+    /**
+     * Method to construct the decision tree of a data set, considering all the attributes of its header. The
+     * attributes of the data set are not changed, so it can be trained on again, also concurrently.
+     *
+     * @param dataset - data set loaded by a trainer of the same model
+     * @return the decision tree in its flat array form
+     */
+    public CompiledTree train(TrainingDaemon.Dataset dataset) {
+        if (!dataset.data.schema().equals(model.schema())) {
+            throw new IllegalArgumentException("Data set does not belong to model " + modelName);
+        }
+        List<String> remainingAttributes = new LinkedList<>(dataset.attributes);
+        boolean limited = timeLimit != null || maxNodes > 0;
+        if (engine == Engine.BITMAP && !limited) {
+            return new BitmapTreeTrainer(dataset.data).train(remainingAttributes);
+        }
+        BinnedDataset rows = compress ? WeightedDataset.compress(dataset.data) : dataset.data;
+        if (limited) {
+            return new AnytimeTreeTrainer(rows, timeLimit, maxNodes).train(remainingAttributes);
+        }
+        return new BinnedTreeTrainer(rows, sampleThreshold).train(remainingAttributes);
+    }
+
+    /**
+     * Method to construct the decision tree of a data set down to a depth, leaving the deeper subtrees to be
+     * trained when prediction first reaches them ({@link LazyTree}). Deferred subtrees may split again on attributes
+     * used elsewhere, so the tree is not the one of {@link #train}. The binned engine is used whatever the engine of
+     * the trainer, and without the time and node limits, which apply to a whole training.
+     *
+     * @param dataset - data set loaded by a trainer of the same model, kept by the tree
+     * @param depth   - depth of the nodes whose subtrees are deferred, 0 for the root
+     * @return the lazy tree, which may be scored by any number of threads
+     */
+    public LazyTree trainLazily(TrainingDaemon.Dataset dataset, int depth) {
+        if (!dataset.data.schema().equals(model.schema())) {
+            throw new IllegalArgumentException("Data set does not belong to model " + modelName);
+        }
+        BinnedDataset rows = compress ? WeightedDataset.compress(dataset.data) : dataset.data;
+        return new LazyTree(rows, new LinkedList<>(dataset.attributes), depth, sampleThreshold);
+    }
+
+    /**
+     * Method to compile a tree to a scorer.
+     *
+     * @param tree - tree trained for the model
+     * @return the scorer, which may be shared by any number of threads
+     */
+    public Scorer scorer(CompiledTree tree) {
+        if (!tree.schema.equals(model.schema())) {
+            throw new IllegalArgumentException("Tree does not belong to model " + modelName);
+        }
+        return new Scorer(model, tree, LookupTableScorer.compile(tree, backend));
+    }
+
+    /**
+     * Method to make a scorer of a lazy tree. It scores by walking the tree and trains the deferred subtrees that
+     * instances reach; the trained part of the tree is not compiled.
+     *
+     * @param tree - lazy tree trained for the model
+     * @return the scorer, which may be shared by any number of threads
+     */
+    public Scorer scorer(LazyTree tree) {
+        if (!tree.tree().schema.equals(model.schema())) {
+            throw new IllegalArgumentException("Tree does not belong to model " + modelName);
+        }
+        return new Scorer(model, tree.tree(), tree);
+    }
+
+    /**
+     * Class that predicts labels with a compiled tree. It holds no state between calls.
+     */
+
+    public static final class Scorer {
+        private final TrainingDaemon.Model model;
+        private final CompiledTree tree;
+        private final TreeScorer scorer;
+
+        private Scorer(TrainingDaemon.Model model, CompiledTree tree, TreeScorer scorer) {
+            this.model = model;
+            this.tree = tree;
+            this.scorer = scorer;
+        }
+
+        /**
+         * @return the tree of the scorer; for a lazy tree, the levels that were trained up front
+         */
+        public CompiledTree tree() {
+            return tree;
+        }
+
+        /**
+         * Method to predict the class label of a line of a data set.
+         *
+         * @param line - line of the CSV file, other than the header; the value of its label column is not used
+         * @return the predicted class label, or null when the line does not hold a valid instance
+         */
+        public String predict(String line) {
+            byte[] codes = new byte[tree.schema.attributes.length];
+            if (model.encodeLine(line, codes) == -2) {
+                return null;
+            }
+            return tree.schema.label(scorer.score(codes));
+        }
+
+        /**
+         * Method to predict the label id of an instance that has been mapped to bin codes.
+         *
+         * @param codes - bin code of each attribute, in the order of the schema
+         * @return id of the predicted class label in the schema
+         */
+        public int score(byte[] codes) {
+            return scorer.score(codes);
+        }
+    }
+}
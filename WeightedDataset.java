@@ -0,0 +1,153 @@
+/**
+ * On-heap data set of distinct rows with weights.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.util.Arrays;
+
+/**
+ * Class that stores a binned data set as its distinct rows, each with the number of times it occurs. Once the values
+ * are reduced to bin codes, a data set of millions of rows holds only as many distinct rows as there are combinations
+ * of bin codes and labels (at most 5,120 times 5 for the customer schema), and the trainers that honor weights do
+ * their work per distinct row instead of per instance. Since every count of the trainer is the same, so is the tree.
+ * <p>
+ * compress() packs the bin codes and the label of a row into one long (code + 1 for each attribute, so that -1 fits)
+ * and finds its distinct row in an open addressing hash table. The distinct rows keep the order in which they first
+ * occur.
+ */
+
+public class WeightedDataset extends ColumnarDataset {
+
+    /**
+     * System property that compresses binned training sets before they are trained on.
+     */
+    static final String PROPERTY = "id3.compress";
+
+    private static final int BLOCK_ROWS = 4096;
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private final int[] weights;
+
+    WeightedDataset(TreeSchema schema, byte[][] columns, byte[] labels, int[] weights, int size) {
+        super(schema, columns, labels, size);
+        this.weights = weights;
+    }
+
+    @Override
+    public int weight(int row) {
+        return weights[row];
+    }
+
+    /**
+     * Method to collapse the identical rows of a data set, with the same bin codes and label, into weighted rows.
+     *
+     * @param data - binned data set, on or off the heap
+     * @return the weighted distinct rows, or the data set itself when a row does not fit in 64 bits or its rows
+     * already have weights
+     */
+    public static BinnedDataset compress(BinnedDataset data) {
+        if (data instanceof WeightedDataset) {
+            return data;
+        }
+        TreeSchema schema = data.schema();
+        int attributes = schema.attributes.length;
+        int[] shift = new int[attributes];
+        int bits = 0;
+        for (int attribute = 0; attribute < attributes; attribute++) {
+            shift[attribute] = bits;
+            bits += 32 - Integer.numberOfLeadingZeros(schema.binCounts[attribute]);
+        }
+        int labelShift = bits;
+        bits += 32 - Integer.numberOfLeadingZeros(Math.max(schema.labels.length - 1, 1));
+        if (bits > Long.SIZE) {
+            return data;
+        }
+
+        KeyTable table = new KeyTable();
+        long[] keys = new long[BLOCK_ROWS];
+        byte[] codes = new byte[BLOCK_ROWS];
+        for (int from = 0; from < data.size(); from += BLOCK_ROWS) {
+            int count = Math.min(BLOCK_ROWS, data.size() - from);
+            for (int i = 0; i < count; i++) {
+                keys[i] = (long) data.label(from + i) << labelShift;
+            }
+            for (int attribute = 0; attribute < attributes; attribute++) {
+                data.codes(attribute, from, count, codes);
+                for (int i = 0; i < count; i++) {
+                    keys[i] |= (long) (codes[i] + 1) << shift[attribute];
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                table.add(keys[i]);
+            }
+        }
+
+        int size = table.size;
+        byte[][] columns = new byte[attributes][size];
+        byte[] labels = new byte[size];
+        for (int row = 0; row < size; row++) {
+            long key = table.distinctKeys[row];
+            for (int attribute = 0; attribute < attributes; attribute++) {
+                int width = attribute + 1 < attributes ? shift[attribute + 1] - shift[attribute]
+                        : labelShift - shift[attribute];
+                columns[attribute][row] = (byte) (((key >>> shift[attribute]) & ((1L << width) - 1)) - 1);
+            }
+            labels[row] = (byte) (key >>> labelShift);
+        }
+        return new WeightedDataset(schema, columns, labels, Arrays.copyOf(table.weights, size), size);
+    }
+
+    /**
+     * Class that maps packed rows to distinct row numbers, counting how often each occurs.
+     */
+
+    private static class KeyTable {
+        private long[] slotKeys = new long[1 << 10];
+        private int[] slotRows = new int[1 << 10];
+        long[] distinctKeys = new long[1 << 9];
+        int[] weights = new int[1 << 9];
+        int size;
+
+        void add(long key) {
+            int mask = slotKeys.length - 1;
+            int slot = slot(key, mask);
+            // Slots hold the distinct row number plus one, so that 0 marks an empty slot
+            while (slotRows[slot] != 0) {
+                if (slotKeys[slot] == key) {
+                    weights[slotRows[slot] - 1]++;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if (size == distinctKeys.length) {
+                distinctKeys = Arrays.copyOf(distinctKeys, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            distinctKeys[size] = key;
+            weights[size] = 1;
+            slotKeys[slot] = key;
+            slotRows[slot] = ++size;
+            if (size * 2 > slotKeys.length) {
+                rehash();
+            }
+        }
+
+        private void rehash() {
+            slotKeys = new long[slotKeys.length * 2];
+            slotRows = new int[slotRows.length * 2];
+            int mask = slotKeys.length - 1;
+            for (int row = 0; row < size; row++) {
+                int slot = slot(distinctKeys[row], mask);
+                while (slotRows[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slotKeys[slot] = distinctKeys[row];
+                slotRows[slot] = row + 1;
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            return (int) ((key * HASH_MULTIPLIER) >>> Long.numberOfLeadingZeros(mask));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Runner of the tests.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Class that runs the main method of every test class and reports the tests that fail. A test passes when its
+ * main method returns; it fails when it throws.
+ */
+
+public class AllTests {
+
+    static final String[] TESTS = {
+            "TreeBytecodeCompilerTest",
+            "OffHeapDatasetTest",
+            "StreamingScorerTest",
+            "BufferedPredictionWriterTest",
+            "BinnedTreeTrainerTest",
+            "SampledTrainingTest",
+            "MultiTargetTrainerTest",
+            "AnytimeTreeTrainerTest",
+            "LazyTreeTest",
+            "ModelRegistryTest",
+            "LoadTestTest",
+            "QuantizedColumnTest",
+            "DistributedTrainerTest",
+            "IncrementalTreeTest",
+    };
+
+    /**
+     * Main method to run the tests.
+     *
+     * @param args - names of the test classes to run, or none to run all of them
+     */
+    public static void main(String[] args) throws ReflectiveOperationException {
+        String[] tests = args.length > 0 ? args : TESTS;
+        int failures = 0;
+        for (String test : tests) {
+            long start = System.nanoTime();
+            try {
+                Class.forName(test).getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+                System.out.printf("PASS %s (%d ms)%n", test, (System.nanoTime() - start) / 1_000_000);
+            } catch (InvocationTargetException e) {
+                failures++;
+                System.out.printf("FAIL %s: %s%n", test, e.getCause());
+                e.getCause().printStackTrace();
+            }
+        }
+        System.out.println(failures == 0 ? "All " + tests.length + " tests passed"
+                : failures + " of " + tests.length + " tests failed");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Tests of the best-first trainer.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Class that checks that the best-first trainer builds the tree of train() when no limit cuts it short, and that a
+ * node budget or an expired time limit gives a smaller tree within the limit, with the nodes that were cut short
+ * counted.
+ */
+
+public class AnytimeTreeTrainerTest {
+
+    public static void main(String[] args) throws Exception {
+        Path directory = TestSupport.tempDirectory();
+        int[] sizes = {50, 3000, 20_000};
+        for (String model : new String[]{"ID3", "ID3PartB"}) {
+            TreeTrainer trainer = TreeTrainer.builder(model).build();
+            for (int i = 0; i < sizes.length; i++) {
+                TrainingDaemon.Dataset dataset = trainer.load(TestSupport.dataset(model,
+                        directory.resolve(model + "-" + i + ".csv"), sizes[i], i).toString());
+                String name = model + " on " + sizes[i] + " rows";
+                List<String> expectedAttributes = new LinkedList<>(dataset.attributes);
+                CompiledTree expected = new BinnedTreeTrainer(dataset.data, 0).train(expectedAttributes);
+
+                List<String> attributes = new LinkedList<>(dataset.attributes);
+                AnytimeTreeTrainer unlimited = new AnytimeTreeTrainer(dataset.data, null, 100_000);
+                TestSupport.checkSameTree(expected, unlimited.train(attributes), name + ", node budget not reached");
+                TestSupport.check(unlimited.finalizedNodes() == 0, name + ": nodes cut short without a limit");
+                TestSupport.check(attributes.equals(expectedAttributes),
+                        name + ": remaining attributes " + attributes + " instead of " + expectedAttributes);
+                TestSupport.checkSameTree(expected, new AnytimeTreeTrainer(WeightedDataset.compress(dataset.data),
+                        Duration.ofHours(1), 0).train(new LinkedList<>(dataset.attributes)),
+                        name + ", compressed, time limit not reached");
+
+                if (expected.size() > 1) {
+                    int budget = expected.size() - 1;
+                    AnytimeTreeTrainer limited = new AnytimeTreeTrainer(dataset.data, null, budget);
+                    CompiledTree tree = limited.train(new LinkedList<>(dataset.attributes));
+                    TestSupport.check(tree.size() <= budget && limited.finalizedNodes() > 0,
+                            name + ": tree of " + tree.size() + " nodes with a budget of " + budget + " and "
+                                    + limited.finalizedNodes() + " nodes cut short");
+                }
+                AnytimeTreeTrainer expired = new AnytimeTreeTrainer(dataset.data, Duration.ZERO, 0);
+                CompiledTree root = expired.train(new LinkedList<>(dataset.attributes));
+                TestSupport.check(root.size() == 1, name + ": tree of " + root.size() + " nodes without any time");
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Tests of the trainers of binned data sets.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Class that checks that the trainers of binned data sets build the tree of the original trainer, ID3.train and
+ * ID3PartB.train on the list of instances: the binned trainer, the bitmap trainer and the binned trainer on the
+ * compressed data set, on data sets of both models of several sizes. The options the bitmap trainer does not
+ * support must be rejected by the builder.
+ */
+
+public class BinnedTreeTrainerTest {
+
+    public static void main(String[] args) throws Exception {
+        Path directory = TestSupport.tempDirectory();
+        int[] sizes = {1, 40, 700, 5000};
+        for (String model : new String[]{"ID3", "ID3PartB"}) {
+            TreeTrainer binned = TreeTrainer.builder(model).build();
+            TreeTrainer bitmap = TreeTrainer.builder(model).engine(TreeTrainer.Engine.BITMAP).build();
+            TreeTrainer compressed = TreeTrainer.builder(model).compress(true).build();
+            for (int i = 0; i < sizes.length; i++) {
+                String file = TestSupport.dataset(model, directory.resolve(model + "-" + i + ".csv"), sizes[i], i)
+                        .toString();
+                TrainingDaemon.Dataset dataset = binned.load(file);
+                CompiledTree expected = listTree(model, file, dataset.attributes);
+                String name = model + " on " + sizes[i] + " rows";
+
+                TestSupport.checkSameTree(expected, binned.train(dataset), name + ", binned trainer");
+                TestSupport.checkSameTree(expected, bitmap.train(dataset), name + ", bitmap trainer");
+                TestSupport.checkSameTree(expected, compressed.train(dataset), name + ", compressed data set");
+                TestSupport.checkSameTree(expected, new BinnedTreeTrainer(dataset.data, 0)
+                        .train(new LinkedList<>(dataset.attributes)), name + ", BinnedTreeTrainer");
+            }
+        }
+
+        checkRejected(TreeTrainer.builder("ID3").engine(TreeTrainer.Engine.BITMAP).compress(true), "compression");
+        checkRejected(TreeTrainer.builder("ID3").engine(TreeTrainer.Engine.BITMAP).sampleThreshold(100), "sampling");
+        // A node limit trains best first on the binned rows, which may be compressed
+        TreeTrainer.builder("ID3").engine(TreeTrainer.Engine.BITMAP).compress(true).maxNodes(100).build();
+    }
+
+    private static void checkRejected(TreeTrainer.Builder builder, String option) {
+        try {
+            builder.build();
+            TestSupport.check(false, "bitmap engine with " + option + " was not rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Method to train the tree of a data set with the trainer of the model on the list of instances.
+     */
+    private static CompiledTree listTree(String model, String file, List<String> attributes) {
+        if (model.equals("ID3")) {
+            ID3 id3 = new ID3();
+            return id3.compile(id3.train(id3.readData(file), new LinkedList<>(attributes)));
+        }
+        ID3PartB id3 = new ID3PartB();
+        return id3.compile(id3.train(id3.readData(file), new LinkedList<>(attributes)));
+    }
+}
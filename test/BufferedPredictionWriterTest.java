@@ -0,0 +1,104 @@
+/**
+ * Tests of the buffered prediction writer.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Class that checks that the writer writes every line in order, and that close() stops the writer thread, closes
+ * the stream and throws when a write fails: in the last buffer, which close() hands over itself, and in an earlier
+ * buffer, whose failure close() sees while it hands over the last one.
+ */
+
+public class BufferedPredictionWriterTest {
+
+    private static final TreeSchema SCHEMA = new TreeSchema(new String[]{"a"}, new int[]{2}, new String[]{"x", "y"});
+
+    public static void main(String[] args) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int writers = writerThreads();
+        byte[] labelIds = {0, 1, -1};
+        try (BufferedPredictionWriter writer = new BufferedPredictionWriter(bytes, true, SCHEMA, true, "m", "n")) {
+            for (int i = 0; i < 20_000; i++) {
+                writer.write(new byte[][]{labelIds, labelIds}, i % 3, 1);
+            }
+        }
+        String[] lines = bytes.toString(StandardCharsets.UTF_8).split(System.lineSeparator());
+        TestSupport.check(lines.length == 20_001 && lines[0].equals("row,m,n"), "header or line count wrong");
+        String[] labels = {"x", "y", "null"};
+        for (int i = 0; i < 20_000; i++) {
+            String label = labels[i % 3];
+            TestSupport.check(lines[i + 1].equals(i + "," + label + "," + label), "line " + i + ": " + lines[i + 1]);
+        }
+
+        checkFailedClose(10, "last buffer");
+        checkFailedClose(BufferedPredictionWriter.BUFFER_SIZE, "earlier buffer");
+        TestSupport.check(writerThreads() == writers, "writer threads left running after close()");
+    }
+
+    /**
+     * Method to write rows to a stream that fails, and check that close() throws and closes the stream.
+     *
+     * @param rows    - number of rows written before close()
+     * @param message - description of the case
+     */
+    private static void checkFailedClose(int rows, String message) throws InterruptedException {
+        FailingStream stream = new FailingStream();
+        BufferedPredictionWriter writer = new BufferedPredictionWriter(stream, true, SCHEMA, true);
+        byte[] labelIds = new byte[rows];
+        try {
+            writer.write(labelIds, 0, rows);
+            // Leaves the writer thread the time to fail on the buffer handed over by write()
+            Thread.sleep(100);
+            writer.write(labelIds, 0, 1);
+        } catch (IOException e) {
+            // the failure of the earlier buffer
+        }
+        try {
+            writer.close();
+            TestSupport.check(false, message + ": close() did not throw");
+        } catch (IOException e) {
+            TestSupport.check(e.getMessage().equals("disk full"), message + ": close() threw " + e);
+        }
+        TestSupport.check(stream.closed, message + ": stream not closed");
+    }
+
+    private static int writerThreads() throws InterruptedException {
+        // Writer threads of closed writers end right after close() returns
+        Thread.sleep(50);
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("prediction-writer")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Class of a stream whose writes fail.
+     */
+
+    private static class FailingStream extends OutputStream {
+        volatile boolean closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            throw new IOException("disk full");
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            throw new IOException("disk full");
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Tests of the distributed trainer.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that checks that the coordinator of the distributed trainer builds the tree a single process trains on all
+ * shards together, with workers on threads of this JVM, for shards of different sizes including an empty one. A
+ * coordinator that waits for more workers than start must give up at its deadline and let the others go.
+ */
+
+public class DistributedTrainerTest {
+
+    public static void main(String[] args) throws Exception {
+        int[] shardSizes = {3000, 0, 1200, 4500};
+        for (String model : new String[]{"ID3", "ID3PartB"}) {
+            TreeTrainer trainer = TreeTrainer.builder(model).build();
+            Path directory = TestSupport.tempDirectory();
+            Path shards = Files.createDirectories(directory.resolve("shards"));
+            List<TrainingDaemon.Dataset> datasets = new ArrayList<>();
+            for (int shard = 0; shard < shardSizes.length; shard++) {
+                Path file = TestSupport.dataset(model, shards.resolve("part-" + shard + ".csv"),
+                        shardSizes[shard], shard);
+                datasets.add(trainer.load(file.toString()));
+            }
+            CompiledTree expected = trainer.train(trainer.load(shards.toString()));
+
+            Path socket = directory.resolve("trainer.sock");
+            ExecutorService workers = Executors.newFixedThreadPool(datasets.size());
+            try {
+                List<Future<?>> running = new ArrayList<>();
+                for (TrainingDaemon.Dataset dataset : datasets) {
+                    running.add(workers.submit(() -> {
+                        DistributedTrainer.work(dataset, socket);
+                        return null;
+                    }));
+                }
+                CompiledTree actual = DistributedTrainer.coordinate(trainer.schema(), socket, datasets.size());
+                for (Future<?> worker : running) {
+                    worker.get(60, TimeUnit.SECONDS);
+                }
+                TestSupport.checkSameTree(expected, actual, model + " trained by " + datasets.size() + " workers");
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+
+        TreeTrainer trainer = TreeTrainer.builder("ID3").build();
+        Path directory = TestSupport.tempDirectory();
+        TrainingDaemon.Dataset dataset = trainer.load(
+                TestSupport.customers(directory.resolve("shard.csv"), 100, 1).toString());
+        Path socket = directory.resolve("trainer.sock");
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> running = worker.submit(() -> {
+                DistributedTrainer.work(dataset, socket);
+                return null;
+            });
+            try {
+                DistributedTrainer.coordinate(trainer.schema(), socket, 2, 2000);
+                TestSupport.check(false, "coordinator did not give up on the missing worker");
+            } catch (IOException e) {
+                TestSupport.check(e.getMessage().startsWith("Only 1 of 2 workers connected"), e.getMessage());
+            }
+            running.get(60, TimeUnit.SECONDS);
+        } finally {
+            worker.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Tests of the incremental retraining of trees.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+
+/**
+ * Class that checks that a tree brought up to date with the rows of each new day is the tree of a full retrain on
+ * the rows of all days, for days that change no split and days that change splits, and that a saved tree is read
+ * back unchanged.
+ */
+
+public class IncrementalTreeTest {
+
+    public static void main(String[] args) throws Exception {
+        int[] days = {2000, 30, 1500, 4000, 1};
+        for (String model : new String[]{"ID3", "ID3PartB"}) {
+            TreeTrainer trainer = TreeTrainer.builder(model).build();
+            Path history = TestSupport.tempDirectory();
+            Path updates = TestSupport.tempDirectory();
+            IncrementalTree tree = null;
+            for (int day = 0; day < days.length; day++) {
+                Path file = TestSupport.dataset(model, updates.resolve("day-" + day + ".csv"), days[day], day);
+                Files.copy(file, history.resolve(file.getFileName()));
+                TrainingDaemon.Dataset added = trainer.load(file.toString());
+                tree = tree == null ? IncrementalTree.train(added.data, added.attributes)
+                        : tree.update(added.data, () -> trainer.load(history.toString()).data);
+
+                TrainingDaemon.Dataset all = trainer.load(history.toString());
+                CompiledTree expected = new BinnedTreeTrainer(all.data, 0).train(new LinkedList<>(all.attributes));
+                TestSupport.checkSameTree(expected, tree.tree, model + " after day " + day + " ("
+                        + tree.rebuiltSubtrees() + " subtrees rebuilt)");
+            }
+
+            Path saved = updates.resolve("tree.id3i");
+            tree.save(saved);
+            TestSupport.checkSameTree(tree.tree, IncrementalTree.load(saved).tree, model + " saved tree");
+        }
+    }
+}
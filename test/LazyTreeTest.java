@@ -0,0 +1,71 @@
+/**
+ * Tests of the lazily trained tree.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class that checks the lazy tree: with a depth below every leaf it is the tree of train(); with a smaller depth its
+ * predictions are those of the tree it joins into at the end, whatever the order and the number of threads in which
+ * its subtrees are reached, and every subtree is trained once.
+ */
+
+public class LazyTreeTest {
+
+    private static final int THREADS = 8;
+
+    public static void main(String[] args) throws Exception {
+        Path directory = TestSupport.tempDirectory();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (String model : new String[]{"ID3", "ID3PartB"}) {
+                TreeTrainer trainer = TreeTrainer.builder(model).build();
+                TreeSchema schema = trainer.schema();
+                TrainingDaemon.Dataset dataset = trainer.load(
+                        TestSupport.dataset(model, directory.resolve(model + ".csv"), 3000, 3).toString());
+                CompiledTree expected = trainer.train(dataset);
+                TestSupport.checkSameTree(expected, trainer.trainLazily(dataset, 100).toCompiledTree(),
+                        model + " lazy tree below every leaf");
+
+                List<byte[]> combinations = new ArrayList<>();
+                TestSupport.forEachCombination(schema, codes -> combinations.add(codes.clone()));
+                for (int depth = 0; depth <= 3; depth++) {
+                    String name = model + " lazy tree of depth " + depth;
+                    CompiledTree joined = trainer.trainLazily(dataset, depth).toCompiledTree();
+
+                    LazyTree lazy = trainer.trainLazily(dataset, depth);
+                    TestSupport.check(depth == 0 || lazy.tree().size() == 1 || lazy.pendingSubtrees() > 0,
+                            name + ": no subtree deferred");
+                    List<Future<Boolean>> scorers = new ArrayList<>();
+                    for (int thread = 0; thread < THREADS; thread++) {
+                        List<byte[]> order = new ArrayList<>(combinations);
+                        Collections.shuffle(order, new Random(thread));
+                        scorers.add(executor.submit(() -> {
+                            for (byte[] codes : order) {
+                                if (lazy.score(codes) != joined.score(codes)) {
+                                    return false;
+                                }
+                            }
+                            return true;
+                        }));
+                    }
+                    for (Future<Boolean> scorer : scorers) {
+                        TestSupport.check(scorer.get(), name + ": prediction differs from the joined tree");
+                    }
+                    TestSupport.check(lazy.pendingSubtrees() == 0, name + ": subtrees left after every prediction");
+                    TestSupport.checkSameTree(joined, lazy.toCompiledTree(), name + " joined after scoring");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
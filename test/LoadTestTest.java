@@ -0,0 +1,76 @@
+/**
+ * Tests of the latency histograms of the load generator.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.util.Random;
+
+/**
+ * Class that checks the buckets of the latency histogram: exact below 128 ns, contiguous at 127/128 and at every
+ * power of two, and never more than 1/64 above the value; and that the percentiles of known distributions are the
+ * upper bounds of the buckets of the expected ranks, at most the largest latency.
+ */
+
+public class LoadTestTest {
+
+    public static void main(String[] args) {
+        for (long value = 0; value < 128; value++) {
+            TestSupport.check(LoadTest.bucket(value) == value && LoadTest.upperBound((int) value) == value,
+                    "value " + value + " is not counted exactly");
+        }
+        checkBoundary(128);
+        TestSupport.check(LoadTest.bucket(128) == 128 && LoadTest.upperBound(128) == 129,
+                "first logarithmic bucket does not hold 128 and 129");
+        for (int k = 7; k < 63; k++) {
+            checkBoundary(1L << k);
+            checkBoundary((1L << k) + 1);
+            checkBoundary((1L << k) - 1);
+            TestSupport.check(LoadTest.upperBound(LoadTest.bucket(1L << k) - 1) == (1L << k) - 1,
+                    "bucket below 2^" + k + " does not end at 2^" + k + " - 1");
+        }
+        TestSupport.check(LoadTest.upperBound(LoadTest.bucket(Long.MAX_VALUE)) == Long.MAX_VALUE,
+                "last bucket does not end at Long.MAX_VALUE");
+        Random random = new Random(1);
+        for (int i = 0; i < 1_000_000; i++) {
+            checkBoundary(random.nextLong() >>> 1 + random.nextInt(63));
+        }
+
+        LoadTest.Histogram exact = new LoadTest.Histogram();
+        for (int value = 99; value >= 0; value--) {
+            exact.record(value);
+        }
+        TestSupport.check(exact.percentile(50) == 49 && exact.percentile(90) == 89 && exact.percentile(99) == 98
+                && exact.percentile(100) == 99, "percentiles of 0 to 99 are not exact");
+
+        // 1 to 1,000,000 ns once each, recorded by two histograms that are added up
+        LoadTest.Histogram uniform = new LoadTest.Histogram();
+        LoadTest.Histogram other = new LoadTest.Histogram();
+        for (int value = 1; value <= 1_000_000; value++) {
+            (value % 2 == 0 ? uniform : other).record(value);
+        }
+        uniform.add(other);
+        double[] percentiles = {50, 90, 99, 99.9, 99.99};
+        for (double percentile : percentiles) {
+            long rank = Math.round(percentile * 10_000);
+            // The bucket of the last rows reaches past the largest latency, which bounds the percentile
+            long expected = Math.min(LoadTest.upperBound(LoadTest.bucket(rank)), 1_000_000);
+            TestSupport.check(uniform.percentile(percentile) == expected, "p" + percentile + " of 1 to 1000000 is "
+                    + uniform.percentile(percentile) + " instead of " + expected);
+        }
+        TestSupport.check(uniform.percentile(100) == 1_000_000 && uniform.count == 1_000_000,
+                "largest latency is not the maximum");
+        TestSupport.check(new LoadTest.Histogram().percentile(99) == 0, "percentile of an empty histogram");
+    }
+
+    /**
+     * Method to check that a value lies in its bucket, above the end of the bucket before, and at most 1/64 below
+     * the end of its bucket.
+     */
+    private static void checkBoundary(long value) {
+        int bucket = LoadTest.bucket(value);
+        long upper = LoadTest.upperBound(bucket);
+        TestSupport.check(value <= upper && (bucket == 0 || LoadTest.upperBound(bucket - 1) < value),
+                "value " + value + " is not in bucket " + bucket);
+        TestSupport.check(upper - value <= value / 64, "bucket of " + value + " ends at " + upper);
+    }
+}
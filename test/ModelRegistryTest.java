@@ -0,0 +1,79 @@
+/**
+ * Tests of the model registry.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Class that checks the scorer of each version in the registry: it is compiled with the backend chosen by the
+ * id3.scorer system property and predicts the labels of its tree, for a fixed tree and for the model files of a
+ * directory, also after a newer file has replaced the current version.
+ */
+
+public class ModelRegistryTest {
+
+    public static void main(String[] args) throws Exception {
+        Path directory = TestSupport.tempDirectory();
+        TreeTrainer trainer = TreeTrainer.builder("ID3").build();
+        TreeSchema schema = trainer.schema();
+        CompiledTree first = trainer.train(trainer.load(
+                TestSupport.customers(directory.resolve("first.csv"), 3000, 1).toString()));
+        CompiledTree second = trainer.train(trainer.load(
+                TestSupport.customers(directory.resolve("second.csv"), 3000, 2).toString()));
+
+        String property = System.getProperty(LookupTableScorer.PROPERTY);
+        try {
+            for (TreeScorer.Backend backend : TreeScorer.Backend.values()) {
+                System.setProperty(LookupTableScorer.PROPERTY, backend.name());
+                try (ModelRegistry.Lease lease = ModelRegistry.of(first).acquire()) {
+                    checkScorer(schema, lease, first, backend);
+                }
+
+                Path models = directory.resolve("models-" + backend);
+                Files.createDirectory(models);
+                ModelRegistry.save(first, models.resolve("1" + ModelRegistry.SUFFIX));
+                try (ModelRegistry registry = ModelRegistry.open(models, schema)) {
+                    try (ModelRegistry.Lease lease = registry.acquire()) {
+                        checkScorer(schema, lease, first, backend);
+                    }
+                    ModelRegistry.save(second, models.resolve("2" + ModelRegistry.SUFFIX));
+                    long deadline = System.nanoTime() + 30_000_000_000L;
+                    while (!registry.current().name().startsWith("2") && System.nanoTime() < deadline) {
+                        Thread.sleep(50);
+                    }
+                    try (ModelRegistry.Lease lease = registry.acquire()) {
+                        TestSupport.check(lease.name().startsWith("2"),
+                                backend + ": newer model not loaded, still " + lease.name());
+                        checkScorer(schema, lease, second, backend);
+                    }
+                }
+            }
+        } finally {
+            if (property == null) {
+                System.clearProperty(LookupTableScorer.PROPERTY);
+            } else {
+                System.setProperty(LookupTableScorer.PROPERTY, property);
+            }
+        }
+    }
+
+    private static void checkScorer(TreeSchema schema, ModelRegistry.Lease lease, CompiledTree tree,
+                                    TreeScorer.Backend backend) {
+        TreeScorer scorer = lease.scorer();
+        boolean expectedKind;
+        switch (backend) {
+            case TABLE:
+                expectedKind = scorer instanceof LookupTableScorer;
+                break;
+            case BYTECODE:
+                expectedKind = !(scorer instanceof LookupTableScorer) && !(scorer instanceof CompiledTree);
+                break;
+            default:
+                expectedKind = scorer instanceof CompiledTree;
+        }
+        TestSupport.check(expectedKind, backend + ": registry compiled " + scorer.getClass().getName());
+        TestSupport.checkSameScores(schema, tree, scorer, backend + " registry scorer of " + lease.name());
+    }
+}
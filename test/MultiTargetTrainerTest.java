@@ -0,0 +1,82 @@
+/**
+ * Tests of the multi-target trainer.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Class that checks that every tree written by MultiTargetTrainer is the tree the binned trainer builds on its
+ * target alone: for the label column of the model, for a target with some empty values, whose rows are left out of
+ * it, and for a target that is empty on most rows.
+ */
+
+public class MultiTargetTrainerTest {
+
+    private static final String[] TARGETS = {"label", "upsell", "churn"};
+    // Share of the rows left out of each target
+    private static final double[] EMPTY = {0, 0.15, 0.7};
+
+    public static void main(String[] args) throws Exception {
+        Path directory = TestSupport.tempDirectory();
+        List<String> lines = Files.readAllLines(TestSupport.customers(directory.resolve("base.csv"), 6000, 1));
+        Random random = new Random(2);
+        String[][] values = new String[lines.size()][TARGETS.length];
+        for (int row = 1; row < lines.size(); row++) {
+            String[] columns = lines.get(row).split(",");
+            values[row][0] = columns[columns.length - 1];
+            // Targets over the labels of the model, C1 to C5, that follow other attributes than the label does
+            int type = columns[0].length() % 5;
+            int vacation = (int) (Double.parseDouble(columns[2]) * 4);
+            values[row][1] = "C" + (random.nextDouble() < 0.85 ? (type + vacation) % 5 + 1 : random.nextInt(5) + 1);
+            values[row][2] = "C" + (random.nextDouble() < 0.85 ? (columns[1].length() + vacation) % 5 + 1
+                    : random.nextInt(5) + 1);
+            for (int target = 1; target < TARGETS.length; target++) {
+                if (random.nextDouble() < EMPTY[target]) {
+                    values[row][target] = "";
+                }
+            }
+        }
+
+        Path training = directory.resolve("targets.csv");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(training, StandardCharsets.UTF_8))) {
+            out.print(lines.get(0) + "," + TARGETS[1] + "," + TARGETS[2] + "\n");
+            for (int row = 1; row < lines.size(); row++) {
+                out.print(lines.get(row) + "," + values[row][1] + "," + values[row][2] + "\n");
+            }
+        }
+        Path models = directory.resolve("models");
+        MultiTargetTrainer.main(new String[]{"ID3", training.toString(), models.toString()});
+
+        TreeTrainer trainer = TreeTrainer.builder("ID3").build();
+        for (int target = 0; target < TARGETS.length; target++) {
+            Path alone = writeTarget(directory.resolve(TARGETS[target] + ".csv"), lines, values, target);
+            CompiledTree expected = trainer.train(trainer.load(alone.toString()));
+            CompiledTree actual = ModelRegistry.load(models.resolve(TARGETS[target] + ModelRegistry.SUFFIX));
+            TestSupport.checkSameTree(expected, actual, "target " + TARGETS[target]);
+        }
+    }
+
+    /**
+     * Method to write the data set of one target alone: the attributes of every row that has a value for the
+     * target, with that value as the label.
+     */
+    private static Path writeTarget(Path file, List<String> lines, String[][] values, int target) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.print(lines.get(0) + "\n");
+            for (int row = 1; row < lines.size(); row++) {
+                if (!values[row][target].isEmpty()) {
+                    String line = lines.get(row);
+                    out.print(line.substring(0, line.lastIndexOf(',') + 1) + values[row][target] + "\n");
+                }
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Tests of the off-heap data set.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Class that checks that rows read back from an OffHeapDataset are the rows that were added, across the boundaries
+ * of its growing chunks and after shards are joined, and that readOffHeapData gives the rows of a sharded data set in
+ * the same order as the binned list of instances.
+ */
+
+public class OffHeapDatasetTest {
+
+    public static void main(String[] args) throws Exception {
+        TreeSchema schema = TreeTrainer.builder("ID3").build().schema();
+        int rows = OffHeapDataset.CHUNK_ROWS + 300_000;
+        try (OffHeapDataset dataset = new OffHeapDataset(schema)) {
+            byte[] codes = new byte[schema.attributes.length];
+            for (int row = 0; row < rows; row++) {
+                dataset.add(codes(schema, row, codes), label(schema, row));
+            }
+            checkRows(schema, dataset, 0, rows, "appended rows");
+        }
+
+        int[] shardSizes = {5000, 1, 0, 70_000, 4096};
+        OffHeapDataset[] shards = new OffHeapDataset[shardSizes.length];
+        int row = 0;
+        byte[] codes = new byte[schema.attributes.length];
+        for (int shard = 0; shard < shards.length; shard++) {
+            shards[shard] = new OffHeapDataset(schema);
+            for (int i = 0; i < shardSizes[shard]; i++, row++) {
+                shards[shard].add(codes(schema, row, codes), label(schema, row));
+            }
+        }
+        try (OffHeapDataset dataset = OffHeapDataset.concat(schema, List.of(shards))) {
+            checkRows(schema, dataset, 0, row, "joined shards");
+            try {
+                dataset.add(codes, 0);
+                TestSupport.check(false, "a row was added to joined shards");
+            } catch (IllegalStateException e) {
+                // expected: the rows stay in the shards
+            }
+        }
+
+        for (String model : new String[]{"ID3", "ID3PartB"}) {
+            Path directory = TestSupport.tempDirectory();
+            for (int shard = 0; shard < 4; shard++) {
+                TestSupport.dataset(model, directory.resolve("part-" + shard + ".csv"), 2000 + 1500 * shard, shard);
+            }
+            TreeTrainer trainer = TreeTrainer.builder(model).build();
+            BinnedDataset expected = trainer.load(directory.toString()).data;
+            try (Stream<Path> files = Files.list(directory)) {
+                files.filter(file -> file.getFileName().toString().endsWith(".id3cache"))
+                        .forEach(file -> file.toFile().delete());
+            }
+            try (OffHeapDataset actual = model.equals("ID3") ? new ID3().readOffHeapData(directory.toString())
+                    : new ID3PartB().readOffHeapData(directory.toString())) {
+                TestSupport.check(actual.size() == expected.size(),
+                        model + ": " + actual.size() + " rows off the heap instead of " + expected.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    for (int attribute = 0; attribute < expected.schema().attributes.length; attribute++) {
+                        TestSupport.check(actual.code(attribute, i) == expected.code(attribute, i),
+                                model + ": code of attribute " + attribute + " differs at row " + i);
+                    }
+                    TestSupport.check(actual.label(i) == expected.label(i), model + ": label differs at row " + i);
+                }
+            }
+        }
+    }
+
+    private static byte[] codes(TreeSchema schema, int row, byte[] codes) {
+        for (int attribute = 0; attribute < codes.length; attribute++) {
+            codes[attribute] = (byte) ((row * 31 + attribute * 7 + row / 4096) % schema.binCounts[attribute]);
+        }
+        return codes;
+    }
+
+    private static int label(TreeSchema schema, int row) {
+        return (row * 13 + row / 1000) % schema.labels.length;
+    }
+
+    private static void checkRows(TreeSchema schema, BinnedDataset dataset, int from, int to, String message) {
+        TestSupport.check(dataset.size() == to, message + ": " + dataset.size() + " rows instead of " + to);
+        byte[] expected = new byte[schema.attributes.length];
+        for (int row = from; row < to; row++) {
+            codes(schema, row, expected);
+            for (int attribute = 0; attribute < expected.length; attribute++) {
+                TestSupport.check(dataset.code(attribute, row) == expected[attribute],
+                        message + ": code of attribute " + attribute + " differs at row " + row);
+            }
+            TestSupport.check(dataset.label(row) == label(schema, row), message + ": label differs at row " + row);
+        }
+        // Bulk copies that cross chunk boundaries
+        int[] starts = {0, 4000, 8000, 12_000, 500_000, OffHeapDataset.CHUNK_ROWS - 10};
+        for (int start : starts) {
+            int count = Math.min(70_000, to - start);
+            if (count <= 0) {
+                continue;
+            }
+            byte[] column = new byte[count];
+            for (int attribute = 0; attribute < expected.length; attribute++) {
+                dataset.codes(attribute, start, count, column);
+                for (int i = 0; i < count; i++) {
+                    TestSupport.check(column[i] == codes(schema, start + i, expected)[attribute],
+                            message + ": bulk code of attribute " + attribute + " differs at row " + (start + i));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * Tests of the fixed-point numeric columns.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.util.Random;
+
+/**
+ * Class that checks that a value stored in fixed point falls in the bin of the original value, for the thresholds
+ * themselves, their neighbouring doubles, values outside [0, 1] and random values, one at a time and a column at a
+ * time (with the Vector API when its module is present), and that the thresholds of getValueMap are found to fit in
+ * one byte.
+ */
+
+public class QuantizedColumnTest {
+
+    public static void main(String[] args) {
+        double[] special = {0, 0.25, 0.5, 0.75, 1, -0.0, Double.MIN_VALUE, -Double.MIN_VALUE, 1.0 / 128, -1, 2,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MAX_VALUE};
+        double[] values = new double[special.length * 3 + 1_000_000];
+        int count = 0;
+        for (double value : special) {
+            values[count++] = value;
+            values[count++] = Math.nextDown(value);
+            values[count++] = Math.nextUp(value);
+        }
+        Random random = new Random(11);
+        while (count < values.length) {
+            // Mostly values in [0, 1], some on the grid of 1 / 128 and some outside the range
+            double value = random.nextDouble();
+            switch (random.nextInt(4)) {
+                case 0 -> value = Math.rint(value * QuantizedColumn.SCALE) / QuantizedColumn.SCALE;
+                case 1 -> value = value * 3 - 1;
+                default -> {
+                }
+            }
+            values[count++] = value;
+        }
+
+        byte[] quantized = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            quantized[i] = QuantizedColumn.quantize(values[i]);
+            byte expected = numericCode(values[i]);
+            TestSupport.check(QuantizedColumn.code(quantized[i]) == expected,
+                    "bin " + QuantizedColumn.code(quantized[i]) + " instead of " + expected + " for " + values[i]);
+            TestSupport.check(numericCode(QuantizedColumn.value(quantized[i])) == expected,
+                    "stored value of " + values[i] + " falls in another bin");
+        }
+        for (int length : new int[]{0, 1, 63, 64, 65, 1000, values.length}) {
+            byte[] codes = new byte[length + 1];
+            codes[length] = 42;
+            QuantizedColumn.codes(quantized, length, codes);
+            for (int i = 0; i < length; i++) {
+                TestSupport.check(codes[i] == numericCode(values[i]),
+                        "column of " + length + " values: bin " + codes[i] + " for " + values[i]);
+            }
+            TestSupport.check(codes[length] == 42, "column of " + length + " values written past its end");
+        }
+
+        TestSupport.check(QuantizedColumn.bitsFor(0.25, 0.5, 0.75) == Byte.SIZE, "thresholds need more than a byte");
+        TestSupport.check(QuantizedColumn.bitsFor(0.1) == 0, "threshold 0.1 found exact in fixed point");
+        TestSupport.check(QuantizedColumn.bitsFor(1.0 / 1024) == Short.SIZE, "threshold 1/1024 needs 16 bits");
+    }
+
+    /**
+     * Method to map a normalized numeric value to its bin code with the comparisons of getValueMap on doubles.
+     */
+    private static byte numericCode(double value) {
+        if (value >= 0 && value <= 0.25)
+            return 0;
+        else if (value > 0.25 && value <= 0.5)
+            return 1;
+        else if (value > 0.5 && value <= 0.75)
+            return 2;
+        else
+            return 3;
+    }
+}
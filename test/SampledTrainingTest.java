@@ -0,0 +1,92 @@
+/**
+ * Tests of the sampled choice of splitting attributes.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Class that checks the binned trainer with a sample threshold on nodes large enough to be sampled. When one
+ * attribute is clearly the best, the root chooses it from a sample and the tree is the exact one; when the two best
+ * attributes are nearly tied, the sample cannot tell them apart and the root is counted exactly. Whether the root
+ * was sampled is read from its NodeSplit event.
+ */
+
+public class SampledTrainingTest {
+
+    private static final int ROWS = 40_000;
+    // The root is sampled and its children, about a fifth of the rows each, are counted exactly
+    private static final int SAMPLE_THRESHOLD = 20_000;
+
+    public static void main(String[] args) throws Exception {
+        Path directory = TestSupport.tempDirectory();
+        TreeTrainer exact = TreeTrainer.builder("ID3").build();
+        TreeTrainer sampled = TreeTrainer.builder("ID3").sampleThreshold(SAMPLE_THRESHOLD).build();
+
+        for (boolean nearTie : new boolean[]{false, true}) {
+            String name = nearTie ? "near tie" : "clear best attribute";
+            TrainingDaemon.Dataset dataset = exact.load(
+                    customers(directory.resolve(nearTie ? "tie.csv" : "clear.csv"), nearTie).toString());
+            CompiledTree expected = exact.train(dataset);
+
+            Path events = directory.resolve(nearTie ? "tie.jfr" : "clear.jfr");
+            CompiledTree actual;
+            try (Recording recording = new Recording()) {
+                recording.enable("id3.NodeSplit");
+                recording.start();
+                actual = sampled.train(dataset);
+                recording.stop();
+                recording.dump(events);
+            }
+            Boolean rootSampled = null;
+            for (RecordedEvent event : RecordingFile.readAllEvents(events)) {
+                if (event.getInt("depth") == 0) {
+                    rootSampled = event.getBoolean("sampled");
+                }
+            }
+
+            TestSupport.check(rootSampled != null, name + ": no split event of the root");
+            TestSupport.check(rootSampled != nearTie, name + ": root was " + (rootSampled ? "" : "not ") + "sampled");
+            TestSupport.check(actual.attribute[0] == expected.attribute[0], name + ": root splits on attribute "
+                    + actual.attribute[0] + " instead of " + expected.attribute[0]);
+            TestSupport.checkSameTree(expected, actual, name + ", sampled training");
+        }
+    }
+
+    /**
+     * Method to write a data set whose label follows the type. For a near tie the life style equals the type,
+     * except for the rare type 4, so both attributes have almost the same gain.
+     */
+    private static Path customers(Path file, boolean nearTie) throws IOException {
+        Random random = new Random(nearTie ? 2 : 1);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.print("Type,LifeStyle,Vacation,eCredit,salary,property,label\n");
+            for (int row = 0; row < ROWS; row++) {
+                int type;
+                int lifeStyle;
+                if (nearTie) {
+                    type = random.nextInt(1000) < 2 ? 4 : random.nextInt(4);
+                    lifeStyle = type < 4 ? type : random.nextInt(4);
+                } else {
+                    type = random.nextInt(TestSupport.TYPES.length);
+                    lifeStyle = random.nextInt(TestSupport.LIFE_STYLES.length);
+                }
+                int label = random.nextDouble() < 0.9 ? type : random.nextInt(5);
+                out.print(String.format(Locale.ROOT, "%s,%s,%.4f,%.4f,%.4f,%.4f,C%d\n", TestSupport.TYPES[type],
+                        TestSupport.LIFE_STYLES[lifeStyle], random.nextDouble(), random.nextDouble(),
+                        random.nextDouble(), random.nextDouble(), label + 1));
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Tests of the streaming scorer.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Class that checks that the streaming scorer writes the predictions of every row in the order of the input, that
+ * the file written for two models holds the columns of the files written for each of them alone, and that it throws
+ * instead of hanging when the sink or one of its stages fails while the other stages are blocked.
+ */
+
+public class StreamingScorerTest {
+
+    public static void main(String[] args) throws Exception {
+        Path directory = TestSupport.tempDirectory();
+        Path training = TestSupport.customers(directory.resolve("train.csv"), 3000, 1);
+        Path test = TestSupport.customers(directory.resolve("test.csv"), 200_000, 2);
+        TreeTrainer trainer = TreeTrainer.builder("ID3").build();
+        CompiledTree tree = trainer.train(trainer.load(training.toString()));
+        TrainingDaemon.Model model = TrainingDaemon.newModel("ID3");
+
+        StreamingScorer<?> scorer = model.streamingScorer(List.of(ModelRegistry.of(tree)), 2);
+        RecordingSink recording = new RecordingSink(200_000);
+        long rows = scorer.score(test.toString(), recording);
+        TestSupport.check(rows == 200_000, rows + " rows scored instead of 200000");
+        TestSupport.check(recording.count == 200_000, recording.count + " predictions written instead of 200000");
+        byte[] codes = new byte[tree.schema.attributes.length];
+        int row = 0;
+        List<String> lines = Files.readAllLines(test);
+        for (String line : lines.subList(1, lines.size())) {
+            model.encodeLine(line, codes);
+            TestSupport.check(recording.labelIds[row] == tree.score(codes), "prediction differs at row " + row);
+            row++;
+        }
+
+        CompiledTree other = trainer.train(trainer.load(
+                TestSupport.customers(directory.resolve("other.csv"), 3000, 3).toString()));
+        Path both = directory.resolve("both.csv");
+        try (PredictionSink sink = BufferedPredictionWriter.toFile(both, tree.schema, true, "first", "second")) {
+            model.streamingScorer(List.of(ModelRegistry.of(tree), ModelRegistry.of(other)), 2)
+                    .score(test.toString(), sink);
+        }
+        List<String> firstLines = scoreAlone(model, tree, test, directory.resolve("first.csv"));
+        List<String> secondLines = scoreAlone(model, other, test, directory.resolve("second.csv"));
+        List<String> bothLines = Files.readAllLines(both);
+        TestSupport.check(bothLines.get(0).equals("row,first,second"), "header " + bothLines.get(0));
+        TestSupport.check(bothLines.size() == firstLines.size(), bothLines.size() - 1 + " rows written for two models");
+        boolean differ = false;
+        for (int i = 1; i < bothLines.size(); i++) {
+            String[] cells = bothLines.get(i).split(",");
+            String[] first = firstLines.get(i).split(",");
+            String[] second = secondLines.get(i).split(",");
+            TestSupport.check(cells.length == 3 && cells[0].equals(String.valueOf(i - 1)) && cells[0].equals(first[0])
+                    && cells[1].equals(first[1]) && cells[2].equals(second[1]), "two models: line " + i + " is "
+                    + Arrays.toString(cells) + " instead of " + first[0] + "," + first[1] + "," + second[1]);
+            differ |= !first[1].equals(second[1]);
+        }
+        TestSupport.check(differ, "the two models predict the same labels, so their columns are not told apart");
+
+        PredictionSink failingSink = new PredictionSink() {
+            private int batches;
+
+            @Override
+            public void write(byte[] labelIds, int from, int count) throws IOException {
+                if (++batches == 3) {
+                    throw new IOException("sink failed");
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        checkThrows(() -> model.streamingScorer(List.of(ModelRegistry.of(tree)), 2).score(test.toString(),
+                failingSink), "failing sink");
+
+        StreamingScorer<String> failingParser = new StreamingScorer<>(line -> {
+            throw new IllegalStateException("parser failed");
+        }, batch -> new byte[tree.schema.attributes.length][batch.size()], tree, 2);
+        checkThrows(() -> failingParser.score(test.toString(), new RecordingSink(200_000)), "failing parser");
+    }
+
+    /**
+     * Method to score a data set with one model into a file, returning the lines of the file.
+     */
+    private static List<String> scoreAlone(TrainingDaemon.Model model, CompiledTree tree, Path test, Path output)
+            throws IOException {
+        try (PredictionSink sink = BufferedPredictionWriter.toFile(output, tree.schema, true)) {
+            model.streamingScorer(List.of(ModelRegistry.of(tree)), 2).score(test.toString(), sink);
+        }
+        List<String> lines = Files.readAllLines(output);
+        TestSupport.check(lines.get(0).equals("row,label"), "header " + lines.get(0));
+        return lines;
+    }
+
+    private static void checkThrows(Scoring scoring, String message) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<Long> result = executor.submit(scoring::score);
+            try {
+                result.get(30, TimeUnit.SECONDS);
+                TestSupport.check(false, message + ": score() returned instead of throwing");
+            } catch (TimeoutException e) {
+                TestSupport.check(false, message + ": score() still running after 30 seconds");
+            } catch (ExecutionException e) {
+                TestSupport.check(e.getCause() instanceof IOException,
+                        message + ": score() threw " + e.getCause() + " instead of an IOException");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface Scoring {
+        long score() throws IOException;
+    }
+
+    /**
+     * Class that keeps every prediction written to it.
+     */
+
+    private static class RecordingSink implements PredictionSink {
+        final byte[] labelIds;
+        int count;
+
+        RecordingSink(int capacity) {
+            this.labelIds = new byte[capacity];
+        }
+
+        @Override
+        public void write(byte[] labelIds, int from, int count) {
+            System.arraycopy(labelIds, from, this.labelIds, this.count, count);
+            this.count += count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
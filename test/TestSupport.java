@@ -0,0 +1,169 @@
+/**
+ * Shared helpers of the tests.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Class that writes synthetic data sets of both models and checks the conditions of the tests. The labels depend on
+ * the attributes for most rows and are random for the others, so trees have several levels and some noise.
+ */
+
+final class TestSupport {
+
+    static final String[] TYPES = {"student", "engineer", "librarian", "professor", "doctor"};
+    static final String[] LIFE_STYLES = {"spend>saving", "spend<saving", "spend>>saving", "spend<<saving"};
+    static final String[] SERVICE_TYPES = {"Fund", "Loan", "Mortgage", "CD", "Bank_Account"};
+    static final String[] CUSTOMERS = {"Student", "Business", "Professional", "Doctor", "Other"};
+    static final String[] SIZES = {"Small", "Medium", "Large"};
+    static final String[] PROMOTIONS = {"Full", "Web", "Web&Email", "None"};
+
+    private TestSupport() {
+    }
+
+    /**
+     * Method to check a condition of a test.
+     *
+     * @param condition - condition that must hold
+     * @param message   - description of the failure
+     * @throws AssertionError when the condition does not hold
+     */
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    /**
+     * Method to create a directory for the files of a test, deleted with its contents (data sets, their caches and
+     * models) when the JVM exits.
+     */
+    static Path tempDirectory() throws IOException {
+        Path directory = Files.createTempDirectory("id3test");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            } catch (IOException e) {
+                // Left to the cleanup of the temporary directory
+            }
+        }));
+        return directory;
+    }
+
+    /**
+     * Method to write a data set of the ID3 model.
+     *
+     * @param file - CSV file to write
+     * @param rows - number of rows
+     * @param seed - seed of the random values
+     * @return the file
+     */
+    static Path customers(Path file, int rows, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.print("Type,LifeStyle,Vacation,eCredit,salary,property,label\n");
+            for (int row = 0; row < rows; row++) {
+                int type = random.nextInt(TYPES.length);
+                int lifeStyle = random.nextInt(LIFE_STYLES.length);
+                double[] values = {random.nextDouble(), random.nextDouble(), random.nextDouble(), random.nextDouble()};
+                int label = random.nextDouble() < 0.8 ? (type + lifeStyle + (int) (values[2] * 3)) % 5
+                        : random.nextInt(5);
+                out.print(String.format(Locale.ROOT, "%s,%s,%.4f,%.4f,%.4f,%.4f,C%d\n", TYPES[type],
+                        LIFE_STYLES[lifeStyle], values[0], values[1], values[2], values[3], label + 1));
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Method to write a data set of the ID3PartB model.
+     *
+     * @param file - CSV file to write
+     * @param rows - number of rows
+     * @param seed - seed of the random values
+     * @return the file
+     */
+    static Path products(Path file, int rows, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.print("type,customer,monthly_fee,advertisement_budget,size,promotion,interest_rate,period,label\n");
+            for (int row = 0; row < rows; row++) {
+                int type = random.nextInt(SERVICE_TYPES.length);
+                int customer = random.nextInt(CUSTOMERS.length);
+                int size = random.nextInt(SIZES.length);
+                int promotion = random.nextInt(PROMOTIONS.length);
+                double[] values = {random.nextDouble(), random.nextDouble(), random.nextDouble(), random.nextDouble()};
+                int label = (type + size) % 2 == 0 && values[0] > 0.3 || random.nextDouble() < 0.15 ? 1 : 0;
+                out.print(String.format(Locale.ROOT, "%s,%s,%.4f,%.4f,%s,%s,%.4f,%.4f,%d\n", SERVICE_TYPES[type],
+                        CUSTOMERS[customer], values[0], values[1], SIZES[size], PROMOTIONS[promotion], values[2],
+                        values[3], label));
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Method to write a data set of a model.
+     *
+     * @param model - ID3 or ID3PartB
+     */
+    static Path dataset(String model, Path file, int rows, long seed) throws IOException {
+        return model.equals("ID3") ? customers(file, rows, seed) : products(file, rows, seed);
+    }
+
+    /**
+     * Method to visit every combination of bin codes of a schema, the code -1 (no arrow label) included.
+     *
+     * @param schema  - schema of the codes
+     * @param visitor - receives each combination in the same array, which it must not keep
+     */
+    static void forEachCombination(TreeSchema schema, Consumer<byte[]> visitor) {
+        byte[] codes = new byte[schema.attributes.length];
+        Arrays.fill(codes, (byte) -1);
+        while (true) {
+            visitor.accept(codes);
+            int attribute = 0;
+            while (attribute < codes.length && ++codes[attribute] == schema.binCounts[attribute]) {
+                codes[attribute++] = -1;
+            }
+            if (attribute == codes.length) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Method to check that two scorers predict the same label for every combination of bin codes.
+     *
+     * @param schema   - schema of both scorers
+     * @param expected - reference scorer
+     * @param actual   - scorer under test
+     * @param message  - description of the scorers
+     */
+    static void checkSameScores(TreeSchema schema, TreeScorer expected, TreeScorer actual, String message) {
+        forEachCombination(schema, codes -> check(expected.score(codes) == actual.score(codes),
+                message + ": label " + actual.score(codes) + " instead of " + expected.score(codes) + " for codes "
+                        + Arrays.toString(codes)));
+    }
+
+    /**
+     * Method to check that two trees have the same nodes at the same positions.
+     */
+    static void checkSameTree(CompiledTree expected, CompiledTree actual, String message) {
+        check(Arrays.equals(expected.attribute, actual.attribute)
+                        && Arrays.equals(expected.firstChild, actual.firstChild)
+                        && Arrays.equals(expected.label, actual.label),
+                message + ": tree of " + actual.size() + " nodes differs from the expected one of " + expected.size());
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Tests of the bytecode scorer.
+ * Team 2 - MSIT eBusiness Technology, Carnegie Mellon University
+ */
+
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Class that checks the scorers generated by TreeBytecodeCompiler against the array interpreter of the tree, for
+ * every combination of bin codes: on trained trees of both models, with and without a profile, on random trees, and
+ * through the bytecode backend of LookupTableScorer. A tree whose method would be too large must fall back to the
+ * interpreter.
+ */
+
+public class TreeBytecodeCompilerTest {
+
+    public static void main(String[] args) throws Exception {
+        Path directory = TestSupport.tempDirectory();
+        for (String model : new String[]{"ID3", "ID3PartB"}) {
+            TreeTrainer trainer = TreeTrainer.builder(model).build();
+            TreeSchema schema = trainer.schema();
+            TrainingDaemon.Dataset data = trainer.load(
+                    TestSupport.dataset(model, directory.resolve(model + ".csv"), 3000, 1).toString());
+            CompiledTree tree = trainer.train(data);
+
+            TreeScorer scorer = TreeBytecodeCompiler.compile(tree);
+            TestSupport.check(scorer != tree, model + ": trained tree was not compiled to bytecode");
+            TestSupport.checkSameScores(schema, tree, scorer, model + " bytecode");
+            TestSupport.check(!(LookupTableScorer.compile(tree, TreeScorer.Backend.BYTECODE) instanceof CompiledTree),
+                    model + ": bytecode backend did not compile the tree");
+
+            TreeProfile profile = new TreeProfile(tree);
+            TestSupport.forEachCombination(schema, profile::score);
+            TestSupport.checkSameScores(schema, tree, profile.compile(TreeScorer.Backend.BYTECODE),
+                    model + " profiled bytecode");
+
+            Random random = new Random(7);
+            for (int i = 0; i < 20; i++) {
+                CompiledTree randomTree = randomTree(schema, random);
+                TestSupport.checkSameScores(schema, randomTree, TreeBytecodeCompiler.compile(randomTree),
+                        model + " random tree " + i);
+            }
+        }
+
+        TreeSchema schema = TreeTrainer.builder("ID3PartB").build().schema();
+        CompiledTree fullTree = fullTree(schema);
+        TestSupport.check(TreeBytecodeCompiler.compile(fullTree) == fullTree,
+                "tree of " + fullTree.size() + " nodes was not left to the interpreter");
+    }
+
+    /**
+     * Method to build a tree with random splits, labels and empty leaves, splitting on each attribute at most once
+     * on a path.
+     */
+    private static CompiledTree randomTree(TreeSchema schema, Random random) {
+        CompiledTree.Builder builder = new CompiledTree.Builder(schema);
+        grow(builder, schema, random, 0, new boolean[schema.attributes.length], 0);
+        return builder.build();
+    }
+
+    private static void grow(CompiledTree.Builder builder, TreeSchema schema, Random random, int position,
+                             boolean[] used, int depth) {
+        int attribute = random.nextInt(schema.attributes.length);
+        String label = random.nextInt(10) == 0 ? null : schema.labels[random.nextInt(schema.labels.length)];
+        if (used[attribute] || depth >= 4 || random.nextInt(4) == 0) {
+            builder.leaf(position, label);
+            return;
+        }
+        used[attribute] = true;
+        int first = builder.split(position, attribute, label == null ? schema.labels[0] : label);
+        for (int slot = 0; slot <= schema.binCounts[attribute]; slot++) {
+            grow(builder, schema, random, first + slot, used, depth + 1);
+        }
+        used[attribute] = false;
+    }
+
+    /**
+     * Method to build the tree that splits on every attribute on every path.
+     */
+    private static CompiledTree fullTree(TreeSchema schema) {
+        CompiledTree.Builder builder = new CompiledTree.Builder(schema);
+        split(builder, schema, 0, 0);
+        return builder.build();
+    }
+
+    private static void split(CompiledTree.Builder builder, TreeSchema schema, int position, int attribute) {
+        String label = schema.labels[(position + attribute) % schema.labels.length];
+        if (attribute == schema.attributes.length) {
+            builder.leaf(position, label);
+            return;
+        }
+        int first = builder.split(position, attribute, label);
+        for (int slot = 0; slot <= schema.binCounts[attribute]; slot++) {
+            split(builder, schema, first + slot, attribute + 1);
+        }
+    }
+}